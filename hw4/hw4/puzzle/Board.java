@@ -98,7 +98,7 @@ public class Board implements WorldState {
             for (int j = 0; j < N; j++) {
                 int value = tileAt(i, j);
                 if (value != BLANK) {
-                    int x = (int) Math.ceil((double) value / N) - 1;
+                    int x = (value - 1) / N;
                     int y = (value - 1) % N;
                     distance += Math.abs(i - x) + Math.abs(j - y);
                 }
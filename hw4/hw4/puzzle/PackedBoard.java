@@ -0,0 +1,280 @@
+package hw4.puzzle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A board of the sliding puzzle, up to 4-by-4, packed into one long: cell
+ * r * N + c holds its tile in four bits, cell 0 lowest, and the blank is 0.
+ * The board also keeps the cell of the blank and its heuristic values, and
+ * a neighbor updates them for the one tile that moved instead of scanning
+ * the board, so making a neighbor takes constant time and allocates only
+ * the new board. Equal boards have equal longs, so equals and hashCode
+ * compare and mix one number.
+ *
+ * Boards solve the same puzzles as Board, with one of three heuristics:
+ * Manhattan distance, Manhattan distance plus linear conflicts, or an
+ * additive pattern database. All three never overestimate, so the Solver
+ * still finds shortest solutions.
+ */
+public class PackedBoard implements WorldState {
+    /** The estimate of the moves left that a board gives the Solver. */
+    public enum Heuristic {
+        /** The sum of the distances of the tiles from their goal cells. */
+        MANHATTAN,
+        /** Manhattan distance plus two moves for each tile that has to get
+         *  out of the way of another in its goal row or column. */
+        LINEAR_CONFLICT,
+        /** The larger of the linear conflict estimate and the pattern
+         *  database for the board's size. */
+        PATTERN_DATABASE
+    }
+
+    private static final int MAX_SIZE = 4;
+    private static final int BLANK = 0;
+
+    private final int n;
+    private final long tiles;
+    private final int blank;
+    private final Heuristic heuristic;
+    private final int manhattan;
+    /* Twice the tiles that linear conflicts force out of their lines, or 0
+     * for the Manhattan heuristic, which does not need them. */
+    private final int conflicts;
+    /* The pattern database and the board's key in it, for the pattern
+     * database heuristic only. Neighbors get both from their parent. */
+    private final PatternDatabase database;
+    private final long databaseKey;
+    private final int estimate;
+
+    public PackedBoard(int[][] tiles) {
+        this(tiles, Heuristic.LINEAR_CONFLICT);
+    }
+
+    /** Makes a packed copy of BOARD, which can be at most 4-by-4. */
+    public PackedBoard(Board board, Heuristic heuristic) {
+        this(tilesOf(board), heuristic);
+    }
+
+    public PackedBoard(int[][] tiles, Heuristic heuristic) {
+        n = tiles.length;
+        if (n < 1 || n > MAX_SIZE) {
+            throw new IllegalArgumentException("Boards can be at most 4 by 4, not " + n);
+        }
+        long packed = 0;
+        int blankCell = -1;
+        int distance = 0;
+        for (int i = 0; i < n; i++) {
+            if (tiles[i].length != n) {
+                throw new IllegalArgumentException("The board is not square.");
+            }
+            for (int j = 0; j < n; j++) {
+                int tile = tiles[i][j];
+                if (tile < 0 || tile >= n * n) {
+                    throw new IllegalArgumentException(
+                            "No tile " + tile + " on a board of size " + n);
+                }
+                int cell = i * n + j;
+                packed |= (long) tile << (4 * cell);
+                if (tile == BLANK) {
+                    blankCell = cell;
+                } else {
+                    distance += distance(tile, cell);
+                }
+            }
+        }
+        this.tiles = packed;
+        this.blank = blankCell;
+        this.heuristic = heuristic;
+        this.manhattan = distance;
+        if (heuristic == Heuristic.MANHATTAN) {
+            this.conflicts = 0;
+        } else {
+            int total = 0;
+            for (int line = 0; line < n; line++) {
+                total += lineConflicts(packed, true, line) + lineConflicts(packed, false, line);
+            }
+            this.conflicts = total;
+        }
+        if (heuristic == Heuristic.PATTERN_DATABASE && n > 1) {
+            this.database = PatternDatabase.forSize(n);
+            this.databaseKey = database.key(packed);
+        } else {
+            this.database = null;
+            this.databaseKey = 0;
+        }
+        this.estimate = estimate();
+    }
+
+    private static int[][] tilesOf(Board board) {
+        int[][] tiles = new int[board.size()][board.size()];
+        for (int i = 0; i < board.size(); i++) {
+            for (int j = 0; j < board.size(); j++) {
+                tiles[i][j] = board.tileAt(i, j);
+            }
+        }
+        return tiles;
+    }
+
+    /* Makes the board that PARENT becomes when the tile at cell FROM slides
+     * into the blank. */
+    private PackedBoard(PackedBoard parent, int from) {
+        n = parent.n;
+        heuristic = parent.heuristic;
+        int to = parent.blank;
+        long tile = parent.tiles >>> (4 * from) & 0xF;
+        tiles = parent.tiles - (tile << (4 * from)) + (tile << (4 * to));
+        blank = from;
+        manhattan = parent.manhattan - distance((int) tile, from) + distance((int) tile, to);
+        if (heuristic == Heuristic.MANHATTAN) {
+            conflicts = 0;
+        } else {
+            /* A tile that slides along a row keeps its order in that row, so
+             * only the two columns it left and entered change, and vice
+             * versa. */
+            boolean rows = from % n == to % n;
+            int a = rows ? from / n : from % n;
+            int b = rows ? to / n : to % n;
+            conflicts = parent.conflicts
+                    - lineConflicts(parent.tiles, rows, a) - lineConflicts(parent.tiles, rows, b)
+                    + lineConflicts(tiles, rows, a) + lineConflicts(tiles, rows, b);
+        }
+        database = parent.database;
+        databaseKey = database == null
+                ? 0 : database.move(parent.databaseKey, (int) tile, from, to);
+        estimate = estimate();
+    }
+
+    private int estimate() {
+        if (database != null) {
+            return Math.max(manhattan + conflicts, database.estimate(databaseKey));
+        }
+        return manhattan + conflicts;
+    }
+
+    /** Returns the distance of TILE at CELL from its goal cell. */
+    private int distance(int tile, int cell) {
+        int goal = tile - 1;
+        return Math.abs(goal / n - cell / n) + Math.abs(goal % n - cell % n);
+    }
+
+    /**
+     * Returns the moves that linear conflicts add in row LINE of the board
+     * TILES if ROW, or else in column LINE. Of the tiles in the line whose
+     * goal is in the line too, all but the longest run that is already in
+     * goal order have to leave the line and come back, which takes two moves
+     * more than their Manhattan distance.
+     */
+    private int lineConflicts(long tiles, boolean row, int line) {
+        /* Patience sorting: TAILS holds, four bits each, the smallest last
+         * goal position of an ordered run of each length. */
+        int tails = 0;
+        int longest = 0;
+        int inLine = 0;
+        for (int k = 0; k < n; k++) {
+            int cell = row ? line * n + k : k * n + line;
+            int tile = (int) (tiles >>> (4 * cell)) & 0xF;
+            if (tile == BLANK) {
+                continue;
+            }
+            int goal = tile - 1;
+            if ((row ? goal / n : goal % n) != line) {
+                continue;
+            }
+            int position = row ? goal % n : goal / n;
+            inLine++;
+            int length = 0;
+            while (length < longest && (tails >>> (4 * length) & 0xF) < position) {
+                length++;
+            }
+            tails = tails & ~(0xF << (4 * length)) | position << (4 * length);
+            if (length == longest) {
+                longest++;
+            }
+        }
+        return 2 * (inLine - longest);
+    }
+
+    public int tileAt(int i, int j) {
+        if (i < 0 || i >= n || j < 0 || j >= n) {
+            throw new IndexOutOfBoundsException("Index out of range");
+        }
+        return (int) (tiles >>> (4 * (i * n + j))) & 0xF;
+    }
+
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public Iterable<WorldState> neighbors() {
+        List<WorldState> neighbors = new ArrayList<>(4);
+        int row = blank / n;
+        int col = blank % n;
+        if (row > 0) {
+            neighbors.add(new PackedBoard(this, blank - n));
+        }
+        if (row < n - 1) {
+            neighbors.add(new PackedBoard(this, blank + n));
+        }
+        if (col > 0) {
+            neighbors.add(new PackedBoard(this, blank - 1));
+        }
+        if (col < n - 1) {
+            neighbors.add(new PackedBoard(this, blank + 1));
+        }
+        return neighbors;
+    }
+
+    public int manhattan() {
+        return manhattan;
+    }
+
+    /** Returns the moves that linear conflicts add to the Manhattan distance,
+     *  or 0 with the Manhattan heuristic. */
+    public int linearConflicts() {
+        return conflicts;
+    }
+
+    @Override
+    public int estimatedDistanceToGoal() {
+        return estimate;
+    }
+
+    @Override
+    public boolean isGoal() {
+        return manhattan == 0;
+    }
+
+    @Override
+    public boolean equals(Object y) {
+        if (this == y) {
+            return true;
+        }
+        if (y == null || getClass() != y.getClass()) {
+            return false;
+        }
+        PackedBoard other = (PackedBoard) y;
+        return n == other.n && tiles == other.tiles;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = tiles * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(n + "\n");
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                s.append(String.format("%2d ", tileAt(i, j)));
+            }
+            s.append("\n");
+        }
+        s.append("\n");
+        return s.toString();
+    }
+}
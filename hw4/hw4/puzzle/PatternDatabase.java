@@ -0,0 +1,188 @@
+package hw4.puzzle;
+
+import java.util.Arrays;
+
+/**
+ * An additive pattern database for the N-by-N sliding puzzle. The tiles are
+ * split into groups of up to five, and for each group a table holds, for
+ * every placement of its tiles, the fewest moves of those tiles needed to
+ * bring them home, where moves of the other tiles are free. Since each move
+ * moves one tile, the sum over the groups never overestimates the moves
+ * left, and it is much closer than Manhattan distance, because it accounts
+ * for tiles that are in each other's way.
+ *
+ * The tables are built once per size by a breadth-first search back from
+ * the goal, which takes a few seconds for the 4-by-4 puzzle, and take 3 MB.
+ *
+ * See Korf and Felner, Disjoint Pattern Database Heuristics, Artificial
+ * Intelligence 134 (2002).
+ */
+class PatternDatabase {
+    /* The most tiles in a group. A group of k tiles needs a table of 16^k
+     * bytes, and a search over 16^(k + 1) states with the blank. */
+    private static final int GROUP_SIZE = 5;
+    private static final int MAX_SIZE = 4;
+
+    private static final PatternDatabase[] DATABASES = new PatternDatabase[MAX_SIZE + 1];
+
+    private final int n;
+    /* The tables by group, indexed by the cells of the group's tiles, four
+     * bits each, the first tile lowest. */
+    private final byte[][] tables;
+    /* Where the cell of each tile goes in the key that lookups build: bits
+     * 20 * group + 4 * place in group. */
+    private final int[] shift;
+
+    /** Returns the database for the N-by-N puzzle, building it the first
+     *  time. */
+    static synchronized PatternDatabase forSize(int n) {
+        if (n < 2 || n > MAX_SIZE) {
+            throw new IllegalArgumentException("No pattern database for size " + n);
+        }
+        if (DATABASES[n] == null) {
+            DATABASES[n] = new PatternDatabase(n);
+        }
+        return DATABASES[n];
+    }
+
+    private PatternDatabase(int n) {
+        this.n = n;
+        int tiles = n * n - 1;
+        int groups = (tiles + GROUP_SIZE - 1) / GROUP_SIZE;
+        tables = new byte[groups][];
+        shift = new int[tiles + 1];
+        for (int g = 0; g < groups; g++) {
+            int first = g * GROUP_SIZE + 1;
+            int last = Math.min(first + GROUP_SIZE - 1, tiles);
+            for (int t = first; t <= last; t++) {
+                shift[t] = 20 * g + 4 * (t - first);
+            }
+            tables[g] = build(first, last - first + 1);
+        }
+    }
+
+    /**
+     * Returns the key of the board whose cells, four bits each with cell 0
+     * lowest, hold TILES: for each group, the cells of its tiles. A board
+     * keeps its key and updates it with move, so that estimates need not
+     * scan the board.
+     */
+    long key(long tiles) {
+        long key = 0;
+        for (int cell = 0; cell < n * n; cell++) {
+            int tile = (int) (tiles >>> (4 * cell)) & 0xF;
+            if (tile != 0) {
+                key += (long) cell << shift[tile];
+            }
+        }
+        return key;
+    }
+
+    /** Returns KEY after TILE slid from cell FROM to cell TO. */
+    long move(long key, int tile, int from, int to) {
+        return key + ((long) (to - from) << shift[tile]);
+    }
+
+    /** Returns the estimated moves to the goal for the board with KEY. */
+    int estimate(long key) {
+        int estimate = 0;
+        for (int g = 0; g < tables.length; g++) {
+            byte[] table = tables[g];
+            estimate += table[(int) (key >>> (20 * g)) & (table.length - 1)];
+        }
+        return estimate;
+    }
+
+    /**
+     * Builds the table for the COUNT tiles from FIRST on. A state of the
+     * search is the blank's cell in the lowest four bits and the cells of
+     * the tiles above it. The search goes in rounds of equal cost: moves of
+     * the group's tiles cost one and go to the next round, and other moves
+     * are free and stay in this one.
+     */
+    private byte[] build(int first, int count) {
+        byte[] cost = new byte[1 << (4 * (count + 1))];
+        Arrays.fill(cost, Byte.MAX_VALUE);
+        int goal = n * n - 1;
+        for (int i = 0; i < count; i++) {
+            goal |= (first + i - 1) << (4 * (i + 1));
+        }
+        cost[goal] = 0;
+
+        IntList round = new IntList();
+        IntList next = new IntList();
+        round.add(goal);
+        for (int d = 0; !round.isEmpty(); d++) {
+            for (int r = 0; r < round.size; r++) {
+                int state = round.items[r];
+                if (cost[state] < d) {
+                    // Reached for free in an earlier round
+                    continue;
+                }
+                int blank = state & 0xF;
+                int row = blank / n;
+                int col = blank % n;
+                for (int m = 0; m < 4; m++) {
+                    int to;
+                    if (m == 0 && row > 0) {
+                        to = blank - n;
+                    } else if (m == 1 && row < n - 1) {
+                        to = blank + n;
+                    } else if (m == 2 && col > 0) {
+                        to = blank - 1;
+                    } else if (m == 3 && col < n - 1) {
+                        to = blank + 1;
+                    } else {
+                        continue;
+                    }
+                    /* Swap the blank with whatever is at TO. */
+                    int moved = state & ~0xF | to;
+                    int toCost = d;
+                    for (int i = 1; i <= count; i++) {
+                        if ((state >>> (4 * i) & 0xF) == to) {
+                            moved = moved & ~(0xF << (4 * i)) | blank << (4 * i);
+                            toCost = d + 1;
+                            break;
+                        }
+                    }
+                    if (cost[moved] > toCost) {
+                        cost[moved] = (byte) toCost;
+                        (toCost == d ? round : next).add(moved);
+                    }
+                }
+            }
+            IntList done = round;
+            round = next;
+            next = done;
+            next.size = 0;
+        }
+
+        /* The blank can be anywhere, so take the cheapest cell for it. */
+        byte[] table = new byte[1 << (4 * count)];
+        Arrays.fill(table, Byte.MAX_VALUE);
+        for (int state = 0; state < cost.length; state++) {
+            int placement = state >>> 4;
+            if (cost[state] < table[placement]) {
+                table[placement] = cost[state];
+            }
+        }
+        return table;
+    }
+
+    /* A growable list of ints, so that the search does not box. */
+    private static class IntList {
+        private int[] items = new int[1024];
+        private int size;
+
+        private void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -2,9 +2,28 @@ package hw4.puzzle;
 
 import edu.princeton.cs.algs4.MinPQ;
 import edu.princeton.cs.algs4.Stack;
-import java.util.Comparator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 public class Solver {
+    /** How the solver searches. All three find a shortest solution. */
+    public enum Mode {
+        /** A* that only skips a neighbor equal to the grandparent, so a
+         *  state reached along several paths is expanded once per path. */
+        GRANDPARENT,
+        /** A* that remembers the fewest moves each state has been reached
+         *  in, so a state is only queued again along a shorter path, and
+         *  queued nodes that were overtaken are skipped. */
+        CLOSED_SET,
+        /** Iterative-deepening A*: depth-first searches with a growing
+         *  bound on moves + heuristic, which only keep the current path in
+         *  memory but expand the states near the start many times. */
+        IDA_STAR
+    }
+
     private class SearchNode {
         private WorldState state;
         private SearchNode previous;
@@ -23,21 +42,50 @@ public class Solver {
         }
     }
 
+    /* Returned by the IDA* search when it finds the goal. */
+    private static final int FOUND = -1;
+
     private int moves;
     private Stack<WorldState> solution;
+    private long nodesExpanded;
+    private long nodesEnqueued;
+    private long peakNodes;
 
     public Solver(WorldState initial) {
+        this(initial, Mode.CLOSED_SET);
+    }
+
+    public Solver(WorldState initial, Mode mode) {
         solution = new Stack<>();
+        if (mode == Mode.IDA_STAR) {
+            idaStar(initial);
+        } else {
+            aStar(initial, mode == Mode.CLOSED_SET);
+        }
+    }
 
-        MinPQ<SearchNode> fringe =
-            new MinPQ<>(Comparator.comparingInt(SearchNode::priority));
+    private void aStar(WorldState initial, boolean closedSet) {
+        MinPQ<SearchNode> fringe = new MinPQ<>((a, b) -> {
+            int compare = Integer.compare(a.priority(), b.priority());
+            /* Among equal priorities, prefer the node closer to the goal. */
+            return compare != 0 ? compare : Integer.compare(a.heuristic, b.heuristic);
+        });
+        /* The fewest moves each state has been reached in. */
+        Map<WorldState, Integer> bestMoves = new HashMap<>();
 
         // Start node
         fringe.insert(new SearchNode(initial, null, 0));
+        bestMoves.put(initial, 0);
+        nodesEnqueued = 1;
 
         while (!fringe.isEmpty()) {
+            peakNodes = Math.max(peakNodes, fringe.size() + bestMoves.size());
             SearchNode node = fringe.delMin();
-            if (node.state.isGoal()) {
+            if (closedSet && node.movesMade > bestMoves.get(node.state)) {
+                // Stale: the state was queued again along a shorter path
+                continue;
+            }
+            if (node.heuristic == 0 && node.state.isGoal()) {
                 // Done, set up solution
                 moves = node.movesMade;
 
@@ -49,15 +97,90 @@ public class Solver {
                 break;
             }
 
+            nodesExpanded++;
+            int movesMade = node.movesMade + 1;
             for (WorldState neighbor : node.state.neighbors()) {
-                // Add neighbors to fringe, after checking not equal to grandparent
-                if (node.previous == null || !neighbor.equals(node.previous.state)) {
-                    fringe.insert(new SearchNode(neighbor, node, node.movesMade + 1));
+                if (closedSet) {
+                    Integer best = bestMoves.get(neighbor);
+                    if (best != null && best <= movesMade) {
+                        continue;
+                    }
+                    bestMoves.put(neighbor, movesMade);
+                } else if (node.previous != null && neighbor.equals(node.previous.state)) {
+                    // Don't go back to the grandparent
+                    continue;
                 }
+                fringe.insert(new SearchNode(neighbor, node, movesMade));
+                nodesEnqueued++;
             }
         }
     }
 
+    private void idaStar(WorldState initial) {
+        Stack<WorldState> path = new Stack<>();
+        Set<WorldState> onPath = new HashSet<>();
+        path.push(initial);
+        onPath.add(initial);
+        int bound = initial.estimatedDistanceToGoal();
+        while (true) {
+            int next = search(path, onPath, initial, 0, bound);
+            if (next == FOUND) {
+                break;
+            }
+            if (next == Integer.MAX_VALUE) {
+                // No solution
+                return;
+            }
+            bound = next;
+        }
+
+        moves = path.size() - 1;
+        /* The path has the goal on top, so pushing it from the top leaves
+         * the initial state on top of the solution. */
+        for (WorldState state : path) {
+            solution.push(state);
+        }
+    }
+
+    /**
+     * Searches depth-first from STATE, which is on top of PATH and was
+     * reached in MOVESMADE moves, without passing states whose moves +
+     * heuristic exceed BOUND or that are already on the path. Returns FOUND
+     * if it reached the goal, leaving the path to it on PATH, and otherwise
+     * the smallest moves + heuristic over BOUND that it saw, or
+     * Integer.MAX_VALUE if there was none.
+     */
+    private int search(Stack<WorldState> path, Set<WorldState> onPath, WorldState state,
+                       int movesMade, int bound) {
+        int estimate = state.estimatedDistanceToGoal();
+        if (movesMade + estimate > bound) {
+            return movesMade + estimate;
+        }
+        if (estimate == 0 && state.isGoal()) {
+            return FOUND;
+        }
+
+        nodesExpanded++;
+        int min = Integer.MAX_VALUE;
+        for (WorldState neighbor : state.neighbors()) {
+            if (onPath.contains(neighbor)) {
+                continue;
+            }
+            path.push(neighbor);
+            onPath.add(neighbor);
+            nodesEnqueued++;
+            peakNodes = Math.max(peakNodes, path.size());
+            int next = search(path, onPath, neighbor, movesMade + 1, bound);
+            if (next == FOUND) {
+                return FOUND;
+            }
+            path.pop();
+            onPath.remove(neighbor);
+            min = Math.min(min, next);
+        }
+        return min;
+    }
+
     public int moves() {
         return moves;
     }
@@ -65,4 +188,21 @@ public class Solver {
     public Iterable<WorldState> solution() {
         return solution;
     }
+
+    /** Returns the number of states whose neighbors were generated. */
+    public long nodesExpanded() {
+        return nodesExpanded;
+    }
+
+    /** Returns the number of search nodes put into the fringe, or pushed
+     *  onto the path for IDA*. */
+    public long nodesEnqueued() {
+        return nodesEnqueued;
+    }
+
+    /** Returns the largest number of states the solver held at once: the
+     *  fringe and the closed set for A*, or the path for IDA*. */
+    public long peakNodes() {
+        return peakNodes;
+    }
 }
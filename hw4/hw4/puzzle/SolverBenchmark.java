@@ -0,0 +1,109 @@
+package hw4.puzzle;
+
+import edu.princeton.cs.algs4.In;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Solves board puzzles with each Solver mode and prints, for each, the
+ * number of moves, the states expanded and enqueued, the most states held
+ * at once, the peak heap use and the time taken. The peak heap is the sum
+ * of the peaks of the heap memory pools since the last GC before the
+ * solve, so it includes garbage that was not yet collected.
+ *
+ * Usage: java hw4.puzzle.SolverBenchmark [-m MODE,...] [-h HEURISTIC,...]
+ *                                        [puzzle file ...]
+ * Modes are the names of Solver.Mode; the default is all of them. With -h,
+ * the puzzles are solved as PackedBoards with each PackedBoard.Heuristic
+ * given, instead of as Boards. Run from hw4 so that the default puzzles,
+ * input/puzzle4x4-00 to -30, are found.
+ */
+public class SolverBenchmark {
+    public static void main(String[] args) {
+        List<Solver.Mode> modes = new ArrayList<>();
+        List<PackedBoard.Heuristic> heuristics = new ArrayList<>();
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-m")) {
+                i += 1;
+                for (String mode : args[i].split(",")) {
+                    modes.add(Solver.Mode.valueOf(mode));
+                }
+            } else if (args[i].equals("-h")) {
+                i += 1;
+                for (String heuristic : args[i].split(",")) {
+                    heuristics.add(PackedBoard.Heuristic.valueOf(heuristic));
+                }
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (modes.isEmpty()) {
+            modes.addAll(java.util.Arrays.asList(Solver.Mode.values()));
+        }
+        if (files.isEmpty()) {
+            for (int i = 0; i <= 30; i += 1) {
+                files.add(String.format("input/puzzle4x4-%02d.txt", i));
+            }
+        }
+
+        System.out.printf("%-26s %-12s %-16s %5s %12s %12s %10s %9s %9s%n", "puzzle",
+                "mode", "board", "moves", "expanded", "enqueued", "peak held", "peak MB", "ms");
+        for (String file : files) {
+            Board board = readBoard(file);
+            for (Solver.Mode mode : modes) {
+                if (heuristics.isEmpty()) {
+                    run(file, mode, "Board", board);
+                }
+                for (PackedBoard.Heuristic heuristic : heuristics) {
+                    run(file, mode, heuristic.toString(), new PackedBoard(board, heuristic));
+                }
+            }
+        }
+    }
+
+    private static void run(String file, Solver.Mode mode, String name, WorldState initial) {
+        System.gc();
+        resetPeakHeap();
+        long start = System.nanoTime();
+        Solver solver = new Solver(initial, mode);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-26s %-12s %-16s %5d %12d %12d %10d %9.1f %9.1f%n",
+                file, mode, name, solver.moves(), solver.nodesExpanded(),
+                solver.nodesEnqueued(), solver.peakNodes(), peakHeap() / 1e6, elapsed / 1e6);
+    }
+
+    private static Board readBoard(String filename) {
+        In in = new In(filename);
+        int n = in.readInt();
+        int[][] tiles = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                tiles[i][j] = in.readInt();
+            }
+        }
+        return new Board(tiles);
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,98 @@
+package hw4.puzzle;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestPackedBoard {
+    private static int[][] tiles(PackedBoard b) {
+        int[][] tiles = new int[b.size()][b.size()];
+        for (int i = 0; i < b.size(); i++) {
+            for (int j = 0; j < b.size(); j++) {
+                tiles[i][j] = b.tileAt(i, j);
+            }
+        }
+        return tiles;
+    }
+
+    @Test
+    public void verifyImmutability() {
+        int[][] x = {{1, 2}, {3, 0}};
+        PackedBoard b = new PackedBoard(x);
+        x[1][1] = 3;
+        assertEquals(0, b.tileAt(1, 1));
+        assertTrue(b.isGoal());
+        assertEquals(new PackedBoard(new int[][]{{1, 2}, {3, 0}}), b);
+    }
+
+    @Test
+    public void testLinearConflicts() {
+        /* 2 and 1 are both in their goal row, in the wrong order. */
+        PackedBoard b = new PackedBoard(new int[][]{{2, 1, 3}, {4, 5, 6}, {7, 8, 0}});
+        assertEquals(2, b.manhattan());
+        assertEquals(2, b.linearConflicts());
+        assertEquals(4, b.estimatedDistanceToGoal());
+
+        /* 3 2 1 in the goal row: two of them have to leave it. */
+        b = new PackedBoard(new int[][]{{3, 2, 1}, {4, 5, 6}, {7, 8, 0}});
+        assertEquals(4, b.linearConflicts());
+
+        b = new PackedBoard(new int[][]{{3, 2, 1}, {4, 5, 6}, {7, 8, 0}},
+                PackedBoard.Heuristic.MANHATTAN);
+        assertEquals(4, b.estimatedDistanceToGoal());
+    }
+
+    /* Walks randomly from the goal and checks that the values each neighbor
+     * updates, including its pattern database estimate, match a board built
+     * from scratch, and those of Board. */
+    @Test
+    public void testIncrementalHeuristics() {
+        Random random = new Random(61);
+        for (int n = 2; n <= 4; n++) {
+            int[][] goal = new int[n][n];
+            for (int i = 0; i < n * n - 1; i++) {
+                goal[i / n][i % n] = i + 1;
+            }
+            PackedBoard b = new PackedBoard(goal, PackedBoard.Heuristic.PATTERN_DATABASE);
+            for (int step = 0; step < 2000; step++) {
+                List<WorldState> neighbors = new ArrayList<>();
+                for (WorldState w : b.neighbors()) {
+                    neighbors.add(w);
+                }
+                b = (PackedBoard) neighbors.get(random.nextInt(neighbors.size()));
+
+                PackedBoard fresh =
+                        new PackedBoard(tiles(b), PackedBoard.Heuristic.PATTERN_DATABASE);
+                assertEquals(fresh, b);
+                assertEquals(fresh.hashCode(), b.hashCode());
+                assertEquals(fresh.manhattan(), b.manhattan());
+                assertEquals(fresh.linearConflicts(), b.linearConflicts());
+                assertEquals(fresh.estimatedDistanceToGoal(), b.estimatedDistanceToGoal());
+                assertEquals(new Board(tiles(b)).manhattan(), b.manhattan());
+            }
+        }
+    }
+
+    /* Solves the hardest 4x4 inputs, which the pattern database makes quick,
+     * and checks that the estimates never exceed the moves needed. */
+    @Test(timeout = 60000)
+    public void testPatternDatabase() {
+        for (int i = 31; i <= 50; i += 1) {
+            String puzzleName = String.format("input/puzzle4x4-%02d.txt", i);
+            Board board = TestSolver.readBoard(puzzleName);
+            for (PackedBoard.Heuristic h : PackedBoard.Heuristic.values()) {
+                PackedBoard b = new PackedBoard(board, h);
+                assertTrue(puzzleName, b.estimatedDistanceToGoal() <= i);
+            }
+            PackedBoard b = new PackedBoard(board, PackedBoard.Heuristic.PATTERN_DATABASE);
+            assertEquals("Wrong number of moves on " + puzzleName, i,
+                    new Solver(b, Solver.Mode.IDA_STAR).moves());
+            if (i % 5 == 0) {
+                assertEquals("Wrong number of moves on " + puzzleName, i, new Solver(b).moves());
+            }
+        }
+    }
+}
@@ -131,6 +131,42 @@ public class TestSolver {
         }
     }
 
+    /* Checks that every mode finds a shortest solution, and that the
+     * closed set expands no more states than grandparent pruning does. */
+    @Test(timeout = 40000)
+    public void testSolverModes() {
+        for (int i = 0; i <= 20; i += 4) {
+            String puzzleName = String.format("input/puzzle4x4-%02d.txt", i);
+            Board b = readBoard(puzzleName);
+            Solver grandparent = new Solver(b, Solver.Mode.GRANDPARENT);
+            Solver closedSet = new Solver(b, Solver.Mode.CLOSED_SET);
+            Solver idaStar = new Solver(b, Solver.Mode.IDA_STAR);
+            assertEquals(puzzleName, i, grandparent.moves());
+            assertEquals(puzzleName, i, closedSet.moves());
+            assertEquals(puzzleName, i, idaStar.moves());
+            assertTrue(closedSet.nodesExpanded() <= grandparent.nodesExpanded());
+
+            int count = 0;
+            WorldState last = null;
+            for (WorldState ws : idaStar.solution()) {
+                if (count == 0) {
+                    assertEquals(b, ws);
+                }
+                last = ws;
+                count += 1;
+            }
+            assertEquals(i + 1, count);
+            assertTrue(last.isGoal());
+        }
+
+        /* The heuristic of this puzzle is not consistent, so the closed set
+         * has to queue a state again when it is reached in fewer moves. */
+        WorldState start = new CommonBugDetector.CommonBugPuzzleState();
+        for (Solver.Mode mode : Solver.Mode.values()) {
+            assertEquals(mode.toString(), 5, new Solver(start, mode).moves());
+        }
+    }
+
     @Test(timeout = 20000)
     public void testVariousPuzzles() {
         for (int i = 0; i <= 31; i += 1) {
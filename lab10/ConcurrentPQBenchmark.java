@@ -0,0 +1,122 @@
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Times MultiQueue in strict mode and in relaxed mode, with two heaps per
+ * thread, as 1 to 32 threads share it. The queue starts with 100000 items,
+ * and each thread alternates inserting a new item with a random priority
+ * and removing one, as a pool of workers that schedule follow-up jobs
+ * would. Throughput is in millions of operations per second over all
+ * threads, the best of several rounds.
+ *
+ * The last column is the mean rank of the items relaxed mode removes, that
+ * is, how many smaller items were still in the queue, measured by draining
+ * a queue with the same number of heaps from one thread. Strict mode always
+ * removes rank 0.
+ *
+ * Threads only run in parallel on as many cores as the machine has; past
+ * that, the numbers show the cost of contention, not of scaling.
+ *
+ * Usage: java ConcurrentPQBenchmark [operations per round]
+ */
+public class ConcurrentPQBenchmark {
+    private static final int INITIAL = 100000;
+    private static final int RANK_ITEMS = 100000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        System.out.printf("%-8s %8s %12s %12s %10s%n",
+                "threads", "cores", "strict", "relaxed", "mean rank");
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= 32; threads *= 2) {
+            double strict = run(1, threads, ops);
+            double relaxed = run(2 * threads, threads, ops);
+            System.out.printf("%-8d %8d %12.2f %12.2f %10.1f%n",
+                    threads, cores, strict, relaxed, meanRank(2 * threads));
+        }
+    }
+
+    /* A round: a filled queue, and workers that wait for the start. */
+    private static class Round {
+        private final CountDownLatch start = new CountDownLatch(1);
+        private final Thread[] workers;
+        private final long[] checksums;
+
+        private Round(int threads) {
+            workers = new Thread[threads];
+            checksums = new long[threads];
+        }
+    }
+
+    /** Returns the best throughput of THREADS threads sharing a queue with
+     *  HEAPS heaps, in millions of operations per second. */
+    private static double run(int heaps, int threads, int ops) throws InterruptedException {
+        int perThread = ops / threads;
+        /* Items are boxed up front, so only the queue is timed. Thread t
+         * inserts the items from INITIAL + t * perThread on. */
+        Integer[] items = new Integer[INITIAL + threads * perThread];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = i;
+        }
+        Supplier<Round> rounds = () -> {
+            MultiQueue<Integer> pq = new MultiQueue<>(heaps);
+            for (int i = 0; i < INITIAL; i++) {
+                pq.insert(items[i], ThreadLocalRandom.current().nextDouble());
+            }
+            Round round = new Round(threads);
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                int first = INITIAL + t * perThread;
+                round.workers[t] = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        round.start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long checksum = 0;
+                    for (int i = 0; i < perThread; i += 2) {
+                        pq.insert(items[first + i], random.nextDouble());
+                        Integer item = pq.poll();
+                        if (item != null) {
+                            checksum += item;
+                        }
+                    }
+                    round.checksums[id] = checksum;
+                });
+                round.workers[t].start();
+            }
+            return round;
+        };
+        HeapBenchmark.Step<Round> race = round -> {
+            round.start.countDown();
+            long checksum = 0;
+            for (int t = 0; t < threads; t++) {
+                round.workers[t].join();
+                checksum += round.checksums[t];
+            }
+            return checksum;
+        };
+        double[] best = HeapBenchmark.bestOfRounds(rounds, new int[]{threads * perThread}, race);
+        return 1000 / best[0];
+    }
+
+    /** Returns the mean rank of the items removed from a queue with HEAPS
+     *  heaps, filled with the items 0 to RANK_ITEMS - 1 by priority. */
+    private static double meanRank(int heaps) {
+        MultiQueue<Integer> pq = new MultiQueue<>(heaps);
+        TreeSet<Integer> left = new TreeSet<>();
+        for (int i = 0; i < RANK_ITEMS; i++) {
+            pq.insert(i, i);
+            left.add(i);
+        }
+        long totalRank = 0;
+        for (Integer item = pq.poll(); item != null; item = pq.poll()) {
+            totalRank += left.headSet(item).size();
+            left.remove(item);
+        }
+        return (double) totalRank / RANK_ITEMS;
+    }
+}
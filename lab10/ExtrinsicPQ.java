@@ -1,3 +1,6 @@
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Priority queue where objects have no intrinsic priority. Instead,
  * priorities are supplied as an argument during insertion and can be
@@ -14,4 +17,37 @@ public interface ExtrinsicPQ<T> {
     public void changePriority(T item, double priority);
     /* Returns the number of items in the PQ. */
     public int size();
+
+    /* Inserts items[i] with priority priorities[i] for every i. Heaps may
+     * override this to build the heap in linear time. */
+    public default void insertAll(T[] items, double[] priorities) {
+        if (items.length != priorities.length) {
+            throw new IllegalArgumentException("Need one priority per item.");
+        }
+        for (int i = 0; i < items.length; i += 1) {
+            insert(items[i], priorities[i]);
+        }
+    }
+
+    /* Removes and returns the k items with the smallest priorities, smallest
+     * first, or all items if there are fewer than k. */
+    public default List<T> removeMin(int k) {
+        List<T> removed = new ArrayList<>(Math.min(k, size()));
+        while (removed.size() < k && size() > 0) {
+            removed.add(removeMin());
+        }
+        return removed;
+    }
+
+    /* Removes the items with the smallest priorities into out, smallest first,
+     * until out is full or the PQ is empty, and returns how many were removed.
+     * Allocates nothing, so out can be reused to drain a PQ in batches. */
+    public default int drainTo(T[] out) {
+        int count = 0;
+        while (count < out.length && size() > 0) {
+            out[count] = removeMin();
+            count += 1;
+        }
+        return count;
+    }
 }
@@ -0,0 +1,136 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Times ArrayHeap and IndexedArrayHeap with 2, 4 and 8 children per node on
+ * a million items: inserting them, changing the priorities of a million
+ * random items, and removing them all in order. Then a second heap is built
+ * from the same items with insertAll and drained in batches of 1024 with
+ * drainTo. ArrayHeap scans the whole heap for each priority change, so it
+ * only changes a few thousand, and its time per change is reported from
+ * those. Times are in ns per operation, the best of several rounds.
+ *
+ * Usage: java HeapBenchmark [number of items]
+ */
+public class HeapBenchmark {
+    static final int ROUNDS = 3;
+    private static final int ARRAY_HEAP_CHANGES = 2000;
+
+    /** Creates an empty heap. */
+    private interface HeapFactory {
+        ExtrinsicPQ<Integer> create();
+    }
+
+    /* Where checksums go, so that the JIT cannot skip the work. */
+    private static volatile long sink;
+
+    /** A timed step of a benchmark round. */
+    interface Step<S> {
+        /** Runs the step on STATE and returns a checksum of its results. */
+        long run(S state) throws InterruptedException;
+    }
+
+    /** Keeps CHECKSUM, so that the work that computed it cannot be skipped. */
+    static void consume(long checksum) {
+        sink += checksum;
+    }
+
+    /**
+     * Runs ROUNDS rounds, each on a new state from STATES, timing STEPS in
+     * order within each round, where step i does OPS[i] operations. Returns
+     * the best time per operation of each step over the rounds, in ns.
+     */
+    @SafeVarargs
+    static <S> double[] bestOfRounds(Supplier<S> states, int[] ops, Step<S>... steps)
+            throws InterruptedException {
+        double[] best = new double[steps.length];
+        Arrays.fill(best, Double.MAX_VALUE);
+        for (int round = 0; round < ROUNDS; round++) {
+            S state = states.get();
+            for (int i = 0; i < steps.length; i++) {
+                long start = System.nanoTime();
+                long checksum = steps[i].run(state);
+                best[i] = Math.min(best[i], (double) (System.nanoTime() - start) / ops[i]);
+                consume(checksum);
+            }
+        }
+        return best;
+    }
+
+    /* The heaps of a round: one filled by insert, one by insertAll. */
+    private static class Heaps {
+        private final ExtrinsicPQ<Integer> single;
+        private final ExtrinsicPQ<Integer> bulk;
+
+        private Heaps(HeapFactory factory) {
+            single = factory.create();
+            bulk = factory.create();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        System.out.printf("%-20s %10s %10s %10s %10s %10s%n",
+                "heap", "insert", "change", "removeMin", "insertAll", "drainTo");
+        run("ArrayHeap", ArrayHeap::new, n, ARRAY_HEAP_CHANGES);
+        for (int arity = 2; arity <= 8; arity *= 2) {
+            int d = arity;
+            run("IndexedArrayHeap d=" + d, () -> new IndexedArrayHeap<>(d), n, n);
+        }
+    }
+
+    private static void run(String name, HeapFactory factory, int n, int changes)
+            throws InterruptedException {
+        Random random = new Random(61);
+        Integer[] items = new Integer[n];
+        double[] priorities = new double[n];
+        for (int i = 0; i < n; i++) {
+            items[i] = i;
+            priorities[i] = random.nextDouble();
+        }
+        Integer[] changed = new Integer[changes];
+        double[] newPriorities = new double[changes];
+        for (int i = 0; i < changes; i++) {
+            changed[i] = items[random.nextInt(n)];
+            newPriorities[i] = random.nextDouble();
+        }
+
+        Step<Heaps> insert = heaps -> {
+            for (int i = 0; i < n; i++) {
+                heaps.single.insert(items[i], priorities[i]);
+            }
+            return heaps.single.size();
+        };
+        Step<Heaps> change = heaps -> {
+            for (int i = 0; i < changes; i++) {
+                heaps.single.changePriority(changed[i], newPriorities[i]);
+            }
+            return heaps.single.size();
+        };
+        Step<Heaps> remove = heaps -> {
+            long checksum = 0;
+            while (heaps.single.size() > 0) {
+                checksum += heaps.single.removeMin();
+            }
+            return checksum;
+        };
+        Step<Heaps> insertAll = heaps -> {
+            heaps.bulk.insertAll(items, priorities);
+            return heaps.bulk.size();
+        };
+        Integer[] batch = new Integer[1024];
+        Step<Heaps> drain = heaps -> {
+            long checksum = 0;
+            for (int count = heaps.bulk.drainTo(batch); count > 0;
+                    count = heaps.bulk.drainTo(batch)) {
+                checksum += batch[count - 1];
+            }
+            return checksum;
+        };
+        double[] best = bestOfRounds(() -> new Heaps(factory), new int[]{n, changes, n, n, n},
+                insert, change, remove, insertAll, drain);
+        System.out.printf("%-20s %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                name, best[0], best[1], best[2], best[3], best[4]);
+    }
+}
@@ -0,0 +1,287 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A heap of items with extrinsic priorities that can find any item in
+ * constant time, so changePriority takes O(log n) instead of scanning the
+ * whole heap like ArrayHeap does. A hash map leads from each item to its
+ * entry, which holds the item's index in the heap and is updated whenever
+ * the item moves, so sifting never has to hash.
+ *
+ * Priorities are stored in an array parallel to the entries, so comparisons
+ * read doubles without following a pointer, and nothing is allocated when a
+ * priority changes. Sifting moves entries into a hole instead of swapping
+ * them, iteratively.
+ *
+ * Each node has a configurable number of children. A 4-ary heap is half as
+ * deep as a binary one and its children sit next to each other in memory,
+ * which usually makes removeMin and changePriority faster on large heaps.
+ *
+ * Since items are looked up by equals and hashCode, each item may be in the
+ * heap at most once, and must not change in a way that affects its hash
+ * code while it is in the heap.
+ */
+public class IndexedArrayHeap<T> implements ExtrinsicPQ<T> {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final int arity;
+    /* The heap, from index 0. The children of i are at arity * i + 1 up to
+     * arity * i + arity. */
+    private Entry<T>[] entries;
+    private double[] priorities;
+    private final Map<T, Entry<T>> index = new HashMap<>();
+    private int size;
+
+    /* An item and where it is in the heap. */
+    private static class Entry<T> {
+        private final T item;
+        private int index;
+
+        private Entry(T item) {
+            this.item = item;
+        }
+    }
+
+    /** Creates a binary heap. */
+    public IndexedArrayHeap() {
+        this(2);
+    }
+
+    /** Creates a heap in which each node has ARITY children. */
+    public IndexedArrayHeap(int arity) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("A heap needs an arity of at least 2.");
+        }
+        this.arity = arity;
+        entries = newEntries(DEFAULT_CAPACITY);
+        priorities = new double[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Returns the index of the parent of the node at i.
+     */
+    private int parentIndex(int i) {
+        return (i - 1) / arity;
+    }
+
+    /**
+     * Returns the index of the first child of the node at i.
+     */
+    private int firstChildIndex(int i) {
+        return arity * i + 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Entry<T>[] newEntries(int capacity) {
+        return (Entry<T>[]) new Entry[capacity];
+    }
+
+    /** Puts ENTRY with PRIORITY at index I. */
+    private void place(int i, Entry<T> entry, double priority) {
+        entries[i] = entry;
+        priorities[i] = priority;
+        entry.index = i;
+    }
+
+    /**
+     * Moves the item at index I up until its parent's priority is not larger,
+     * shifting the parents it passes down one level.
+     */
+    private void swim(int i) {
+        Entry<T> entry = entries[i];
+        double priority = priorities[i];
+        while (i > 0) {
+            int parent = parentIndex(i);
+            if (priorities[parent] <= priority) {
+                break;
+            }
+            place(i, entries[parent], priorities[parent]);
+            i = parent;
+        }
+        place(i, entry, priority);
+    }
+
+    /**
+     * Moves the item at index I down until none of its children has a
+     * smaller priority, shifting the children it passes up one level.
+     */
+    private void sink(int i) {
+        Entry<T> entry = entries[i];
+        double priority = priorities[i];
+        while (true) {
+            int first = firstChildIndex(i);
+            if (first >= size) {
+                break;
+            }
+            int last = Math.min(first + arity, size);
+            int min = first;
+            for (int child = first + 1; child < last; child++) {
+                if (priorities[child] < priorities[min]) {
+                    min = child;
+                }
+            }
+            if (priorities[min] >= priority) {
+                break;
+            }
+            place(i, entries[min], priorities[min]);
+            i = min;
+        }
+        place(i, entry, priority);
+    }
+
+    /**
+     * Inserts an item with the given priority value.
+     * @throws IllegalArgumentException if the item is already in the heap.
+     */
+    @Override
+    public void insert(T item, double priority) {
+        Entry<T> entry = new Entry<>(item);
+        if (index.putIfAbsent(item, entry) != null) {
+            throw new IllegalArgumentException("Item is already in the heap: " + item);
+        }
+        if (size == entries.length) {
+            resize(entries.length * 2);
+        }
+        entries[size] = entry;
+        priorities[size] = priority;
+        size++;
+        swim(size - 1);
+    }
+
+    /**
+     * Inserts items[i] with priority itemPriorities[i] for every i. When the
+     * new items are at least as many as the ones already in the heap, they are
+     * appended and the heap is rebuilt bottom-up in O(n) time; otherwise
+     * each one swims.
+     * @throws IllegalArgumentException if an item is already in the heap, in
+     * which case none of the items are inserted.
+     */
+    @Override
+    public void insertAll(T[] items, double[] itemPriorities) {
+        if (items.length != itemPriorities.length) {
+            throw new IllegalArgumentException("Need one priority per item.");
+        }
+        for (int i = 0; i < items.length; i++) {
+            if (index.putIfAbsent(items[i], new Entry<>(items[i])) != null) {
+                for (int j = 0; j < i; j++) {
+                    index.remove(items[j]);
+                }
+                throw new IllegalArgumentException("Item is already in the heap: " + items[i]);
+            }
+        }
+        if (size + items.length > entries.length) {
+            resize(Math.max(entries.length * 2, size + items.length));
+        }
+        int oldSize = size;
+        for (int i = 0; i < items.length; i++) {
+            place(size, index.get(items[i]), itemPriorities[i]);
+            size++;
+            if (items.length < oldSize) {
+                swim(size - 1);
+            }
+        }
+        if (items.length >= oldSize && size > 1) {
+            for (int i = parentIndex(size - 1); i >= 0; i--) {
+                sink(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the item with the smallest priority value, but does not remove
+     * it from the heap.
+     */
+    @Override
+    public T peek() {
+        if (size == 0) {
+            throw new NoSuchElementException("The heap is empty.");
+        }
+        return entries[0].item;
+    }
+
+    /**
+     * Returns the smallest priority value in the heap.
+     */
+    public double peekPriority() {
+        if (size == 0) {
+            throw new NoSuchElementException("The heap is empty.");
+        }
+        return priorities[0];
+    }
+
+    /**
+     * Returns the item with the smallest priority value, and removes it from
+     * the heap. The last item takes its place and sinks.
+     */
+    @Override
+    public T removeMin() {
+        T min = peek();
+        index.remove(min);
+        size--;
+        if (size > 0) {
+            entries[0] = entries[size];
+            priorities[0] = priorities[size];
+            sink(0);
+        }
+        entries[size] = null;
+        return min;
+    }
+
+    /**
+     * Returns the number of items in the PQ.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the item is in the heap.
+     */
+    public boolean contains(T item) {
+        return index.containsKey(item);
+    }
+
+    /**
+     * Returns the priority of the given item.
+     * @throws IllegalArgumentException if the item is not in the heap.
+     */
+    public double priority(T item) {
+        return priorities[indexOf(item)];
+    }
+
+    /**
+     * Changes the priority of the given item in O(log n) time.
+     * @throws IllegalArgumentException if the item is not in the heap.
+     */
+    @Override
+    public void changePriority(T item, double priority) {
+        int i = indexOf(item);
+        double oldPriority = priorities[i];
+        priorities[i] = priority;
+        if (priority < oldPriority) {
+            swim(i);
+        } else if (priority > oldPriority) {
+            sink(i);
+        }
+    }
+
+    private int indexOf(T item) {
+        Entry<T> entry = index.get(item);
+        if (entry == null) {
+            throw new IllegalArgumentException("Item is not in the heap: " + item);
+        }
+        return entry.index;
+    }
+
+    /** Helper function to resize the backing arrays when necessary. */
+    private void resize(int capacity) {
+        Entry<T>[] newEntries = newEntries(capacity);
+        double[] newPriorities = new double[capacity];
+        System.arraycopy(entries, 0, newEntries, 0, size);
+        System.arraycopy(priorities, 0, newPriorities, 0, size);
+        entries = newEntries;
+        priorities = newPriorities;
+    }
+}
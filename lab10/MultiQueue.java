@@ -0,0 +1,263 @@
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A priority queue that many threads can share, for pools of workers that
+ * take jobs in priority order. The items are spread over several heaps,
+ * each an IndexedArrayHeap behind its own lock.
+ *
+ * In strict mode there is a single heap, so removeMin always returns the
+ * smallest item, but every operation waits for the same lock.
+ *
+ * In relaxed mode (a MultiQueue) insert puts the item into a random heap
+ * whose lock is free, and removeMin looks at two random heaps and takes the
+ * smaller of their minimums. Threads rarely want the same lock, so this
+ * scales with the number of threads, but removeMin may return an item that
+ * is not the smallest. With k heaps the expected rank of the item returned,
+ * i.e. the number of smaller items in the queue, is O(k), independent of
+ * the size of the queue, and larger ranks become exponentially unlikely.
+ * About two heaps per thread is a good choice of k.
+ *
+ * See Rihani, Sanders and Dementiev, MultiQueues: Simple Relaxed Concurrent
+ * Priority Queues, SPAA 2015.
+ *
+ * Each item may be in the queue at most once. size() is exact only when no
+ * other thread is changing the queue.
+ */
+public class MultiQueue<T> implements ExtrinsicPQ<T> {
+    /* How many random picks removeMin tries before it scans every heap. */
+    private static final int ATTEMPTS = 8;
+
+    /* A heap and its lock. COUNT and TOP cache the size of the heap and its
+     * smallest priority, so that removeMin can compare heaps without locking
+     * them. */
+    private static final class SubQueue<T> extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        private final IndexedArrayHeap<T> heap = new IndexedArrayHeap<>(4);
+        private volatile int count;
+        private volatile double top = Double.POSITIVE_INFINITY;
+
+        /* Updates COUNT and TOP after a change to the heap. Holds the lock. */
+        private void changed() {
+            count = heap.size();
+            top = count == 0 ? Double.POSITIVE_INFINITY : heap.peekPriority();
+        }
+    }
+
+    private final SubQueue<T>[] queues;
+    /* The heap each item is in, written under the lock of that heap. */
+    private final ConcurrentHashMap<T, SubQueue<T>> owners = new ConcurrentHashMap<>();
+    private final LongAdder size = new LongAdder();
+
+    /** Creates a strict queue. */
+    public MultiQueue() {
+        this(1);
+    }
+
+    /**
+     * Creates a queue with the given number of heaps. One heap gives a
+     * strict queue; more give a relaxed one.
+     */
+    @SuppressWarnings("unchecked")
+    public MultiQueue(int heaps) {
+        if (heaps < 1) {
+            throw new IllegalArgumentException("A queue needs at least one heap.");
+        }
+        queues = (SubQueue<T>[]) new SubQueue[heaps];
+        for (int i = 0; i < heaps; i++) {
+            queues[i] = new SubQueue<>();
+        }
+    }
+
+    /** Creates a relaxed queue for about THREADS threads, with two heaps for
+     *  each of them. */
+    public static <T> MultiQueue<T> relaxed(int threads) {
+        return new MultiQueue<>(2 * Math.max(1, threads));
+    }
+
+    /** Returns true if removeMin always returns the smallest item. */
+    public boolean isStrict() {
+        return queues.length == 1;
+    }
+
+    /**
+     * Inserts an item with the given priority value.
+     * @throws IllegalArgumentException if the item is already in the queue.
+     */
+    @Override
+    public void insert(T item, double priority) {
+        if (item == null) {
+            throw new IllegalArgumentException("Cannot insert a null item.");
+        }
+        SubQueue<T> q = lockAny();
+        try {
+            if (owners.putIfAbsent(item, q) != null) {
+                throw new IllegalArgumentException("Item is already in the queue: " + item);
+            }
+            q.heap.insert(item, priority);
+            q.changed();
+            size.increment();
+        } finally {
+            q.unlock();
+        }
+    }
+
+    /* Locks and returns a random heap whose lock is free, or waits for one
+     * if they all seem to be taken. */
+    private SubQueue<T> lockAny() {
+        if (queues.length == 1) {
+            queues[0].lock();
+            return queues[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            SubQueue<T> q = queues[random.nextInt(queues.length)];
+            if (q.tryLock()) {
+                return q;
+            }
+        }
+        SubQueue<T> q = queues[random.nextInt(queues.length)];
+        q.lock();
+        return q;
+    }
+
+    /**
+     * Returns an item with a small priority value, but does not remove it.
+     * Scans every heap, so it is slow in relaxed mode, and another thread
+     * may remove the item before the caller uses it.
+     * @throws NoSuchElementException if the queue is empty.
+     */
+    @Override
+    public T peek() {
+        while (true) {
+            SubQueue<T> q = minQueue();
+            if (q == null) {
+                throw new NoSuchElementException("The queue is empty.");
+            }
+            q.lock();
+            try {
+                if (q.heap.size() > 0) {
+                    return q.heap.peek();
+                }
+            } finally {
+                q.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes and returns an item with a small priority value: the smallest
+     * in strict mode, and one of expected rank O(number of heaps) in relaxed
+     * mode.
+     * @throws NoSuchElementException if the queue is empty.
+     */
+    @Override
+    public T removeMin() {
+        T item = poll();
+        if (item == null) {
+            throw new NoSuchElementException("The queue is empty.");
+        }
+        return item;
+    }
+
+    /**
+     * Removes and returns an item as removeMin does, or returns null if the
+     * queue is empty. Workers can call this instead of checking size() and
+     * then calling removeMin, which another thread could empty in between.
+     */
+    public T poll() {
+        if (queues.length > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+                SubQueue<T> a = queues[random.nextInt(queues.length)];
+                SubQueue<T> b = queues[random.nextInt(queues.length)];
+                SubQueue<T> q = b.count > 0 && (a.count == 0 || b.top < a.top) ? b : a;
+                if (q.count > 0 && q.tryLock()) {
+                    try {
+                        if (q.heap.size() > 0) {
+                            return remove(q);
+                        }
+                    } finally {
+                        q.unlock();
+                    }
+                }
+            }
+        }
+        /* The picks found nothing, so the queue may be nearly empty: take
+         * the minimum of every heap instead. */
+        while (true) {
+            SubQueue<T> q = minQueue();
+            if (q == null) {
+                return null;
+            }
+            q.lock();
+            try {
+                if (q.heap.size() > 0) {
+                    return remove(q);
+                }
+            } finally {
+                q.unlock();
+            }
+        }
+    }
+
+    /* Removes the minimum of Q, which is locked and not empty. */
+    private T remove(SubQueue<T> q) {
+        T item = q.heap.removeMin();
+        q.changed();
+        owners.remove(item);
+        size.decrement();
+        return item;
+    }
+
+    /* Returns the heap with the smallest top, or null if they all look
+     * empty. */
+    private SubQueue<T> minQueue() {
+        SubQueue<T> min = null;
+        for (SubQueue<T> q : queues) {
+            if (q.count > 0 && (min == null || q.top < min.top)) {
+                min = q;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Changes the priority of the given item.
+     * @throws IllegalArgumentException if the item is not in the queue.
+     */
+    @Override
+    public void changePriority(T item, double priority) {
+        while (true) {
+            SubQueue<T> q = owners.get(item);
+            if (q == null) {
+                throw new IllegalArgumentException("Item is not in the queue: " + item);
+            }
+            q.lock();
+            try {
+                /* The item may have been removed, and maybe inserted into
+                 * another heap, since its owner was read. */
+                if (owners.get(item) == q && q.heap.contains(item)) {
+                    q.heap.changePriority(item, priority);
+                    q.changed();
+                    return;
+                }
+            } finally {
+                q.unlock();
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Returns the number of items in the queue.
+     */
+    @Override
+    public int size() {
+        return (int) Math.max(0, Math.min(size.sum(), Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,150 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Tests of IndexedArrayHeap with several arities.
+ */
+public class TestIndexedArrayHeap {
+    @Test
+    public void testRemoveInOrder() {
+        for (int arity = 2; arity <= 5; arity++) {
+            IndexedArrayHeap<String> pq = new IndexedArrayHeap<>(arity);
+            String[] items = {"c", "i", "g", "d", "a", "h", "e", "b", "f", "j"};
+            double[] priorities = {3, 9, 7, 4, 1, 8, 5, 2, 6, 10};
+            for (int i = 0; i < items.length; i++) {
+                pq.insert(items[i], priorities[i]);
+            }
+            assertEquals(10, pq.size());
+            assertEquals(1, pq.peekPriority(), 0);
+
+            String[] expected = {"a", "b", "c", "d", "e", "f", "g", "h", "i", "j"};
+            for (String item : expected) {
+                assertEquals(item, pq.removeMin());
+                assertFalse(pq.contains(item));
+            }
+            assertEquals(0, pq.size());
+        }
+    }
+
+    @Test
+    public void testChangePriority() {
+        IndexedArrayHeap<String> pq = new IndexedArrayHeap<>();
+        pq.insert("c", 3);
+        pq.insert("cc", 4);
+        pq.insert("d", 5);
+        pq.changePriority("cc", 1);
+        assertEquals("cc", pq.peek());
+        assertEquals(1, pq.priority("cc"), 0);
+        pq.changePriority("cc", 6);
+        assertEquals("c", pq.removeMin());
+        assertEquals("d", pq.removeMin());
+        assertEquals("cc", pq.removeMin());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateInsert() {
+        IndexedArrayHeap<String> pq = new IndexedArrayHeap<>();
+        pq.insert("c", 3);
+        pq.insert("c", 4);
+    }
+
+    /* Builds heaps of random sizes with insertAll, both from empty and on top
+     * of existing items, and checks that they drain in sorted order. */
+    @Test
+    public void testInsertAll() {
+        Random random = new Random(61);
+        for (int arity = 2; arity <= 5; arity++) {
+            for (int n = 0; n < 100; n++) {
+                IndexedArrayHeap<Integer> pq = new IndexedArrayHeap<>(arity);
+                double[] priorities = new double[n];
+                for (int i = 0; i < n; i++) {
+                    priorities[i] = random.nextInt(50);
+                }
+                int old = random.nextInt(n + 1);
+                for (int i = 0; i < old; i++) {
+                    pq.insert(i, priorities[i]);
+                }
+                Integer[] items = new Integer[n - old];
+                for (int i = 0; i < items.length; i++) {
+                    items[i] = old + i;
+                }
+                pq.insertAll(items, Arrays.copyOfRange(priorities, old, n));
+                assertEquals(n, pq.size());
+
+                Integer[] out = new Integer[7];
+                double last = Double.NEGATIVE_INFINITY;
+                int drained = 0;
+                for (int count = pq.drainTo(out); count > 0; count = pq.drainTo(out)) {
+                    for (int i = 0; i < count; i++) {
+                        assertTrue(priorities[out[i]] >= last);
+                        last = priorities[out[i]];
+                    }
+                    drained += count;
+                }
+                assertEquals(n, drained);
+            }
+        }
+    }
+
+    @Test
+    public void testRemoveMinK() {
+        IndexedArrayHeap<String> pq = new IndexedArrayHeap<>(4);
+        pq.insertAll(new String[]{"d", "b", "e", "a", "c"}, new double[]{4, 2, 5, 1, 3});
+        assertEquals(Arrays.asList("a", "b", "c"), pq.removeMin(3));
+        assertFalse(pq.contains("a"));
+        assertEquals(Arrays.asList("d", "e"), pq.removeMin(3));
+        assertEquals(0, pq.removeMin(3).size());
+    }
+
+    @Test
+    public void testInsertAllDuplicate() {
+        IndexedArrayHeap<String> pq = new IndexedArrayHeap<>();
+        pq.insert("b", 2);
+        try {
+            pq.insertAll(new String[]{"a", "b"}, new double[]{1, 3});
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, pq.size());
+            assertFalse(pq.contains("a"));
+            assertEquals(2, pq.priority("b"), 0);
+        }
+    }
+
+    /* Compares random inserts, priority changes and removals against
+     * java.util.PriorityQueue, which gets a priority change as a removal and
+     * a new insert. */
+    @Test
+    public void testRandomized() {
+        Random random = new Random(61);
+        for (int arity = 2; arity <= 8; arity *= 2) {
+            IndexedArrayHeap<Integer> pq = new IndexedArrayHeap<>(arity);
+            Map<Integer, Double> current = new HashMap<>();
+            PriorityQueue<Double> expected = new PriorityQueue<>();
+            for (int i = 0; i < 20000; i++) {
+                int item = random.nextInt(1000);
+                double priority = random.nextInt(500);
+                if (!current.containsKey(item)) {
+                    pq.insert(item, priority);
+                    current.put(item, priority);
+                    expected.add(priority);
+                } else if (random.nextBoolean()) {
+                    pq.changePriority(item, priority);
+                    expected.remove(current.put(item, priority));
+                    expected.add(priority);
+                } else {
+                    double min = expected.poll();
+                    assertEquals(min, pq.peekPriority(), 0);
+                    Integer removed = pq.removeMin();
+                    assertEquals(min, current.remove(removed), 0);
+                }
+                assertEquals(expected.size(), pq.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests of MultiQueue in strict and relaxed mode, from one thread and from
+ * several.
+ */
+public class TestMultiQueue {
+    @Test
+    public void testStrictOrder() {
+        MultiQueue<Integer> pq = new MultiQueue<>();
+        assertTrue(pq.isStrict());
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(i);
+        }
+        Collections.shuffle(items, new Random(61));
+        for (int item : items) {
+            pq.insert(item, item);
+        }
+        pq.changePriority(500, -1);
+        assertEquals(1000, pq.size());
+        assertEquals(500, (int) pq.peek());
+        assertEquals(500, (int) pq.removeMin());
+        for (int i = 0; i < 1000; i++) {
+            if (i != 500) {
+                assertEquals(i, (int) pq.removeMin());
+            }
+        }
+        assertNull(pq.poll());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testRemoveFromEmpty() {
+        new MultiQueue<String>(4).removeMin();
+    }
+
+    @Test
+    public void testDuplicateAndMissing() {
+        MultiQueue<String> pq = new MultiQueue<>(4);
+        pq.insert("a", 1);
+        try {
+            pq.insert("a", 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, pq.size());
+        }
+        try {
+            pq.changePriority("b", 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("a", pq.removeMin());
+        }
+        pq.insert("a", 3);
+        assertEquals("a", pq.poll());
+    }
+
+    /* Drains a relaxed queue from one thread, and checks that every item
+     * comes out once and that the items that came out early were not much
+     * larger than the smallest one left. */
+    @Test
+    public void testRelaxedRank() {
+        int heaps = 8;
+        int n = 20000;
+        MultiQueue<Integer> pq = new MultiQueue<>(heaps);
+        assertFalse(pq.isStrict());
+        TreeSet<Integer> left = new TreeSet<>();
+        for (int i = 0; i < n; i++) {
+            pq.insert(i, i);
+            left.add(i);
+        }
+        long totalRank = 0;
+        while (pq.size() > 0) {
+            int item = pq.removeMin();
+            assertTrue(left.contains(item));
+            totalRank += left.headSet(item).size();
+            left.remove(item);
+        }
+        assertTrue(left.isEmpty());
+        assertTrue("mean rank " + (double) totalRank / n, totalRank < (long) n * heaps);
+    }
+
+    /* Producers insert disjoint items and change some of their priorities
+     * while consumers remove items, until every item has been removed once.
+     * An assertion that fails in a worker only ends that thread, so the
+     * first failure is kept and thrown from the test thread after the join. */
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        for (int heaps : new int[]{1, 8}) {
+            int threads = 4;
+            int perThread = 20000;
+            int n = threads * perThread;
+            MultiQueue<Integer> pq = new MultiQueue<>(heaps);
+            AtomicIntegerArray removed = new AtomicIntegerArray(n);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t * perThread;
+                workers.add(new Thread(() -> {
+                    Random random = new Random(first);
+                    for (int i = first; i < first + perThread; i++) {
+                        pq.insert(i, random.nextDouble());
+                        int j = first + random.nextInt(i - first + 1);
+                        try {
+                            pq.changePriority(j, random.nextDouble());
+                        } catch (IllegalArgumentException e) {
+                            // a consumer has taken it already
+                        }
+                    }
+                }));
+                workers.add(new Thread(() -> {
+                    for (int count = 0; count < perThread; ) {
+                        Integer item = pq.poll();
+                        if (item != null) {
+                            assertEquals(0, removed.getAndIncrement(item));
+                            count++;
+                        }
+                    }
+                }));
+            }
+            for (Thread worker : workers) {
+                worker.setDaemon(true);
+                worker.setUncaughtExceptionHandler((thread, e) -> failure.compareAndSet(null, e));
+                worker.start();
+            }
+            long deadline = System.currentTimeMillis() + 60000;
+            for (Thread worker : workers) {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+            for (Thread worker : workers) {
+                assertFalse(worker.getName() + " did not finish", worker.isAlive());
+            }
+            for (int i = 0; i < n; i++) {
+                assertEquals(1, removed.get(i));
+            }
+            assertEquals(0, pq.size());
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package lab9;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Measures the throughput of maps shared by 1, 2, 4, ... up to N threads,
+ * on two mixes over a fixed range of Integer keys:
+ *     read   90% gets, 5% puts and 5% removes;
+ *     write  50% puts and 50% removes.
+ * The maps are ConcurrentStripedMap, OpenAddressingMap behind one global
+ * lock, and java.util.concurrent.ConcurrentHashMap. Each cell is millions of
+ * operations per second over all threads, measured for a fixed time after a
+ * warmup. Only as many threads as there are cores can run at once, so
+ * throughput stops scaling there.
+ *
+ * Usage: java lab9.ConcurrentMapBenchmark [max threads] [ms per run]
+ */
+public class ConcurrentMapBenchmark {
+    private static final int KEYS = 1 << 16;
+    private static final int OPS_PER_THREAD = 1 << 20;
+
+    /** A Map61B behind one lock, as multi-threaded callers use the lab9 maps
+     *  today. */
+    private static class LockedMap<K, V> implements Map61B<K, V> {
+        private final Map61B<K, V> map;
+
+        LockedMap(Map61B<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public synchronized void clear() {
+            map.clear();
+        }
+
+        @Override
+        public synchronized V get(K key) {
+            return map.get(key);
+        }
+
+        @Override
+        public synchronized boolean containsKey(K key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public synchronized void put(K key, V value) {
+            map.put(key, value);
+        }
+
+        @Override
+        public synchronized int size() {
+            return map.size();
+        }
+
+        @Override
+        public synchronized Set<K> keySet() {
+            return map.keySet();
+        }
+
+        @Override
+        public synchronized V remove(K key) {
+            return map.remove(key);
+        }
+
+        @Override
+        public synchronized V remove(K key, V value) {
+            return map.remove(key, value);
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return keySet().iterator();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Math.max(8, Runtime.getRuntime().availableProcessors());
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        System.out.printf("%d cores%n", Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-22s %7s %9s %9s%n", "map", "threads", "read", "write");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run("ConcurrentStripedMap", ConcurrentStripedMap::new, threads, millis);
+            run("locked OpenAddressing", () -> new LockedMap<>(new OpenAddressingMap<>()),
+                    threads, millis);
+            run("ConcurrentHashMap",
+                    () -> new MapBenchmark.JavaMap<>(new ConcurrentHashMap<>()), threads,
+                    millis);
+        }
+    }
+
+    private static void run(String name, Supplier<Map61B<Integer, Integer>> maps, int threads,
+                            long millis) throws InterruptedException {
+        Integer[] keys = new Integer[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = i;
+        }
+        Map61B<Integer, Integer> map = maps.get();
+        for (int i = 0; i < KEYS; i += 2) {
+            map.put(keys[i], i);
+        }
+
+        /* The warmup runs both mixes, so the JIT sees all operations. */
+        throughput(map, keys, threads, millis / 2, 50);
+        double read = throughput(map, keys, threads, millis, 90);
+        double write = throughput(map, keys, threads, millis, 0);
+        System.out.printf("%-22s %7d %9.2f %9.2f%n", name, threads, read, write);
+    }
+
+    /**
+     * Runs THREADS threads on MAP for MILLIS ms, each doing GETS% gets and
+     * splitting the rest evenly between puts and removes of random keys.
+     * Returns the total throughput in millions of operations per second.
+     */
+    private static double throughput(Map61B<Integer, Integer> map, Integer[] keys, int threads,
+                                     long millis, int gets) throws InterruptedException {
+        int puts = gets + (100 - gets) / 2;
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] counts = new long[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                /* Operations and keys are drawn up front, so the threads do
+                 * not share a random number generator. */
+                Random random = new Random(61 + id);
+                int[] ops = new int[OPS_PER_THREAD];
+                for (int i = 0; i < ops.length; i++) {
+                    ops[i] = random.nextInt(100) << 16 | random.nextInt(KEYS);
+                }
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long count = 0;
+                long checksum = 0;
+                int mask = OPS_PER_THREAD - 1;
+                while (!stop.get()) {
+                    for (int j = 0; j < 1024; j++, count++) {
+                        int op = ops[(int) count & mask];
+                        Integer key = keys[op & 0xFFFF];
+                        int kind = op >>> 16;
+                        Integer result;
+                        if (kind < gets) {
+                            result = map.get(key);
+                        } else if (kind < puts) {
+                            map.put(key, j);
+                            result = null;
+                        } else {
+                            result = map.remove(key);
+                        }
+                        if (result != null) {
+                            checksum += result;
+                        }
+                    }
+                }
+                counts[id] = count;
+                MapBenchmark.consume(checksum);
+            });
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(millis);
+        stop.set(true);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total * 1e3 / elapsed;
+    }
+}
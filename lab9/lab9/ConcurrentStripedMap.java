@@ -0,0 +1,387 @@
+package lab9;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ *  A hash table-backed Map implementation that many threads can share. The
+ *  keys are split by hash into stripes, each a separately chained table
+ *  with its own lock, so writers to different stripes never wait for each
+ *  other. Reads take no lock at all: buckets are read through volatile
+ *  references and a node's key never changes, so a reader sees every
+ *  write that completed before it started.
+ *
+ *  A stripe grows on its own, under its lock, by copying its nodes into a
+ *  table twice the size and then publishing that table. The old table is
+ *  never modified, so readers that are still walking it keep getting
+ *  consistent answers, and the other stripes are not blocked at all.
+ *
+ *  putIfAbsent, compute and the two remove methods are atomic. size() and
+ *  iteration are weakly consistent: they reflect some but not necessarily
+ *  all of the writes made while they run, and never throw
+ *  ConcurrentModificationException.
+ *
+ *  Null keys and null values are not allowed.
+ */
+public class ConcurrentStripedMap<K, V> implements Map61B<K, V> {
+
+    private static final int DEFAULT_STRIPES = 64;
+    private static final int INITIAL_BUCKETS = 4;
+    private static final double MAX_LF = 0.75;
+
+    private static final class Node<K, V> {
+        private final int hash;
+        private final K key;
+        private volatile V value;
+        private volatile Node<K, V> next;
+
+        private Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /* A stripe of the map. Writes hold the lock; reads do not. */
+    private static final class Stripe<K, V> extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        private volatile AtomicReferenceArray<Node<K, V>> buckets =
+                new AtomicReferenceArray<>(INITIAL_BUCKETS);
+        private volatile int size;
+
+        private Node<K, V> find(int hash, Object key) {
+            AtomicReferenceArray<Node<K, V>> table = buckets;
+            Node<K, V> p = table.get(hash & (table.length() - 1));
+            while (p != null && (p.hash != hash || !p.key.equals(key))) {
+                p = p.next;
+            }
+            return p;
+        }
+
+        /* Adds a node for a key that is not in the stripe. Holds the lock. */
+        private void add(int hash, K key, V value) {
+            AtomicReferenceArray<Node<K, V>> table = buckets;
+            if (size + 1 > table.length() * MAX_LF) {
+                table = grow(table);
+            }
+            int i = hash & (table.length() - 1);
+            table.set(i, new Node<>(hash, key, value, table.get(i)));
+            size++;
+        }
+
+        /* Copies the nodes into a table twice the size and publishes it,
+         * leaving the old table as it was for the readers still on it. */
+        private AtomicReferenceArray<Node<K, V>> grow(AtomicReferenceArray<Node<K, V>> old) {
+            AtomicReferenceArray<Node<K, V>> table =
+                    new AtomicReferenceArray<>(old.length() * 2);
+            int mask = table.length() - 1;
+            for (int j = 0; j < old.length(); j++) {
+                for (Node<K, V> p = old.get(j); p != null; p = p.next) {
+                    int i = p.hash & mask;
+                    table.set(i, new Node<>(p.hash, p.key, p.value, table.get(i)));
+                }
+            }
+            buckets = table;
+            return table;
+        }
+
+        /* Unlinks the node of KEY if its value is EXPECTED, or any value if
+         * EXPECTED is null, and returns the value it had. Holds the lock. */
+        private V unlink(int hash, Object key, Object expected) {
+            AtomicReferenceArray<Node<K, V>> table = buckets;
+            int i = hash & (table.length() - 1);
+            Node<K, V> prev = null;
+            for (Node<K, V> p = table.get(i); p != null; prev = p, p = p.next) {
+                if (p.hash == hash && p.key.equals(key)) {
+                    V value = p.value;
+                    if (expected != null && !value.equals(expected)) {
+                        return null;
+                    }
+                    if (prev == null) {
+                        table.set(i, p.next);
+                    } else {
+                        prev.next = p.next;
+                    }
+                    size--;
+                    return value;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Stripe<K, V>[] stripes;
+    /* How far to shift a hash right to get its stripe. */
+    private final int stripeShift;
+
+    public ConcurrentStripedMap() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a map with at least CONCURRENCYLEVEL stripes, so that about
+     * that many threads can write to it at once without waiting.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentStripedMap(int concurrencyLevel) {
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("concurrency level must be positive");
+        }
+        int bits = 0;
+        while ((1 << bits) < concurrencyLevel && bits < 16) {
+            bits++;
+        }
+        stripes = (Stripe<K, V>[]) new Stripe[1 << bits];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        stripeShift = 32 - bits;
+    }
+
+    /** Spreads the bits of the hash code, so that the high bits, which pick
+     *  the stripe, and the low bits, which pick the bucket, both vary. */
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Stripe<K, V> stripe(int hash) {
+        return stripes.length == 1 ? stripes[0] : stripes[hash >>> stripeShift];
+    }
+
+    private static void checkKey(Object key, String method) {
+        if (key == null) {
+            throw new IllegalArgumentException("called " + method + "() with a null key");
+        }
+    }
+
+    private static void checkValue(Object value, String method) {
+        if (value == null) {
+            throw new IllegalArgumentException("called " + method + "() with a null value");
+        }
+    }
+
+    /* Removes all of the mappings from this map. Stripes are cleared one at
+     * a time, so a concurrent put may survive. */
+    @Override
+    public void clear() {
+        for (Stripe<K, V> stripe : stripes) {
+            stripe.lock();
+            try {
+                stripe.buckets = new AtomicReferenceArray<>(INITIAL_BUCKETS);
+                stripe.size = 0;
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    /* Returns the value to which the specified key is mapped, or null if this
+     * map contains no mapping for the key. Takes no lock.
+     */
+    @Override
+    public V get(K key) {
+        checkKey(key, "get");
+        int hash = hash(key);
+        Node<K, V> p = stripe(hash).find(hash, key);
+        return p == null ? null : p.value;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    /* Associates the specified value with the specified key in this map. */
+    @Override
+    public void put(K key, V value) {
+        checkKey(key, "put");
+        checkValue(value, "put");
+        int hash = hash(key);
+        Stripe<K, V> stripe = stripe(hash);
+        stripe.lock();
+        try {
+            Node<K, V> p = stripe.find(hash, key);
+            if (p != null) {
+                p.value = value;
+            } else {
+                stripe.add(hash, key, value);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Associates VALUE with KEY unless KEY already has a value, atomically.
+     * Returns the value KEY already had, or null if VALUE was put.
+     */
+    public V putIfAbsent(K key, V value) {
+        checkKey(key, "putIfAbsent");
+        checkValue(value, "putIfAbsent");
+        int hash = hash(key);
+        Stripe<K, V> stripe = stripe(hash);
+        /* Most calls for a key that is already there need no lock. */
+        Node<K, V> existing = stripe.find(hash, key);
+        if (existing != null) {
+            return existing.value;
+        }
+        stripe.lock();
+        try {
+            Node<K, V> p = stripe.find(hash, key);
+            if (p != null) {
+                return p.value;
+            }
+            stripe.add(hash, key, value);
+            return null;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Atomically replaces the value of KEY with REMAPPING applied to KEY and
+     * its current value, which is null if KEY has none. If REMAPPING returns
+     * null, KEY is removed. REMAPPING runs under the lock of KEY's stripe,
+     * so it should be short and must not use this map.
+     * Returns the new value of KEY, or null if it has none.
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        checkKey(key, "compute");
+        int hash = hash(key);
+        Stripe<K, V> stripe = stripe(hash);
+        stripe.lock();
+        try {
+            Node<K, V> p = stripe.find(hash, key);
+            V value = remapping.apply(key, p == null ? null : p.value);
+            if (value == null) {
+                if (p != null) {
+                    stripe.unlink(hash, key, null);
+                }
+            } else if (p != null) {
+                p.value = value;
+            } else {
+                stripe.add(hash, key, value);
+            }
+            return value;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /* Returns the number of key-value mappings in this map. Stripes are
+     * counted one at a time, so under concurrent writes this is an estimate. */
+    @Override
+    public int size() {
+        long size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            size += stripe.size;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /* Returns a Set view of the keys contained in this map. */
+    @Override
+    public Set<K> keySet() {
+        return new AbstractSet<K>() {
+            @Override
+            public Iterator<K> iterator() {
+                return ConcurrentStripedMap.this.iterator();
+            }
+
+            @Override
+            public int size() {
+                return ConcurrentStripedMap.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (o == null) {
+                    return false;
+                }
+                int hash = hash(o);
+                return stripe(hash).find(hash, o) != null;
+            }
+        };
+    }
+
+    /* Removes the mapping for the specified key from this map if exists.
+     * Returns the value removed, or null if there was none. */
+    @Override
+    public V remove(K key) {
+        return remove(key, null, "remove");
+    }
+
+    /* Removes the entry for the specified key only if it is currently mapped to
+     * the specified value, atomically. Returns the value removed, or null if
+     * there was none. */
+    @Override
+    public V remove(K key, V value) {
+        checkValue(value, "remove");
+        return remove(key, value, "remove");
+    }
+
+    private V remove(K key, V expected, String method) {
+        checkKey(key, method);
+        int hash = hash(key);
+        Stripe<K, V> stripe = stripe(hash);
+        stripe.lock();
+        try {
+            return stripe.unlink(hash, key, expected);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /* Iterates over the keys, stripe by stripe, without locking. */
+    @Override
+    public Iterator<K> iterator() {
+        return new Iterator<K>() {
+            private int stripe = -1;
+            private AtomicReferenceArray<Node<K, V>> table;
+            private int bucket;
+            private Node<K, V> next = advance(null);
+
+            /* Returns the node after P, moving on to the next buckets and
+             * stripes as needed, or null at the end. */
+            private Node<K, V> advance(Node<K, V> p) {
+                p = p == null ? null : p.next;
+                while (p == null) {
+                    if (table == null || bucket == table.length()) {
+                        stripe++;
+                        if (stripe == stripes.length) {
+                            return null;
+                        }
+                        table = stripes[stripe].buckets;
+                        bucket = 0;
+                    } else {
+                        p = table.get(bucket++);
+                    }
+                }
+                return p;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public K next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                K key = next.key;
+                next = advance(next);
+                return key;
+            }
+        };
+    }
+}
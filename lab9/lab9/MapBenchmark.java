@@ -0,0 +1,184 @@
+package lab9;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Times OpenAddressingMap, MyHashMap, ArrayMap and java.util.HashMap on
+ * three mixes of operations over Integer keys:
+ *     fill   puts N distinct keys into an empty map;
+ *     read   90% gets, 5% puts and 5% removes on a map of N keys;
+ *     churn  40% puts, 20% gets and 40% removes on a map of about N keys.
+ * Keys are boxed up front, so only the maps are timed. Each result is the
+ * best of several rounds, after the JIT has warmed up, in ns per operation.
+ * ArrayMap searches linearly, so it only runs on the smallest size, and
+ * MyHashMap preallocates 200 slots per bucket, so it runs out of memory on
+ * a default heap past 100000 keys.
+ *
+ * Usage: java lab9.MapBenchmark [largest N]
+ */
+public class MapBenchmark {
+    static final int ROUNDS = 5;
+    private static final int OPS = 1000000;
+    private static final int ARRAY_MAP_MAX = 1000;
+    private static final int MY_HASH_MAP_MAX = 100000;
+
+    /* Where checksums go, so that the JIT cannot skip the work. */
+    private static volatile long sink;
+
+    /** A timed step of a benchmark round. */
+    interface Step<S> {
+        /** Runs the step on STATE and returns a checksum of its results. */
+        long run(S state);
+    }
+
+    /** Keeps CHECKSUM, so that the work that computed it cannot be skipped. */
+    static void consume(long checksum) {
+        sink += checksum;
+    }
+
+    /**
+     * Runs ROUNDS rounds, each on a new state from STATES, timing STEPS in
+     * order within each round, where step i does OPS[i] operations. Returns
+     * the best time per operation of each step over the rounds, in ns. The
+     * later rounds run after the JIT has warmed up.
+     */
+    @SafeVarargs
+    static <S> double[] bestOfRounds(Supplier<S> states, int[] ops, Step<S>... steps) {
+        double[] best = new double[steps.length];
+        Arrays.fill(best, Double.MAX_VALUE);
+        for (int round = 0; round < ROUNDS; round++) {
+            S state = states.get();
+            for (int i = 0; i < steps.length; i++) {
+                long start = System.nanoTime();
+                long checksum = steps[i].run(state);
+                best[i] = Math.min(best[i], (double) (System.nanoTime() - start) / ops[i]);
+                consume(checksum);
+            }
+        }
+        return best;
+    }
+
+    /** A java.util.Map behind the Map61B interface, as a baseline. */
+    static class JavaMap<K, V> implements Map61B<K, V> {
+        private final Map<K, V> map;
+
+        JavaMap(Map<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public V get(K key) {
+            return map.get(key);
+        }
+
+        @Override
+        public boolean containsKey(K key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public void put(K key, V value) {
+            map.put(key, value);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return map.keySet();
+        }
+
+        @Override
+        public V remove(K key) {
+            return map.remove(key);
+        }
+
+        @Override
+        public V remove(K key, V value) {
+            return map.remove(key, value) ? value : null;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return map.keySet().iterator();
+        }
+    }
+
+    public static void main(String[] args) {
+        int largest = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        System.out.printf("%-18s %9s %9s %9s %9s%n", "map", "N", "fill", "read", "churn");
+        for (int n = ARRAY_MAP_MAX; n <= largest; n *= 10) {
+            run("OpenAddressingMap", OpenAddressingMap::new, n);
+            if (n <= MY_HASH_MAP_MAX) {
+                run("MyHashMap", MyHashMap::new, n);
+            }
+            if (n <= ARRAY_MAP_MAX) {
+                run("ArrayMap", ArrayMap::new, n);
+            }
+            run("java.util.HashMap", () -> new JavaMap<>(new HashMap<>()), n);
+        }
+    }
+
+    private static void run(String name, Supplier<Map61B<Integer, Integer>> maps, int n) {
+        Random random = new Random(61);
+        Integer[] keys = new Integer[2 * n];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextInt();
+        }
+        int[] ops = new int[OPS];
+        Integer[] opKeys = new Integer[OPS];
+        for (int i = 0; i < OPS; i++) {
+            ops[i] = random.nextInt(100);
+            opKeys[i] = keys[random.nextInt(keys.length)];
+        }
+
+        Step<Map61B<Integer, Integer>> fill = map -> {
+            for (int i = 0; i < n; i++) {
+                map.put(keys[i], i);
+            }
+            return map.size();
+        };
+        double[] best = bestOfRounds(maps, new int[]{n, OPS, OPS}, fill,
+                map -> mix(map, ops, opKeys, 90, 95),
+                map -> mix(map, ops, opKeys, 20, 60));
+        System.out.printf("%-18s %9d %9.1f %9.1f %9.1f%n", name, n, best[0], best[1], best[2]);
+    }
+
+    /**
+     * Runs the operations on MAP: an operation below GETS is a get, one below
+     * PUTS a put, and the rest are removes. Returns a checksum of the results.
+     */
+    private static long mix(Map61B<Integer, Integer> map, int[] ops, Integer[] keys,
+                            int gets, int puts) {
+        long checksum = 0;
+        for (int i = 0; i < ops.length; i++) {
+            Integer result;
+            if (ops[i] < gets) {
+                result = map.get(keys[i]);
+            } else if (ops[i] < puts) {
+                map.put(keys[i], i);
+                result = null;
+            } else {
+                result = map.remove(keys[i]);
+            }
+            if (result != null) {
+                checksum += result;
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,306 @@
+package lab9;
+
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ *  A hash table-backed Map implementation with open addressing. Keys and
+ *  values live in two parallel arrays, and a key that collides is placed in
+ *  the next free slot (linear probing), so a map allocates nothing per entry
+ *  and a lookup walks consecutive array slots instead of a chain of buckets.
+ *
+ *  Removed keys leave a tombstone behind, so that probes for keys placed
+ *  after them keep going. Tombstones are reused by later puts and dropped
+ *  when the table is rebuilt. The table grows once live keys and tombstones
+ *  together fill more than the maximum load factor of its slots.
+ *
+ *  Null keys and null values are not allowed.
+ */
+public class OpenAddressingMap<K, V> implements Map61B<K, V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final double DEFAULT_MAX_LF = 0.5;
+
+    /* Marks the key slot of a removed entry. */
+    private static final Object TOMBSTONE = new Object();
+
+    private final double maxLoadFactor;
+
+    /* Keys and values by slot. An empty slot has a null key. The length is
+     * always a power of two, so slots can be found with a mask. */
+    private Object[] keys;
+    private Object[] values;
+    private int size;
+    private int tombstones;
+    /* The number of slots that may be used before the table is rebuilt. */
+    private int threshold;
+    /* Counts changes to the keys, so that iterators can detect them. */
+    private int modCount;
+
+    public OpenAddressingMap() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_LF);
+    }
+
+    /**
+     * Creates a map that holds INITIALSIZE keys without growing, and grows
+     * when more than MAXLOADFACTOR of its slots are used.
+     */
+    public OpenAddressingMap(int initialSize, double maxLoadFactor) {
+        if (initialSize < 0) {
+            throw new IllegalArgumentException("negative initial size");
+        }
+        if (!(maxLoadFactor > 0 && maxLoadFactor < 1)) {
+            throw new IllegalArgumentException("load factor must be between 0 and 1");
+        }
+        this.maxLoadFactor = maxLoadFactor;
+        allocate(capacityFor(initialSize));
+    }
+
+    /* Returns the smallest power of two with room for N keys. */
+    private int capacityFor(int n) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < (1 << 30) && capacity * maxLoadFactor < n + 1) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        threshold = Math.min(capacity - 1, (int) (capacity * maxLoadFactor));
+        size = 0;
+        tombstones = 0;
+    }
+
+    /* Removes all of the mappings from this map. */
+    @Override
+    public void clear() {
+        allocate(DEFAULT_CAPACITY);
+        modCount++;
+    }
+
+    /** Scrambles the hash code before its low bits pick the slot. Linear
+     *  probing needs this more than chaining does: hash codes that are close
+     *  together, such as those of consecutive Integers, would otherwise fill
+     *  runs of adjacent slots, and a run of keys and tombstones makes every
+     *  probe that lands in it walk to its end. Multiplying by an odd constant
+     *  near 2^32 / phi scatters such runs, and folding in the high bits
+     *  lets those affect the slot too.
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Returns the slot holding KEY, or -1 if KEY is not in the map. */
+    private int find(Object key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            Object k = keys[i];
+            if (k == null) {
+                return -1;
+            }
+            if (k != TOMBSTONE && (k == key || k.equals(key))) {
+                return i;
+            }
+        }
+    }
+
+    /* Returns the value to which the specified key is mapped, or null if this
+     * map contains no mapping for the key.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("called get() with a null key");
+        }
+        int i = find(key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("called containsKey() with a null key");
+        }
+        return find(key) >= 0;
+    }
+
+    /* Associates the specified value with the specified key in this map. */
+    @Override
+    public void put(K key, V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("called put() with a null key");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("called put() with a null value");
+        }
+
+        int mask = keys.length - 1;
+        int tombstone = -1;
+        int i = hash(key) & mask;
+        for (Object k = keys[i]; k != null; i = (i + 1) & mask, k = keys[i]) {
+            if (k == TOMBSTONE) {
+                if (tombstone < 0) {
+                    tombstone = i;
+                }
+            } else if (k == key || k.equals(key)) {
+                values[i] = value;
+                return;
+            }
+        }
+
+        /* The key is new: take the first tombstone on its probe path, or
+         * else the empty slot that ended the probe. */
+        if (tombstone >= 0) {
+            i = tombstone;
+            tombstones--;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        modCount++;
+        if (size + tombstones > threshold) {
+            rebuild();
+        }
+    }
+
+    /** Reinserts all keys into a new table without tombstones. The table
+     *  doubles if live keys alone would fill more than half of the threshold,
+     *  and otherwise keeps its size, since then removals made room.
+     */
+    private void rebuild() {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int capacity = oldKeys.length;
+        if (size > threshold / 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        int oldSize = size;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            Object k = oldKeys[j];
+            if (k != null && k != TOMBSTONE) {
+                int i = hash(k) & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+        size = oldSize;
+    }
+
+    /* Returns the number of key-value mappings in this map. */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /* Returns a Set view of the keys contained in this map. The view reads
+     * the map directly and copies nothing. */
+    @Override
+    public Set<K> keySet() {
+        return new AbstractSet<K>() {
+            @Override
+            public Iterator<K> iterator() {
+                return OpenAddressingMap.this.iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o != null && find(o) >= 0;
+            }
+        };
+    }
+
+    /* Removes the mapping for the specified key from this map if exists.
+     * Returns the value removed, or null if there was none. */
+    @Override
+    public V remove(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("called remove() with a null key");
+        }
+        int i = find(key);
+        return i < 0 ? null : removeSlot(i);
+    }
+
+    /* Removes the entry for the specified key only if it is currently mapped to
+     * the specified value. Returns the value removed, or null if there was none. */
+    @Override
+    public V remove(K key, V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("called remove() with a null key");
+        }
+        int i = find(key);
+        if (i < 0 || !values[i].equals(value)) {
+            return null;
+        }
+        return removeSlot(i);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V removeSlot(int i) {
+        V value = (V) values[i];
+        /* A slot followed by an empty one ends every probe through it, so it
+         * can be emptied instead of becoming a tombstone. */
+        if (keys[(i + 1) & (keys.length - 1)] == null) {
+            keys[i] = null;
+        } else {
+            keys[i] = TOMBSTONE;
+            tombstones++;
+        }
+        values[i] = null;
+        size--;
+        modCount++;
+        return value;
+    }
+
+    /* Iterates over the keys in slot order. */
+    @Override
+    public Iterator<K> iterator() {
+        return new Iterator<K>() {
+            private final int expectedModCount = modCount;
+            private int next = advance(0);
+
+            private int advance(int i) {
+                while (i < keys.length && (keys[i] == null || keys[i] == TOMBSTONE)) {
+                    i++;
+                }
+                return i;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < keys.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public K next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                K key = (K) keys[next];
+                next = advance(next + 1);
+                return key;
+            }
+        };
+    }
+}
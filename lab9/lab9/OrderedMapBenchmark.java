@@ -0,0 +1,90 @@
+package lab9;
+
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Times RedBlackTreeMap, BSTMap and java.util.TreeMap inserting N keys in
+ * ascending order and in random order, and then looking each key up in
+ * random order. Results are in ns per operation, the best of several rounds
+ * after the JIT has warmed up.
+ *
+ * Ascending keys turn BSTMap into a linked list: inserts take linear time,
+ * and past a few thousand keys its recursion overflows the stack, which is
+ * reported instead of a time. BSTMap therefore stops at 100000 keys.
+ *
+ * Usage: java lab9.OrderedMapBenchmark [largest N]
+ */
+public class OrderedMapBenchmark {
+    private static final int BST_MAP_MAX = 100000;
+
+    public static void main(String[] args) {
+        int largest = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        System.out.printf("%-18s %9s %11s %11s %11s%n", "map", "N", "sequential", "random",
+                "get");
+        for (int n = 1000; n <= largest; n *= 10) {
+            run("RedBlackTreeMap", RedBlackTreeMap::new, n);
+            if (n <= BST_MAP_MAX) {
+                run("BSTMap", BSTMap::new, n);
+            }
+            run("java.util.TreeMap", () -> new MapBenchmark.JavaMap<>(new TreeMap<>()), n);
+        }
+    }
+
+    private static void run(String name, Supplier<Map61B<Integer, Integer>> maps, int n) {
+        Integer[] ascending = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            ascending[i] = i;
+        }
+        Integer[] shuffled = ascending.clone();
+        Random random = new Random(61);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Integer swap = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = swap;
+        }
+
+        String sequential = time(maps, ascending, null);
+        double[] getTime = new double[1];
+        String randomOrder = time(maps, shuffled, getTime);
+        System.out.printf("%-18s %9d %11s %11s %11.1f%n", name, n, sequential, randomOrder,
+                getTime[0]);
+    }
+
+    /**
+     * Returns the best time per insert of KEYS into new maps, or "overflow"
+     * if the map overflowed the stack. If GETTIME is not null, stores the best
+     * time per lookup of the keys, in reverse order, in its first element.
+     */
+    private static String time(Supplier<Map61B<Integer, Integer>> maps, Integer[] keys,
+                               double[] getTime) {
+        MapBenchmark.Step<Map61B<Integer, Integer>> put = map -> {
+            for (Integer key : keys) {
+                map.put(key, key);
+            }
+            return map.size();
+        };
+        MapBenchmark.Step<Map61B<Integer, Integer>> get = map -> {
+            long checksum = 0;
+            for (int i = keys.length - 1; i >= 0; i--) {
+                checksum += map.get(keys[i]);
+            }
+            return checksum;
+        };
+        double[] best;
+        try {
+            if (getTime == null) {
+                best = MapBenchmark.bestOfRounds(maps, new int[]{keys.length}, put);
+            } else {
+                best = MapBenchmark.bestOfRounds(maps, new int[]{keys.length, keys.length},
+                        put, get);
+                getTime[0] = best[1];
+            }
+        } catch (StackOverflowError e) {
+            return "overflow";
+        }
+        return String.format("%.1f", best[0]);
+    }
+}
@@ -0,0 +1,498 @@
+package lab9;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Implementation of interface Map61B with a left-leaning red-black tree as
+ * core data structure. The tree stays balanced whatever order keys come in,
+ * so every operation takes O(log N) time, and its height is at most 2 lg N,
+ * so the recursive insertion and removal cannot overflow the stack. Lookups
+ * are iterative.
+ *
+ * Each node also stores the size of its subtree, which gives the ordered
+ * operations: floor, ceiling, rank, select and range scans.
+ *
+ * See Sedgewick and Wayne, Algorithms, 4th edition, section 3.3.
+ */
+public class RedBlackTreeMap<K extends Comparable<K>, V> implements Map61B<K, V> {
+
+    private static final boolean RED = true;
+    private static final boolean BLACK = false;
+
+    private class Node {
+        private K key;
+        private V value;
+        private Node left;
+        private Node right;
+        /* The color of the link from the parent to this node. */
+        private boolean color;
+        /* The number of nodes in the subtree rooted here. */
+        private int size;
+
+        private Node(K k, V v) {
+            key = k;
+            value = v;
+            color = RED;
+            size = 1;
+        }
+    }
+
+    private Node root;
+    /* Counts insertions and removals, so that iterators can detect them. */
+    private int modCount;
+
+    /* Creates an empty RedBlackTreeMap. */
+    public RedBlackTreeMap() {
+        this.clear();
+    }
+
+    /* Removes all of the mappings from this map. */
+    @Override
+    public void clear() {
+        root = null;
+        modCount++;
+    }
+
+    private boolean isRed(Node p) {
+        return p != null && p.color == RED;
+    }
+
+    private int size(Node p) {
+        return p == null ? 0 : p.size;
+    }
+
+    private void checkKey(K key, String method) {
+        if (key == null) {
+            throw new IllegalArgumentException("called " + method + "() with a null key");
+        }
+    }
+
+    /** Returns the node with KEY, or null if there is none. */
+    private Node find(K key) {
+        Node p = root;
+        while (p != null) {
+            int compare = key.compareTo(p.key);
+            if (compare < 0) {
+                p = p.left;
+            } else if (compare > 0) {
+                p = p.right;
+            } else {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the value to which the specified key is mapped, or null if this
+     *  map contains no mapping for the key.
+     */
+    @Override
+    public V get(K key) {
+        checkKey(key, "get");
+        Node p = find(key);
+        return p == null ? null : p.value;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        checkKey(key, "containsKey");
+        return find(key) != null;
+    }
+
+    /** Inserts the key KEY
+     *  If it is already present, updates value to be VALUE.
+     */
+    @Override
+    public void put(K key, V value) {
+        checkKey(key, "put");
+        Node p = find(key);
+        if (p != null) {
+            p.value = value;
+            return;
+        }
+        root = putHelper(key, value, root);
+        root.color = BLACK;
+        modCount++;
+    }
+
+    /** Returns the subtree P with (KEY, VALUE) added, rebalanced on the way
+     *  up. KEY must not be in the tree yet. */
+    private Node putHelper(K key, V value, Node p) {
+        if (p == null) {
+            return new Node(key, value);
+        }
+        if (key.compareTo(p.key) < 0) {
+            p.left = putHelper(key, value, p.left);
+        } else {
+            p.right = putHelper(key, value, p.right);
+        }
+        return balance(p);
+    }
+
+    /* Returns the number of key-value mappings in this map. */
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    /** Returns the number of nodes on the longest path from the root down,
+     *  0 if the map is empty. */
+    public int height() {
+        return height(root);
+    }
+
+    private int height(Node p) {
+        return p == null ? 0 : 1 + Math.max(height(p.left), height(p.right));
+    }
+
+    /* Returns a Set view of the keys contained in this map, in order. */
+    @Override
+    public Set<K> keySet() {
+        return new AbstractSet<K>() {
+            @Override
+            public Iterator<K> iterator() {
+                return RedBlackTreeMap.this.iterator();
+            }
+
+            @Override
+            public int size() {
+                return RedBlackTreeMap.this.size();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object o) {
+                return o != null && find((K) o) != null;
+            }
+        };
+    }
+
+    /** Removes KEY from the tree if present
+     *  returns VALUE removed,
+     *  null on failed removal.
+     */
+    @Override
+    public V remove(K key) {
+        checkKey(key, "remove");
+        Node p = find(key);
+        if (p == null) {
+            return null;
+        }
+        V value = p.value;
+        removeNode(key);
+        return value;
+    }
+
+    /** Removes the key-value entry for the specified key only if it is
+     *  currently mapped to the specified value.  Returns the VALUE removed,
+     *  null on failed removal.
+     **/
+    @Override
+    public V remove(K key, V value) {
+        checkKey(key, "remove");
+        Node p = find(key);
+        if (p == null || !p.value.equals(value)) {
+            return null;
+        }
+        removeNode(key);
+        return value;
+    }
+
+    /** Removes KEY, which must be in the tree. */
+    private void removeNode(K key) {
+        if (!isRed(root.left) && !isRed(root.right)) {
+            root.color = RED;
+        }
+        root = removeHelper(key, root);
+        if (root != null) {
+            root.color = BLACK;
+        }
+        modCount++;
+    }
+
+    /** Returns the subtree P with KEY removed. On the way down, keeps the
+     *  current node or its left child red, so that the node finally removed
+     *  is a red leaf and the black height does not change. */
+    private Node removeHelper(K key, Node p) {
+        if (key.compareTo(p.key) < 0) {
+            if (!isRed(p.left) && !isRed(p.left.left)) {
+                p = moveRedLeft(p);
+            }
+            p.left = removeHelper(key, p.left);
+        } else {
+            if (isRed(p.left)) {
+                p = rotateRight(p);
+            }
+            if (key.compareTo(p.key) == 0 && p.right == null) {
+                return null;
+            }
+            if (!isRed(p.right) && !isRed(p.right.left)) {
+                p = moveRedRight(p);
+            }
+            if (key.compareTo(p.key) == 0) {
+                Node successor = min(p.right);
+                p.key = successor.key;
+                p.value = successor.value;
+                p.right = removeMin(p.right);
+            } else {
+                p.right = removeHelper(key, p.right);
+            }
+        }
+        return balance(p);
+    }
+
+    /** Returns the subtree P without its smallest key. */
+    private Node removeMin(Node p) {
+        if (p.left == null) {
+            return null;
+        }
+        if (!isRed(p.left) && !isRed(p.left.left)) {
+            p = moveRedLeft(p);
+        }
+        p.left = removeMin(p.left);
+        return balance(p);
+    }
+
+    private Node rotateLeft(Node p) {
+        Node x = p.right;
+        p.right = x.left;
+        x.left = p;
+        x.color = p.color;
+        p.color = RED;
+        x.size = p.size;
+        p.size = 1 + size(p.left) + size(p.right);
+        return x;
+    }
+
+    private Node rotateRight(Node p) {
+        Node x = p.left;
+        p.left = x.right;
+        x.right = p;
+        x.color = p.color;
+        p.color = RED;
+        x.size = p.size;
+        p.size = 1 + size(p.left) + size(p.right);
+        return x;
+    }
+
+    private void flipColors(Node p) {
+        p.color = !p.color;
+        p.left.color = !p.left.color;
+        p.right.color = !p.right.color;
+    }
+
+    /* Makes p.left or one of its children red, where p is red and both
+     * p.left and p.left.left are black. */
+    private Node moveRedLeft(Node p) {
+        flipColors(p);
+        if (isRed(p.right.left)) {
+            p.right = rotateRight(p.right);
+            p = rotateLeft(p);
+            flipColors(p);
+        }
+        return p;
+    }
+
+    /* Makes p.right or one of its children red, where p is red and both
+     * p.right and p.right.left are black. */
+    private Node moveRedRight(Node p) {
+        flipColors(p);
+        if (isRed(p.left.left)) {
+            p = rotateRight(p);
+            flipColors(p);
+        }
+        return p;
+    }
+
+    /* Restores the red-black invariants at p and updates its size. */
+    private Node balance(Node p) {
+        if (isRed(p.right) && !isRed(p.left)) {
+            p = rotateLeft(p);
+        }
+        if (isRed(p.left) && isRed(p.left.left)) {
+            p = rotateRight(p);
+        }
+        if (isRed(p.left) && isRed(p.right)) {
+            flipColors(p);
+        }
+        p.size = 1 + size(p.left) + size(p.right);
+        return p;
+    }
+
+    private Node min(Node p) {
+        while (p.left != null) {
+            p = p.left;
+        }
+        return p;
+    }
+
+    /** Returns the smallest key, or null if the map is empty. */
+    public K min() {
+        return root == null ? null : min(root).key;
+    }
+
+    /** Returns the largest key, or null if the map is empty. */
+    public K max() {
+        Node p = root;
+        if (p == null) {
+            return null;
+        }
+        while (p.right != null) {
+            p = p.right;
+        }
+        return p.key;
+    }
+
+    /** Returns the largest key less than or equal to KEY, or null if there
+     *  is none. */
+    public K floor(K key) {
+        checkKey(key, "floor");
+        K floor = null;
+        Node p = root;
+        while (p != null) {
+            int compare = key.compareTo(p.key);
+            if (compare < 0) {
+                p = p.left;
+            } else if (compare > 0) {
+                floor = p.key;
+                p = p.right;
+            } else {
+                return p.key;
+            }
+        }
+        return floor;
+    }
+
+    /** Returns the smallest key greater than or equal to KEY, or null if
+     *  there is none. */
+    public K ceiling(K key) {
+        checkKey(key, "ceiling");
+        K ceiling = null;
+        Node p = root;
+        while (p != null) {
+            int compare = key.compareTo(p.key);
+            if (compare > 0) {
+                p = p.right;
+            } else if (compare < 0) {
+                ceiling = p.key;
+                p = p.left;
+            } else {
+                return p.key;
+            }
+        }
+        return ceiling;
+    }
+
+    /** Returns the number of keys less than KEY. KEY need not be in the
+     *  map. */
+    public int rank(K key) {
+        checkKey(key, "rank");
+        int rank = 0;
+        Node p = root;
+        while (p != null) {
+            int compare = key.compareTo(p.key);
+            if (compare < 0) {
+                p = p.left;
+            } else if (compare > 0) {
+                rank += 1 + size(p.left);
+                p = p.right;
+            } else {
+                return rank + size(p.left);
+            }
+        }
+        return rank;
+    }
+
+    /** Returns the key of rank I, i.e. the key with I smaller keys. */
+    public K select(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IllegalArgumentException("called select() with rank " + i
+                    + " in a map of size " + size());
+        }
+        Node p = root;
+        while (true) {
+            int leftSize = size(p.left);
+            if (i < leftSize) {
+                p = p.left;
+            } else if (i > leftSize) {
+                i -= leftSize + 1;
+                p = p.right;
+            } else {
+                return p.key;
+            }
+        }
+    }
+
+    /** Returns the number of keys between LO and HI, inclusive. */
+    public int rangeSize(K lo, K hi) {
+        checkKey(lo, "rangeSize");
+        checkKey(hi, "rangeSize");
+        if (lo.compareTo(hi) > 0) {
+            return 0;
+        }
+        return rank(hi) - rank(lo) + (containsKey(hi) ? 1 : 0);
+    }
+
+    /** Returns the keys between LO and HI, inclusive, in order. The scan
+     *  visits only the O(log N) nodes on the paths to LO and HI besides the
+     *  keys it returns. */
+    public Iterable<K> range(K lo, K hi) {
+        checkKey(lo, "range");
+        checkKey(hi, "range");
+        return () -> new KeyIterator(lo, hi);
+    }
+
+    /* Iterates over the keys in order. */
+    @Override
+    public Iterator<K> iterator() {
+        return new KeyIterator(null, null);
+    }
+
+    /** An in-order iterator over the keys from LO to HI, either of which may
+     *  be null for no bound. The stack holds the nodes whose left subtrees
+     *  have been visited but which have not been returned themselves. */
+    private class KeyIterator implements Iterator<K> {
+        private final K hi;
+        private final Deque<Node> stack = new ArrayDeque<>();
+        private final int expectedModCount = modCount;
+
+        KeyIterator(K lo, K hi) {
+            this.hi = hi;
+            Node p = root;
+            while (p != null) {
+                if (lo != null && lo.compareTo(p.key) > 0) {
+                    p = p.right;
+                } else {
+                    stack.push(p);
+                    p = p.left;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty() && (hi == null || hi.compareTo(stack.peek().key) >= 0);
+        }
+
+        @Override
+        public K next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node next = stack.pop();
+            for (Node p = next.right; p != null; p = p.left) {
+                stack.push(p);
+            }
+            return next.key;
+        }
+    }
+}
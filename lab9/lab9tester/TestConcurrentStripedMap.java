@@ -0,0 +1,148 @@
+package lab9tester;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import lab9.ConcurrentStripedMap;
+
+/**
+ * Tests of ConcurrentStripedMap, alone and shared between threads.
+ */
+public class TestConcurrentStripedMap {
+    private static final int THREADS = 4;
+
+    @Test
+    public void sanityTest() {
+        ConcurrentStripedMap<String, Integer> b = new ConcurrentStripedMap<>();
+        assertEquals(0, b.size());
+        assertNull(b.get("starChild"));
+        assertNull(b.putIfAbsent("starChild", 5));
+        assertEquals(5, b.putIfAbsent("starChild", 6).intValue());
+        assertEquals(5, b.get("starChild").intValue());
+        assertEquals(7, b.compute("starChild", (k, v) -> v + 2).intValue());
+        assertEquals(1, b.compute("KISS", (k, v) -> v == null ? 1 : v + 1).intValue());
+        assertEquals(2, b.size());
+        assertNull(b.compute("KISS", (k, v) -> null));
+        assertFalse(b.containsKey("KISS"));
+        assertNull(b.remove("starChild", 5));
+        assertEquals(7, b.remove("starChild", 7).intValue());
+        assertEquals(0, b.size());
+    }
+
+    /* Compares against java.util.HashMap on one thread, through several
+     * rounds of growth. */
+    @Test
+    public void randomizedTest() {
+        Random random = new Random(61);
+        ConcurrentStripedMap<Integer, Integer> b = new ConcurrentStripedMap<>(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(5000);
+            int op = random.nextInt(3);
+            if (op == 0) {
+                b.put(key, i);
+                expected.put(key, i);
+            } else if (op == 1) {
+                assertEquals(expected.remove(key), b.remove(key));
+            } else {
+                assertEquals(expected.get(key), b.get(key));
+            }
+        }
+        assertEquals(expected.size(), b.size());
+        assertEquals(expected.keySet(), b.keySet());
+        Set<Integer> iterated = new HashSet<>();
+        for (int key : b) {
+            assertTrue(iterated.add(key));
+        }
+        assertEquals(expected.keySet(), iterated);
+    }
+
+    /* Threads increment shared counters with compute and claim keys with
+     * putIfAbsent; no update may be lost and each key has one owner. */
+    @Test
+    public void concurrentUpdatesTest() throws InterruptedException {
+        ConcurrentStripedMap<Integer, Integer> counters = new ConcurrentStripedMap<>();
+        ConcurrentStripedMap<Integer, Integer> owners = new ConcurrentStripedMap<>();
+        AtomicInteger claimed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 20000; i++) {
+                    counters.compute(i % 100, (k, v) -> v == null ? 1 : v + 1);
+                    if (owners.putIfAbsent(i, id) == null) {
+                        claimed.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(THREADS * 200, counters.get(i).intValue());
+        }
+        assertEquals(20000, owners.size());
+        assertEquals(20000, claimed.get());
+    }
+
+    /* Readers run while a writer grows the map; every key put before the
+     * readers started must stay visible. */
+    @Test
+    public void readDuringGrowthTest() throws InterruptedException {
+        ConcurrentStripedMap<Integer, Integer> b = new ConcurrentStripedMap<>(2);
+        for (int i = 0; i < 1000; i++) {
+            b.put(i, i);
+        }
+        AtomicInteger missing = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            for (int i = 1000; i < 200000; i++) {
+                b.put(i, i);
+            }
+        });
+        Thread[] readers = new Thread[THREADS - 1];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                for (int round = 0; round < 200; round++) {
+                    for (int i = 0; i < 1000; i++) {
+                        Integer value = b.get(i);
+                        if (value == null || value != i) {
+                            missing.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(0, missing.get());
+        assertEquals(200000, b.size());
+    }
+
+    public static void main(String[] args) {
+        jh61b.junit.TestRunner.runTests(TestConcurrentStripedMap.class);
+    }
+}
@@ -0,0 +1,177 @@
+package lab9tester;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import lab9.OpenAddressingMap;
+
+/**
+ * Tests of OpenAddressingMap, in particular that removals leave probe
+ * sequences intact and that the table grows and shrinks its tombstones.
+ */
+public class TestOpenAddressingMap {
+
+    /* Keys with the same hash code, so that they all probe the same slots. */
+    private static class Collider {
+        private final int id;
+
+        Collider(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 61;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Collider && ((Collider) o).id == id;
+        }
+    }
+
+    @Test
+    public void sanityPutGetTest() {
+        OpenAddressingMap<String, Integer> b = new OpenAddressingMap<>();
+        assertEquals(0, b.size());
+        assertNull(b.get("starChild"));
+        for (int i = 0; i < 455; i++) {
+            b.put("hi" + i, i);
+        }
+        assertEquals(455, b.size());
+        for (int i = 0; i < 455; i++) {
+            assertEquals(i, b.get("hi" + i).intValue());
+            assertTrue(b.containsKey("hi" + i));
+        }
+        b.put("hi7", 8);
+        assertEquals(455, b.size());
+        assertEquals(8, b.get("hi7").intValue());
+        b.clear();
+        assertEquals(0, b.size());
+        assertFalse(b.containsKey("hi7"));
+    }
+
+    @Test
+    public void removeKeepsProbesTest() {
+        OpenAddressingMap<Collider, Integer> b = new OpenAddressingMap<>();
+        for (int i = 0; i < 6; i++) {
+            b.put(new Collider(i), i);
+        }
+        assertEquals(2, b.remove(new Collider(2)).intValue());
+        assertNull(b.remove(new Collider(2)));
+        assertEquals(5, b.get(new Collider(5)).intValue());
+        assertNull(b.remove(new Collider(3), 4));
+        assertEquals(3, b.remove(new Collider(3), 3).intValue());
+        assertEquals(4, b.size());
+
+        // a new key reuses a tombstone and is still found
+        b.put(new Collider(9), 9);
+        assertEquals(9, b.get(new Collider(9)).intValue());
+        assertEquals(5, b.get(new Collider(5)).intValue());
+        assertEquals(5, b.size());
+    }
+
+    @Test
+    public void keySetTest() {
+        OpenAddressingMap<Integer, String> b = new OpenAddressingMap<>(4, 0.75);
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            b.put(i, "v" + i);
+            expected.add(i);
+        }
+        b.remove(50);
+        expected.remove(50);
+        assertEquals(expected, b.keySet());
+        Set<Integer> iterated = new HashSet<>();
+        for (int key : b) {
+            iterated.add(key);
+        }
+        assertEquals(expected, iterated);
+        assertTrue(b.keySet().contains(7));
+        assertFalse(b.keySet().contains(50));
+    }
+
+    /* Mixes puts and removes on a small key range, so that tombstones pile
+     * up and get cleared, and compares against java.util.HashMap. */
+    @Test
+    public void randomizedTest() {
+        Random random = new Random(61);
+        OpenAddressingMap<Integer, Integer> b = new OpenAddressingMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(1000);
+            int op = random.nextInt(3);
+            if (op == 0) {
+                b.put(key, i);
+                expected.put(key, i);
+            } else if (op == 1) {
+                assertEquals(expected.remove(key), b.remove(key));
+            } else {
+                assertEquals(expected.get(key), b.get(key));
+            }
+            assertEquals(expected.size(), b.size());
+        }
+        assertEquals(expected.keySet(), b.keySet());
+    }
+
+    /* Integer keys whose hash code is the key itself, which count the slots
+     * that probes compare them with. */
+    private static class SequentialKey {
+        private static long compared;
+        private final int id;
+
+        SequentialKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            compared++;
+            return o instanceof SequentialKey && ((SequentialKey) o).id == id;
+        }
+    }
+
+    /* Churns puts and removes over the consecutive keys 0 to 16383. Without
+     * scrambling the hash codes, these fill runs of adjacent slots and each
+     * lookup afterwards compares about 4.5 keys; with it, less than 1. */
+    @Test
+    public void sequentialKeyChurnTest() {
+        int n = 1 << 14;
+        Random random = new Random(61);
+        OpenAddressingMap<SequentialKey, Integer> b = new OpenAddressingMap<>();
+        for (int i = 0; i < 200000; i++) {
+            SequentialKey key = new SequentialKey(random.nextInt(n));
+            if (random.nextBoolean()) {
+                b.put(key, i);
+            } else {
+                b.remove(key);
+            }
+        }
+        SequentialKey.compared = 0;
+        for (int i = 0; i < 2 * n; i++) {
+            b.get(new SequentialKey(i));
+        }
+        double perLookup = (double) SequentialKey.compared / (2 * n);
+        assertTrue("compared " + perLookup + " keys per lookup", perLookup < 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullKeyTest() {
+        new OpenAddressingMap<String, Integer>().put(null, 1);
+    }
+
+    public static void main(String[] args) {
+        jh61b.junit.TestRunner.runTests(TestOpenAddressingMap.class);
+    }
+}
@@ -0,0 +1,127 @@
+package lab9tester;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import lab9.RedBlackTreeMap;
+
+/**
+ * Tests of RedBlackTreeMap against java.util.TreeMap, including the ordered
+ * operations and inputs that would degrade an unbalanced tree.
+ */
+public class TestRedBlackTreeMap {
+
+    @Test
+    public void sanityTest() {
+        RedBlackTreeMap<String, Integer> b = new RedBlackTreeMap<>();
+        assertEquals(0, b.size());
+        assertNull(b.get("starChild"));
+        assertNull(b.min());
+        b.put("starChild", 5);
+        b.put("KISS", 5);
+        b.put("starChild", 6);
+        assertEquals(2, b.size());
+        assertEquals(6, b.get("starChild").intValue());
+        assertTrue(b.containsKey("KISS"));
+        assertNull(b.remove("KISS", 4));
+        assertEquals(5, b.remove("KISS", 5).intValue());
+        assertFalse(b.containsKey("KISS"));
+        assertEquals(6, b.remove("starChild").intValue());
+        assertEquals(0, b.size());
+        assertNull(b.remove("starChild"));
+    }
+
+    /* Sorted keys turn an unbalanced tree into a list deep enough to
+     * overflow the stack. A red-black tree stays within 2 lg N. */
+    @Test
+    public void sortedInsertTest() {
+        RedBlackTreeMap<Integer, Integer> b = new RedBlackTreeMap<>();
+        int n = 200000;
+        for (int i = 0; i < n; i++) {
+            b.put(i, -i);
+        }
+        assertEquals(n, b.size());
+        assertTrue("height " + b.height(), b.height() <= 2 * Math.log(n) / Math.log(2));
+        assertEquals(-12345, b.get(12345).intValue());
+        int expected = 0;
+        for (int key : b) {
+            assertEquals(expected++, key);
+        }
+        for (int i = n - 1; i >= 0; i -= 2) {
+            assertEquals(-i, b.remove(i).intValue());
+        }
+        assertEquals(n / 2, b.size());
+        assertEquals(0, b.min().intValue());
+        assertEquals(n - 2, b.max().intValue());
+    }
+
+    @Test
+    public void orderedOperationsTest() {
+        RedBlackTreeMap<Integer, String> b = new RedBlackTreeMap<>();
+        for (int i = 0; i < 100; i += 10) {
+            b.put(i, "v" + i);
+        }
+        assertEquals(20, b.floor(25).intValue());
+        assertEquals(20, b.floor(20).intValue());
+        assertNull(b.floor(-1));
+        assertEquals(30, b.ceiling(25).intValue());
+        assertNull(b.ceiling(91));
+        assertEquals(3, b.rank(30));
+        assertEquals(3, b.rank(25));
+        assertEquals(10, b.rank(1000));
+        assertEquals(70, b.select(7).intValue());
+        assertEquals(3, b.rangeSize(15, 40));
+        assertEquals(0, b.rangeSize(40, 15));
+
+        List<Integer> range = new ArrayList<>();
+        for (int key : b.range(15, 40)) {
+            range.add(key);
+        }
+        List<Integer> expected = new ArrayList<>();
+        expected.add(20);
+        expected.add(30);
+        expected.add(40);
+        assertEquals(expected, range);
+    }
+
+    @Test
+    public void randomizedTest() {
+        Random random = new Random(61);
+        RedBlackTreeMap<Integer, Integer> b = new RedBlackTreeMap<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(2000);
+            int op = random.nextInt(4);
+            if (op == 0) {
+                b.put(key, i);
+                expected.put(key, i);
+            } else if (op == 1) {
+                assertEquals(expected.remove(key), b.remove(key));
+            } else if (op == 2) {
+                assertEquals(expected.get(key), b.get(key));
+                assertEquals(expected.floorKey(key), b.floor(key));
+                assertEquals(expected.ceilingKey(key), b.ceiling(key));
+                assertEquals(expected.headMap(key).size(), b.rank(key));
+            } else if (!expected.isEmpty()) {
+                int rank = random.nextInt(expected.size());
+                assertEquals(new ArrayList<>(expected.keySet()).get(rank), b.select(rank));
+            }
+            assertEquals(expected.size(), b.size());
+        }
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(b.keySet()));
+        List<Integer> range = new ArrayList<>();
+        for (int key : b.range(500, 1500)) {
+            range.add(key);
+        }
+        assertEquals(new ArrayList<>(expected.subMap(500, true, 1500, true).keySet()), range);
+    }
+
+    public static void main(String[] args) {
+        jh61b.junit.TestRunner.runTests(TestRedBlackTreeMap.class);
+    }
+}
@@ -0,0 +1,133 @@
+import bearmaps.bench.Workload;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs the benchmarked BearMaps operations for bearmaps.bench.BearMapsBenchmark, which cannot
+ * call the default package itself. The recorded route and raster queries are read the way
+ * TestRouter and TestRasterer read them. Closest node queries are random points in the root
+ * tile, and prefix queries are the first two to four characters of random cleaned location
+ * names of the map, as typed into the search box, which sends at least two.
+ */
+public class BenchmarkWorkload implements Workload {
+    private static final int POINTS = 1024;
+    private static final int PREFIXES = 256;
+
+    private GraphDB graph;
+    private final Rasterer rasterer = new Rasterer();
+    private double[][] points;
+    private double[][] routes;
+    private List<Map<String, Double>> rasters;
+    private String[] prefixes;
+
+    @Override
+    public void load(String osmPath, String pathParams, String rasterParams) throws IOException {
+        graph = new GraphDB(osmPath);
+        Random random = new Random(61);
+
+        points = new double[POINTS][];
+        for (int i = 0; i < POINTS; ++i) {
+            points[i] = new double[]{
+                MapServer.ROOT_ULLON
+                        + random.nextDouble() * (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON),
+                MapServer.ROOT_LRLAT
+                        + random.nextDouble() * (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT)};
+        }
+
+        double[] pathValues = readParams(pathParams);
+        routes = new double[pathValues.length / 4][];
+        for (int i = 0; i < routes.length; ++i) {
+            routes[i] = Arrays.copyOfRange(pathValues, 4 * i, 4 * i + 4);
+        }
+
+        double[] rasterValues = readParams(rasterParams);
+        rasters = new ArrayList<>();
+        for (int i = 0; i + 6 <= rasterValues.length; i += 6) {
+            Map<String, Double> params = new HashMap<>();
+            params.put("ullon", rasterValues[i]);
+            params.put("ullat", rasterValues[i + 1]);
+            params.put("lrlon", rasterValues[i + 2]);
+            params.put("lrlat", rasterValues[i + 3]);
+            params.put("w", rasterValues[i + 4]);
+            params.put("h", rasterValues[i + 5]);
+            rasters.add(params);
+        }
+
+        List<String> names = new ArrayList<>(graph.cleanLocationNames());
+        Collections.shuffle(names, random);
+        prefixes = new String[Math.min(PREFIXES, names.size())];
+        for (int i = 0; i < prefixes.length; ++i) {
+            String name = names.get(i);
+            prefixes[i] = name.substring(0, Math.min(name.length(), 2 + i % 3));
+        }
+        if (routes.length == 0 || rasters.isEmpty() || prefixes.length == 0) {
+            throw new IllegalArgumentException("No route, raster or prefix queries to run.");
+        }
+    }
+
+    /**
+     * Returns the numbers in a params file, skipping the comment lines.
+     */
+    private static double[] readParams(String path) throws IOException {
+        List<Double> values = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                values.add(Double.parseDouble(line));
+            }
+        }
+        double[] result = new double[values.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public void prepare(String engine) {
+        Router.Engine e = Router.Engine.valueOf(engine);
+        if (e == Router.Engine.ALT) {
+            graph.landmarks();
+        } else if (e == Router.Engine.CH) {
+            graph.contractionHierarchy();
+        }
+    }
+
+    @Override
+    public Object buildGraph(String osmPath) {
+        return new GraphDB(osmPath);
+    }
+
+    @Override
+    public long closest(int i) {
+        double[] point = points[Math.floorMod(i, points.length)];
+        return graph.closest(point[0], point[1]);
+    }
+
+    @Override
+    public Object shortestPath(int i, String engine) {
+        double[] route = routes[Math.floorMod(i, routes.length)];
+        return Router.shortestPath(graph, route[0], route[1], route[2], route[3],
+                Router.Engine.valueOf(engine));
+    }
+
+    @Override
+    public Object getMapRaster(int i) {
+        return rasterer.getMapRaster(rasters.get(Math.floorMod(i, rasters.size())));
+    }
+
+    @Override
+    public Object getLocationsByPrefix(int i) {
+        return graph.getLocationsByPrefix(prefixes[Math.floorMod(i, prefixes.length)]);
+    }
+}
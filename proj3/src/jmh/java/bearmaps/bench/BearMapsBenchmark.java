@@ -0,0 +1,102 @@
+package bearmaps.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the work behind the BearMaps API: snapping a location to the closest node,
+ * routing over the recorded path_params.txt queries with each engine, rastering the recorded
+ * raster_params.txt queries, and prefix search. The graph is loaded once per fork and shared
+ * by all of them. Each benchmark call runs the next recorded query, so a score is the average
+ * over all queries.
+ *
+ * Run from proj3 with
+ *     mvn -P bench compile exec:exec
+ * which writes the results to target/jmh-result.json. Pass JMH options with -Dbench.args, e.g.
+ * -Dbench.args="-p osm=other.osm.xml shortestPath" to route on another map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BearMapsBenchmark {
+    /** The graph and queries, loaded once per fork. */
+    @State(Scope.Benchmark)
+    public static class Data {
+        @Param("../library-sp18/data/berkeley-2018.osm.xml")
+        public String osm;
+        @Param("path_params.txt")
+        public String pathParams;
+        @Param("raster_params.txt")
+        public String rasterParams;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            workload = Workload.create();
+            workload.load(osm, pathParams, rasterParams);
+        }
+    }
+
+    /** The routing engine, preprocessed before it is timed. */
+    @State(Scope.Benchmark)
+    public static class Engine {
+        @Param({"ASTAR", "ALT", "CH"})
+        public String engine;
+
+        @Setup(Level.Trial)
+        public void setUp(Data data) {
+            data.workload.prepare(engine);
+        }
+    }
+
+    /** The number of the next query, per thread. */
+    @State(Scope.Thread)
+    public static class Queries {
+        int next;
+    }
+
+    @Benchmark
+    public long closest(Data data, Queries queries) {
+        return data.workload.closest(queries.next++);
+    }
+
+    @Benchmark
+    public Object shortestPath(Data data, Engine engine, Queries queries) {
+        return data.workload.shortestPath(queries.next++, engine.engine);
+    }
+
+    @Benchmark
+    public Object getMapRaster(Data data, Queries queries) {
+        return data.workload.getMapRaster(queries.next++);
+    }
+
+    @Benchmark
+    public Object getLocationsByPrefix(Data data, Queries queries) {
+        return data.workload.getLocationsByPrefix(queries.next++);
+    }
+
+    /** Parses the OSM file and builds the graph, its spatial index and the search trie. */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public Object buildGraph(Data data) {
+        return data.workload.buildGraph(data.osm);
+    }
+}
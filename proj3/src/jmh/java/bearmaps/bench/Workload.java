@@ -0,0 +1,51 @@
+package bearmaps.bench;
+
+/**
+ * The operations the benchmarks time. BearMaps lives in the default package, which code in a
+ * named package cannot refer to, and JMH only accepts benchmarks in a named package. So the
+ * benchmarks call BearMaps through this interface, which BenchmarkWorkload in the default
+ * package implements. The implementation is looked up once per trial; after that every call
+ * is an ordinary interface call that the JIT inlines.
+ *
+ * Each query method takes a query number and wraps it around the recorded queries, so that a
+ * benchmark can cycle through all of them.
+ */
+public interface Workload {
+    /**
+     * Returns a new instance of the default package implementation.
+     */
+    static Workload create() throws ReflectiveOperationException {
+        return (Workload) Class.forName("BenchmarkWorkload").getDeclaredConstructor()
+                .newInstance();
+    }
+
+    /**
+     * Loads the graph and the recorded queries.
+     * @param osmPath The OSM file to load.
+     * @param pathParams The file of /route queries, as in path_params.txt.
+     * @param rasterParams The file of /raster queries, as in raster_params.txt.
+     */
+    void load(String osmPath, String pathParams, String rasterParams) throws Exception;
+
+    /**
+     * Builds whatever the given routing engine preprocesses, so that it is not timed with the
+     * first query.
+     * @param engine The name of a Router.Engine.
+     */
+    void prepare(String engine);
+
+    /** Builds the graph of an OSM file from scratch, without the snapshot cache. */
+    Object buildGraph(String osmPath);
+
+    /** Returns the id of the node closest to query point i. */
+    long closest(int i);
+
+    /** Returns the shortest path of route query i, found with the given engine. */
+    Object shortestPath(int i, String engine);
+
+    /** Returns the result of raster query i. */
+    Object getMapRaster(int i);
+
+    /** Returns the full names of the locations that start with prefix i. */
+    Object getLocationsByPrefix(int i);
+}
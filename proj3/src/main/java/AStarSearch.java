@@ -0,0 +1,229 @@
+import java.util.Arrays;
+
+/**
+ * Reusable A* search over the dense vertex indices of a CompactGraph, using the precomputed
+ * edge weights and the great-circle distance to the target as the heuristic. Given Landmarks,
+ * the heuristic is the larger of that distance and the landmark lower bound (ALT). searchAll
+ * instead runs Dijkstra's algorithm from one start to many targets at once.
+ *
+ * Searches by Router.Metric.TIME add up edge travel times instead, and divide the heuristic
+ * distance by the highest speed in the graph, so that it still never overestimates.
+ *
+ * All per-vertex state lives in primitive arrays sized to the graph. Instead of clearing those
+ * arrays before every query, each query gets a new generation number, and a vertex's entries
+ * only count as set if its stamp equals the current generation. After the first query a search
+ * allocates nothing. Instances are not thread-safe; Router keeps one per thread.
+ */
+class AStarSearch {
+    private static final double SECONDS_PER_HOUR = 3600;
+
+    private final CompactGraph graph;
+    private final double[] distances;
+    private final int[] parents;
+    private final double[] heuristics;
+    /** Generation in which the distance, parent and heuristic of each vertex were set. */
+    private final int[] reached;
+    /** Generation in which each vertex was settled, i.e. removed from the fringe. */
+    private final int[] settled;
+    /** Generation in which each vertex was a target of searchAll, allocated on first use. */
+    private int[] targetStamps;
+    private final IndexedMinHeap fringe;
+    private int generation;
+    private int settledCount;
+    /** Landmarks used by the current search, or null. */
+    private Landmarks landmarks;
+    /** Whether the current search adds up travel times rather than lengths. */
+    private boolean byTime;
+    /** Converts heuristic distances into the units of the current metric. */
+    private double heuristicScale;
+
+    AStarSearch(CompactGraph graph) {
+        int n = graph.capacity();
+        this.graph = graph;
+        this.distances = new double[n];
+        this.parents = new int[n];
+        this.heuristics = new double[n];
+        this.reached = new int[n];
+        this.settled = new int[n];
+        this.fringe = new IndexedMinHeap(n);
+        this.generation = 0;
+    }
+
+    /** Returns true if this search runs over the given graph. */
+    boolean isFor(CompactGraph g) {
+        return graph == g;
+    }
+
+    /**
+     * Finds the shortest path from s to t. Afterwards the path can be read backwards from t
+     * using parent().
+     * @param s The index of the start vertex.
+     * @param t The index of the target vertex.
+     * @return True if t is reachable from s.
+     */
+    boolean search(int s, int t) {
+        return search(s, t, null);
+    }
+
+    /**
+     * Like search(s, t), also using the lower bounds of the given landmarks, if not null.
+     */
+    boolean search(int s, int t, Landmarks landmarks) {
+        return search(s, t, landmarks, Router.Metric.DISTANCE);
+    }
+
+    /**
+     * Like search(s, t, landmarks), minimizing the given metric. Distances and parents read
+     * afterwards are in that metric.
+     */
+    boolean search(int s, int t, Landmarks landmarks, Router.Metric metric) {
+        nextGeneration(metric);
+        this.landmarks = landmarks;
+        double tlon = graph.lon(t);
+        double tlat = graph.lat(t);
+
+        reach(s, 0, -1, t, tlon, tlat);
+        fringe.insertOrDecrease(s, heuristics[s]);
+
+        while (!fringe.isEmpty()) {
+            int v = fringe.removeMin();
+            settled[v] = generation;
+            settledCount++;
+
+            if (v == t) {
+                fringe.clear();
+                return true;
+            }
+
+            double dsv = distances[v];
+            for (int e = graph.firstEdge(v), end = graph.endEdge(v); e < end; ++e) {
+                int w = graph.target(e);
+                if (settled[w] == generation || graph.isRemoved(w)) {
+                    continue;
+                }
+
+                double dsw = dsv + (byTime ? graph.time(e) : graph.weight(e));
+                if (reached[w] != generation) {
+                    reach(w, dsw, v, t, tlon, tlat);
+                } else if (dsw < distances[w]) {
+                    distances[w] = dsw;
+                    parents[w] = v;
+                } else {
+                    continue;
+                }
+                fringe.insertOrDecrease(w, dsw + heuristics[w]);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from s until all the given targets are settled, which answers
+     * the queries from s to every target at the cost of a single search. Afterwards the
+     * distance and path to each reached target can be read as after search(s, t).
+     * @param s The index of the start vertex.
+     * @param targets The indices of the targets; negative indices are ignored.
+     * @param metric The metric to minimize.
+     * @return The number of distinct targets reached.
+     */
+    int searchAll(int s, int[] targets, Router.Metric metric) {
+        nextGeneration(metric);
+        this.landmarks = null;
+        if (targetStamps == null) {
+            targetStamps = new int[distances.length];
+        }
+        int remaining = 0;
+        for (int t : targets) {
+            if (t >= 0 && targetStamps[t] != generation) {
+                targetStamps[t] = generation;
+                remaining++;
+            }
+        }
+        int targetCount = remaining;
+
+        reach(s, 0, -1, -1, 0, 0);
+        fringe.insertOrDecrease(s, 0);
+
+        while (!fringe.isEmpty() && remaining > 0) {
+            int v = fringe.removeMin();
+            settled[v] = generation;
+            settledCount++;
+            if (targetStamps[v] == generation) {
+                remaining--;
+            }
+
+            double dsv = distances[v];
+            for (int e = graph.firstEdge(v), end = graph.endEdge(v); e < end; ++e) {
+                int w = graph.target(e);
+                if (settled[w] == generation || graph.isRemoved(w)) {
+                    continue;
+                }
+
+                double dsw = dsv + (byTime ? graph.time(e) : graph.weight(e));
+                if (reached[w] != generation) {
+                    reach(w, dsw, v, -1, 0, 0);
+                } else if (dsw < distances[w]) {
+                    distances[w] = dsw;
+                    parents[w] = v;
+                } else {
+                    continue;
+                }
+                fringe.insertOrDecrease(w, dsw);
+            }
+        }
+
+        fringe.clear();
+        return targetCount - remaining;
+    }
+
+    /** Returns true if the last search settled v, i.e. found its shortest path. */
+    boolean isSettled(int v) {
+        return settled[v] == generation;
+    }
+
+    /** Returns the distance from the start to v found by the last search. */
+    double distance(int v) {
+        return distances[v];
+    }
+
+    /** Returns the vertex before v on the path found by the last search, or -1 at the start. */
+    int parent(int v) {
+        return parents[v];
+    }
+
+    /** Returns the number of vertices settled by the last search. */
+    int settledCount() {
+        return settledCount;
+    }
+
+    private void reach(int v, double distance, int parent, int t, double tlon, double tlat) {
+        reached[v] = generation;
+        distances[v] = distance;
+        parents[v] = parent;
+        if (t < 0) {
+            heuristics[v] = 0;
+            return;
+        }
+        double h = GraphDB.distance(graph.lon(v), graph.lat(v), tlon, tlat);
+        if (landmarks != null) {
+            h = Math.max(h, landmarks.lowerBound(v, t));
+        }
+        heuristics[v] = h * heuristicScale;
+    }
+
+    private void nextGeneration(Router.Metric metric) {
+        byTime = metric == Router.Metric.TIME;
+        heuristicScale = byTime ? SECONDS_PER_HOUR / graph.maxSpeed() : 1;
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(reached, 0);
+            Arrays.fill(settled, 0);
+            if (targetStamps != null) {
+                Arrays.fill(targetStamps, 0);
+            }
+            generation = 0;
+        }
+        generation++;
+        settledCount = 0;
+    }
+}
@@ -0,0 +1,513 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Frozen road graph in compressed sparse row (CSR) form. Vertices are identified by dense int
+ * indices 0..n-1, assigned in increasing order of OSM id so that an id can be mapped to its
+ * index with a binary search. Coordinates are kept in parallel double arrays and the adjacency
+ * lists of all vertices are packed into a single int array, where the neighbors of v are
+ * targets[offsets[v]] up to (but not including) targets[offsets[v + 1]]. Every undirected road
+ * segment is stored once in each direction. Ways are interned, so all edges of a road share one
+ * GraphDB.Edge and equal names share one String.
+ *
+ * The structure cannot grow after it is built, but vertices can be removed. Removed vertices
+ * keep their index; they are skipped when iterating and never returned as neighbors.
+ */
+class CompactGraph {
+    private static final double SECONDS_PER_HOUR = 3600;
+
+    private final long[] ids;
+    private final double[] lons;
+    private final double[] lats;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] edgeWays;
+    /** Great-circle length of each edge in miles, computed once when the graph is built. */
+    private final double[] weights;
+    /** Travel time of each edge in seconds at the speed of its way. */
+    private final double[] times;
+    /** Highest speed of any way in mph, which no route can beat on average. */
+    private final double maxSpeed;
+    private final GraphDB.Edge[] ways;
+    private final Map<Integer, String> names;
+    private final boolean[] removed;
+    private int size;
+
+    private CompactGraph(long[] ids, double[] lons, double[] lats, int[] offsets, int[] targets,
+                         int[] edgeWays, GraphDB.Edge[] ways, Map<Integer, String> names) {
+        this.ids = ids;
+        this.lons = lons;
+        this.lats = lats;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.edgeWays = edgeWays;
+        this.ways = ways;
+        this.names = names;
+        this.removed = new boolean[ids.length];
+        this.size = ids.length;
+
+        this.weights = new double[targets.length];
+        this.times = new double[targets.length];
+        for (int v = 0; v < ids.length; ++v) {
+            for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+                int w = targets[e];
+                weights[e] = GraphDB.distance(lons[v], lats[v], lons[w], lats[w]);
+                times[e] = weights[e] / ways[edgeWays[e]].speed * SECONDS_PER_HOUR;
+            }
+        }
+
+        double fastest = 0;
+        for (GraphDB.Edge way : ways) {
+            fastest = Math.max(fastest, way.speed);
+        }
+        this.maxSpeed = fastest > 0 ? fastest : SpeedLimits.DEFAULT_MPH;
+    }
+
+    /** Returns the number of vertex indices, including removed vertices. */
+    int capacity() {
+        return ids.length;
+    }
+
+    /** Returns the number of vertices that have not been removed. */
+    int size() {
+        return size;
+    }
+
+    /** Returns the number of directed edges, including edges to removed vertices. */
+    int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Returns the dense index of the vertex with the given OSM id, or -1 if there is no such
+     * vertex or it has been removed.
+     */
+    int index(long id) {
+        int v = Arrays.binarySearch(ids, id);
+        return v >= 0 && !removed[v] ? v : -1;
+    }
+
+    /** Returns the OSM id of vertex v. */
+    long id(int v) {
+        return ids[v];
+    }
+
+    double lon(int v) {
+        return lons[v];
+    }
+
+    double lat(int v) {
+        return lats[v];
+    }
+
+    /** Returns the longitudes of all vertices, indexed by vertex. Must not be modified. */
+    double[] lons() {
+        return lons;
+    }
+
+    /** Returns the latitudes of all vertices, indexed by vertex. Must not be modified. */
+    double[] lats() {
+        return lats;
+    }
+
+    /** Returns the name of vertex v, or the empty string if it has none. */
+    String name(int v) {
+        return names.getOrDefault(v, "");
+    }
+
+    boolean isRemoved(int v) {
+        return removed[v];
+    }
+
+    /** Returns the index of the first edge leaving v. */
+    int firstEdge(int v) {
+        return offsets[v];
+    }
+
+    /** Returns one past the index of the last edge leaving v. */
+    int endEdge(int v) {
+        return offsets[v + 1];
+    }
+
+    /** Returns the vertex that edge e points to. Callers must skip removed targets. */
+    int target(int e) {
+        return targets[e];
+    }
+
+    /** Returns the great-circle length of edge e in miles. */
+    double weight(int e) {
+        return weights[e];
+    }
+
+    /** Returns the time in seconds it takes to drive along edge e at the speed of its way. */
+    double time(int e) {
+        return times[e];
+    }
+
+    /**
+     * Returns the highest speed of any way in mph. The great-circle distance to a vertex
+     * divided by this speed never overestimates the time it takes to drive there.
+     */
+    double maxSpeed() {
+        return maxSpeed;
+    }
+
+    /** Returns the way that edge e is part of. */
+    GraphDB.Edge way(int e) {
+        return ways[edgeWays[e]];
+    }
+
+    /**
+     * Returns the edge index from vertex v to vertex w, or -1 if they are not adjacent.
+     */
+    int findEdge(int v, int w) {
+        if (removed[v] || removed[w]) {
+            return -1;
+        }
+        for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+            if (targets[e] == w) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Marks vertex v as removed, along with all edges to and from it.
+     * @return True if the vertex had not already been removed.
+     */
+    boolean remove(int v) {
+        if (removed[v]) {
+            return false;
+        }
+        removed[v] = true;
+        size--;
+        return true;
+    }
+
+    /** Returns the OSM ids of all vertices that have not been removed. */
+    Iterable<Long> vertexIds() {
+        return () -> new IdIterator(0, ids.length, false);
+    }
+
+    /** Returns the OSM ids of the neighbors of v that have not been removed. */
+    Iterable<Long> adjacentIds(int v) {
+        return () -> new IdIterator(offsets[v], offsets[v + 1], true);
+    }
+
+    /**
+     * Writes this graph, including which vertices have been removed, to a snapshot.
+     */
+    void writeSnapshot(GraphSnapshot.Writer out) throws IOException {
+        out.writeLongs(ids, ids.length);
+        out.writeDoubles(lons, lons.length);
+        out.writeDoubles(lats, lats.length);
+        out.writeInts(offsets, offsets.length);
+        out.writeInts(targets, targets.length);
+        out.writeInts(edgeWays, edgeWays.length);
+
+        out.writeInt(ways.length);
+        for (GraphDB.Edge way : ways) {
+            out.writeString(way.name);
+            out.writeString(way.maxSpeed);
+            out.writeString(way.highway);
+            out.writeDouble(way.speed);
+        }
+        out.writeInt(names.size());
+        for (Map.Entry<Integer, String> entry : names.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeString(entry.getValue());
+        }
+        for (boolean r : removed) {
+            out.writeBoolean(r);
+        }
+    }
+
+    /**
+     * Reads a graph written by writeSnapshot.
+     */
+    static CompactGraph readSnapshot(GraphSnapshot.Reader in) {
+        long[] ids = in.readLongs();
+        double[] lons = in.readDoubles();
+        double[] lats = in.readDoubles();
+        int[] offsets = in.readInts();
+        int[] targets = in.readInts();
+        int[] edgeWays = in.readInts();
+
+        Map<String, String> interned = new HashMap<>();
+        GraphDB.Edge[] ways = new GraphDB.Edge[in.readInt()];
+        for (int i = 0; i < ways.length; ++i) {
+            ways[i] = new GraphDB.Edge();
+            ways[i].name = interned.computeIfAbsent(in.readString(), s -> s);
+            ways[i].maxSpeed = interned.computeIfAbsent(in.readString(), s -> s);
+            ways[i].highway = interned.computeIfAbsent(in.readString(), s -> s);
+            ways[i].speed = in.readDouble();
+        }
+        int nameCount = in.readInt();
+        Map<Integer, String> names = new HashMap<>();
+        for (int i = 0; i < nameCount; ++i) {
+            names.put(in.readInt(), in.readString());
+        }
+
+        CompactGraph graph = new CompactGraph(ids, lons, lats, offsets, targets, edgeWays,
+                ways, names);
+        for (int v = 0; v < ids.length; ++v) {
+            if (in.readBoolean()) {
+                graph.remove(v);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Iterates over a range of vertex indices, or over the targets of a range of edges,
+     * skipping removed vertices and boxing the ids only as they are returned.
+     */
+    private class IdIterator implements Iterator<Long> {
+        private final int end;
+        private final boolean edges;
+        private int next;
+
+        IdIterator(int start, int end, boolean edges) {
+            this.end = end;
+            this.edges = edges;
+            this.next = start;
+            skipRemoved();
+        }
+
+        private int vertex(int i) {
+            return edges ? targets[i] : i;
+        }
+
+        private void skipRemoved() {
+            while (next < end && removed[vertex(next)]) {
+                next++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        @Override
+        public Long next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            long id = ids[vertex(next)];
+            next++;
+            skipRemoved();
+            return id;
+        }
+    }
+
+    /**
+     * Accumulates vertices and undirected edges in growable primitive arrays, then packs them
+     * into a CompactGraph. If the same pair of vertices is connected more than once, the edge
+     * added last wins, as with repeated puts into a map.
+     */
+    static class Builder {
+        private long[] ids;
+        private double[] lons;
+        private double[] lats;
+        private final Map<Integer, String> names = new HashMap<>();
+        private int vertexCount;
+
+        private int[] from;
+        private int[] to;
+        private int[] edgeWays;
+        private int edgeCount;
+
+        private final Map<GraphDB.Edge, Integer> wayIndices = new IdentityHashMap<>();
+        private final Map<String, GraphDB.Edge> internedWays = new HashMap<>();
+        private final Map<String, String> internedNames = new HashMap<>();
+        private GraphDB.Edge[] ways = new GraphDB.Edge[16];
+        private int wayCount;
+
+        Builder(int expectedVertices) {
+            int capacity = Math.max(16, expectedVertices);
+            ids = new long[capacity];
+            lons = new double[capacity];
+            lats = new double[capacity];
+            from = new int[capacity];
+            to = new int[capacity];
+            edgeWays = new int[capacity];
+        }
+
+        /**
+         * Adds a vertex and returns its builder index, used to refer to it in addEdge. The
+         * builder index is not the index the vertex will have in the built graph. Each id may
+         * only be added once.
+         */
+        int addVertex(long id, double lon, double lat, String name) {
+            if (vertexCount == ids.length) {
+                int capacity = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                lons = Arrays.copyOf(lons, capacity);
+                lats = Arrays.copyOf(lats, capacity);
+            }
+            ids[vertexCount] = id;
+            lons[vertexCount] = lon;
+            lats[vertexCount] = lat;
+            if (name != null && !name.isEmpty()) {
+                names.put(vertexCount, name);
+            }
+            return vertexCount++;
+        }
+
+        /**
+         * Adds an undirected edge between the vertices with builder indices v and w.
+         */
+        void addEdge(int v, int w, GraphDB.Edge way) {
+            if (edgeCount == from.length) {
+                int capacity = from.length * 2;
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                edgeWays = Arrays.copyOf(edgeWays, capacity);
+            }
+            from[edgeCount] = v;
+            to[edgeCount] = w;
+            edgeWays[edgeCount] = internWay(way);
+            edgeCount++;
+        }
+
+        /**
+         * Returns the index of a shared way equal to the given one. Ways are looked up by
+         * identity first, so the many segments of one way cost a single lookup each.
+         */
+        private int internWay(GraphDB.Edge way) {
+            Integer index = wayIndices.get(way);
+            if (index != null) {
+                return index;
+            }
+
+            String key = wayKey(way);
+            GraphDB.Edge interned = internedWays.get(key);
+            if (interned == null) {
+                interned = way;
+                interned.name = intern(way.name);
+                interned.maxSpeed = intern(way.maxSpeed);
+                interned.highway = intern(way.highway);
+                internedWays.put(key, interned);
+                if (wayCount == ways.length) {
+                    ways = Arrays.copyOf(ways, wayCount * 2);
+                }
+                ways[wayCount] = interned;
+                wayIndices.put(interned, wayCount++);
+            }
+
+            index = wayIndices.get(interned);
+            wayIndices.put(way, index);
+            return index;
+        }
+
+        private static String wayKey(GraphDB.Edge way) {
+            return way.name + '\0' + way.maxSpeed + '\0' + way.highway + '\0' + way.speed;
+        }
+
+        private String intern(String s) {
+            String interned = internedNames.putIfAbsent(s, s);
+            return interned != null ? interned : s;
+        }
+
+        CompactGraph build() {
+            int n = vertexCount;
+
+            // Sort vertices by id, so ids can be looked up with a binary search
+            long[] sortedIds = Arrays.copyOf(ids, n);
+            Arrays.sort(sortedIds);
+            int[] rank = new int[n];
+            double[] sortedLons = new double[n];
+            double[] sortedLats = new double[n];
+            Map<Integer, String> sortedNames = new HashMap<>();
+            for (int v = 0; v < n; ++v) {
+                int i = Arrays.binarySearch(sortedIds, ids[v]);
+                rank[v] = i;
+                sortedLons[i] = lons[v];
+                sortedLats[i] = lats[v];
+                String name = names.get(v);
+                if (name != null) {
+                    sortedNames.put(i, name);
+                }
+            }
+
+            // Count the edges leaving each vertex, then fill in both directions of each edge
+            int[] offsets = new int[n + 1];
+            for (int e = 0; e < edgeCount; ++e) {
+                offsets[rank[from[e]] + 1]++;
+                offsets[rank[to[e]] + 1]++;
+            }
+            for (int v = 0; v < n; ++v) {
+                offsets[v + 1] += offsets[v];
+            }
+
+            int[] targets = new int[offsets[n]];
+            int[] wayOf = new int[offsets[n]];
+            int[] sequence = new int[offsets[n]];
+            int[] fill = Arrays.copyOf(offsets, n);
+            for (int e = 0; e < edgeCount; ++e) {
+                int v = rank[from[e]];
+                int w = rank[to[e]];
+                targets[fill[v]] = w;
+                wayOf[fill[v]] = edgeWays[e];
+                sequence[fill[v]++] = e;
+                targets[fill[w]] = v;
+                wayOf[fill[w]] = edgeWays[e];
+                sequence[fill[w]++] = e;
+            }
+
+            // Sort each adjacency list by target and drop duplicate targets, keeping the last
+            int[] packedOffsets = new int[n + 1];
+            int packed = 0;
+            for (int v = 0; v < n; ++v) {
+                int start = offsets[v];
+                int end = offsets[v + 1];
+                sortAdjacency(targets, wayOf, sequence, start, end);
+                packedOffsets[v] = packed;
+                for (int e = start; e < end; ++e) {
+                    if (e + 1 < end && targets[e + 1] == targets[e]) {
+                        continue;
+                    }
+                    targets[packed] = targets[e];
+                    wayOf[packed] = wayOf[e];
+                    packed++;
+                }
+            }
+            packedOffsets[n] = packed;
+
+            return new CompactGraph(sortedIds, sortedLons, sortedLats, packedOffsets,
+                    Arrays.copyOf(targets, packed), Arrays.copyOf(wayOf, packed),
+                    Arrays.copyOf(ways, wayCount), sortedNames);
+        }
+
+        /**
+         * Insertion sort of one adjacency list by (target, insertion sequence). Adjacency
+         * lists of road networks are short, so this beats a general purpose sort.
+         */
+        private static void sortAdjacency(int[] targets, int[] wayOf, int[] sequence,
+                                          int start, int end) {
+            for (int i = start + 1; i < end; ++i) {
+                int target = targets[i];
+                int way = wayOf[i];
+                int seq = sequence[i];
+                int j = i - 1;
+                while (j >= start && (targets[j] > target
+                        || (targets[j] == target && sequence[j] > seq))) {
+                    targets[j + 1] = targets[j];
+                    wayOf[j + 1] = wayOf[j];
+                    sequence[j + 1] = sequence[j];
+                    j--;
+                }
+                targets[j + 1] = target;
+                wayOf[j + 1] = way;
+                sequence[j + 1] = seq;
+            }
+        }
+    }
+}
@@ -0,0 +1,545 @@
+import java.util.Arrays;
+
+/**
+ * Contraction hierarchy (CH) over the road graph, an optional preprocessing stage that makes
+ * route queries orders of magnitude faster than A*.
+ *
+ * Preprocessing contracts the vertices one at a time, least important first. Contracting v
+ * removes it from the remaining graph and adds a shortcut u-w for each pair of neighbors whose
+ * shortest path runs through v, unless a local "witness" search finds a path of equal or
+ * smaller length around v. The order in which vertices were contracted is their rank. Every
+ * shortest path then has an equally short path that first only climbs in rank and then only
+ * descends, so a query runs two Dijkstra searches, one from each end, that both follow only
+ * upward edges and meet at the top. Shortcuts remember the vertex they bypass, so the path
+ * can be unpacked back into original road segments. When several paths are equally short, a
+ * query returns one of them, which need not be the one A* finds.
+ *
+ * The hierarchy is immutable once built and can be shared between threads; each thread runs
+ * queries through its own Query object.
+ */
+class ContractionHierarchy {
+    /** Number of vertices a witness search may settle before assuming there is no witness. */
+    private static final int WITNESS_SETTLE_LIMIT = 100;
+
+    private final CompactGraph graph;
+    /** Number of vertices in the graph when it was contracted, to detect later removals. */
+    private final int graphSize;
+    private final int[] ranks;
+    /** Upward edges in CSR form: the edges from each vertex to higher ranked neighbors. */
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] weights;
+    /** For shortcuts the vertex they bypass, and -1 for original road segments. */
+    private final int[] middles;
+    private final int shortcutCount;
+
+    /**
+     * Contracts all vertices of the given graph.
+     */
+    ContractionHierarchy(CompactGraph graph) {
+        this.graph = graph;
+        this.graphSize = graph.size();
+
+        Contractor contractor = new Contractor(graph);
+        contractor.contractAll();
+        this.ranks = contractor.ranks;
+        this.shortcutCount = contractor.shortcutCount;
+
+        int n = graph.capacity();
+        offsets = new int[n + 1];
+        for (int v = 0; v < n; ++v) {
+            offsets[v + 1] = offsets[v] + contractor.upDegrees[v];
+        }
+        targets = new int[offsets[n]];
+        weights = new double[offsets[n]];
+        middles = new int[offsets[n]];
+        for (int v = 0; v < n; ++v) {
+            int degree = contractor.upDegrees[v];
+            System.arraycopy(contractor.upTargets[v], 0, targets, offsets[v], degree);
+            System.arraycopy(contractor.upWeights[v], 0, weights, offsets[v], degree);
+            System.arraycopy(contractor.upMiddles[v], 0, middles, offsets[v], degree);
+        }
+    }
+
+    /** Returns true if this hierarchy was built over the given graph. */
+    boolean isFor(CompactGraph g) {
+        return graph == g;
+    }
+
+    /** Returns false if vertices have been removed from the graph since it was contracted. */
+    boolean isCurrent() {
+        return graph.size() == graphSize;
+    }
+
+    /** Returns the number of shortcut edges added by preprocessing. */
+    int shortcutCount() {
+        return shortcutCount;
+    }
+
+    /** Returns the rank of vertex v, i.e. the order in which it was contracted. */
+    int rank(int v) {
+        return ranks[v];
+    }
+
+    /** Returns a new set of reusable query state. */
+    Query newQuery() {
+        return new Query();
+    }
+
+    /** Returns the index of the upward edge between v and w, where v has the lower rank. */
+    private int findUpwardEdge(int v, int w) {
+        for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+            if (targets[e] == w) {
+                return e;
+            }
+        }
+        throw new IllegalStateException("No upward edge from " + v + " to " + w);
+    }
+
+    /**
+     * State for bidirectional upward queries, reused between queries with generation stamps
+     * like AStarSearch. Not thread-safe.
+     */
+    class Query {
+        private final Direction forward = new Direction();
+        private final Direction backward = new Direction();
+        private int generation;
+        private int settledCount;
+
+        private int[] path = new int[64];
+        private int pathLength;
+        private int[] chain = new int[64];
+        private int[] stack = new int[64];
+
+        /** Returns the hierarchy this query runs over. */
+        ContractionHierarchy hierarchy() {
+            return ContractionHierarchy.this;
+        }
+
+        /**
+         * Finds the shortest path from s to t. Afterwards the path can be read with
+         * pathLength() and pathVertex().
+         * @return True if t is reachable from s.
+         */
+        boolean search(int s, int t) {
+            nextGeneration();
+            pathLength = 0;
+            forward.reach(s, 0, -1, -1, generation);
+            backward.reach(t, 0, -1, -1, generation);
+
+            double best = Double.POSITIVE_INFINITY;
+            int meet = -1;
+            while (true) {
+                double forwardMin = forward.minKey();
+                double backwardMin = backward.minKey();
+                if (Math.min(forwardMin, backwardMin) >= best) {
+                    break;
+                }
+
+                Direction direction = forwardMin <= backwardMin ? forward : backward;
+                Direction other = direction == forward ? backward : forward;
+                int v = direction.settleNext();
+                settledCount++;
+
+                if (other.reached[v] == generation) {
+                    double distance = direction.distances[v] + other.distances[v];
+                    if (distance < best) {
+                        best = distance;
+                        meet = v;
+                    }
+                }
+            }
+
+            forward.fringe.clear();
+            backward.fringe.clear();
+            if (meet < 0) {
+                return false;
+            }
+            unpackPath(s, meet);
+            return true;
+        }
+
+        /** Returns the number of vertices on the path found by the last search. */
+        int pathLength() {
+            return pathLength;
+        }
+
+        /** Returns the ith vertex on the path found by the last search. */
+        int pathVertex(int i) {
+            return path[i];
+        }
+
+        /** Returns the number of vertices settled in both directions by the last search. */
+        int settledCount() {
+            return settledCount;
+        }
+
+        private void nextGeneration() {
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(forward.reached, 0);
+                Arrays.fill(backward.reached, 0);
+                generation = 0;
+            }
+            generation++;
+            settledCount = 0;
+        }
+
+        /**
+         * Writes the unpacked path s ... meet ... t into path. The forward search tree leads
+         * from meet back to s and the backward search tree leads from meet on to t.
+         */
+        private void unpackPath(int s, int meet) {
+            // Collect meet ... s by walking the forward tree, then unpack it in reverse
+            int count = 0;
+            for (int v = meet; v >= 0; v = forward.parents[v]) {
+                chain = ensureCapacity(chain, count + 1);
+                chain[count++] = v;
+            }
+
+            append(s);
+            for (int i = count - 2; i >= 0; --i) {
+                int v = chain[i];
+                appendUnpacked(chain[i + 1], v, middles[forward.parentEdges[v]]);
+            }
+            for (int v = meet; backward.parents[v] >= 0; v = backward.parents[v]) {
+                appendUnpacked(v, backward.parents[v], middles[backward.parentEdges[v]]);
+            }
+        }
+
+        /**
+         * Appends the vertices after a up to and including b on the edge from a to b,
+         * recursively replacing shortcuts by the two edges they stand for.
+         */
+        private void appendUnpacked(int a, int b, int middle) {
+            int size = 0;
+            stack = ensureCapacity(stack, 3);
+            stack[size++] = a;
+            stack[size++] = b;
+            stack[size++] = middle;
+
+            while (size > 0) {
+                int m = stack[--size];
+                int y = stack[--size];
+                int x = stack[--size];
+                if (m < 0) {
+                    append(y);
+                    continue;
+                }
+
+                // The bypassed vertex has a lower rank than both ends, so it owns both edges.
+                // Push m-y first so that x-m is unpacked first.
+                stack = ensureCapacity(stack, size + 6);
+                stack[size++] = m;
+                stack[size++] = y;
+                stack[size++] = middles[findUpwardEdge(m, y)];
+                stack[size++] = x;
+                stack[size++] = m;
+                stack[size++] = middles[findUpwardEdge(m, x)];
+            }
+        }
+
+        private void append(int v) {
+            path = ensureCapacity(path, pathLength + 1);
+            path[pathLength++] = v;
+        }
+
+        /** One half of a bidirectional search, following upward edges only. */
+        private class Direction {
+            private final double[] distances = new double[ranks.length];
+            private final int[] parents = new int[ranks.length];
+            private final int[] parentEdges = new int[ranks.length];
+            private final int[] reached = new int[ranks.length];
+            private final IndexedMinHeap fringe = new IndexedMinHeap(ranks.length);
+
+            double minKey() {
+                return fringe.isEmpty() ? Double.POSITIVE_INFINITY : fringe.minKey();
+            }
+
+            void reach(int v, double distance, int parent, int parentEdge, int gen) {
+                reached[v] = gen;
+                distances[v] = distance;
+                parents[v] = parent;
+                parentEdges[v] = parentEdge;
+                fringe.insertOrDecrease(v, distance);
+            }
+
+            /** Settles the closest vertex on the fringe and relaxes its upward edges. */
+            int settleNext() {
+                int v = fringe.removeMin();
+                double dv = distances[v];
+                for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+                    int w = targets[e];
+                    double dw = dv + weights[e];
+                    if (reached[w] != generation || dw < distances[w]) {
+                        reach(w, dw, v, e, generation);
+                    }
+                }
+                return v;
+            }
+        }
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        if (capacity <= array.length) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(capacity, 2 * array.length));
+    }
+
+    /**
+     * Preprocessing state: a mutable copy of the graph as adjacency arrays per vertex, from
+     * which vertices are contracted in order of a lazily updated priority.
+     */
+    private static class Contractor {
+        private final int n;
+        private final int[][] adjTargets;
+        private final double[][] adjWeights;
+        private final int[][] adjMiddles;
+        private final int[] degrees;
+        private final boolean[] contracted;
+        private final int[] contractedNeighbors;
+        /** Length of the longest chain of contracted vertices below each vertex. */
+        private final int[] levels;
+
+        private final int[] ranks;
+        private final int[][] upTargets;
+        private final double[][] upWeights;
+        private final int[][] upMiddles;
+        private final int[] upDegrees;
+        private int shortcutCount;
+
+        /* Witness search state. */
+        private final double[] witnessDistances;
+        private final int[] witnessReached;
+        private final IndexedMinHeap witnessFringe;
+        private int witnessGeneration;
+
+        /* Shortcuts found while contracting one vertex, added once all pairs are checked. */
+        private int[] pendingFrom = new int[16];
+        private int[] pendingTo = new int[16];
+        private double[] pendingWeights = new double[16];
+        private int pendingCount;
+
+        Contractor(CompactGraph graph) {
+            n = graph.capacity();
+            adjTargets = new int[n][];
+            adjWeights = new double[n][];
+            adjMiddles = new int[n][];
+            degrees = new int[n];
+            contracted = new boolean[n];
+            contractedNeighbors = new int[n];
+            levels = new int[n];
+            ranks = new int[n];
+            upTargets = new int[n][];
+            upWeights = new double[n][];
+            upMiddles = new int[n][];
+            upDegrees = new int[n];
+            witnessDistances = new double[n];
+            witnessReached = new int[n];
+            witnessFringe = new IndexedMinHeap(n);
+
+            // The compact graph stores both directions of every edge, so add them as arcs
+            for (int v = 0; v < n; ++v) {
+                int degree = Math.max(graph.endEdge(v) - graph.firstEdge(v), 1);
+                adjTargets[v] = new int[degree];
+                adjWeights[v] = new double[degree];
+                adjMiddles[v] = new int[degree];
+                if (graph.isRemoved(v)) {
+                    continue;
+                }
+                for (int e = graph.firstEdge(v); e < graph.endEdge(v); ++e) {
+                    int w = graph.target(e);
+                    if (w != v && !graph.isRemoved(w)) {
+                        addArc(v, w, graph.weight(e), -1);
+                    }
+                }
+            }
+        }
+
+        void contractAll() {
+            IndexedMinHeap queue = new IndexedMinHeap(n);
+            for (int v = 0; v < n; ++v) {
+                queue.update(v, priority(v));
+            }
+
+            int rank = 0;
+            while (!queue.isEmpty()) {
+                int v = queue.removeMin();
+
+                // Priorities are updated lazily, so recheck before contracting
+                double priority = priority(v);
+                if (!queue.isEmpty() && priority > queue.minKey()) {
+                    queue.update(v, priority);
+                    continue;
+                }
+
+                contract(v);
+                ranks[v] = rank++;
+                for (int i = 0; i < upDegrees[v]; ++i) {
+                    int u = upTargets[v][i];
+                    queue.update(u, priority(u));
+                }
+            }
+        }
+
+        /**
+         * Importance of contracting v next; lower is contracted earlier. Prefers vertices
+         * whose contraction adds few shortcuts relative to the edges it removes, and spreads
+         * contraction evenly by penalizing vertices with many contracted neighbors or that sit
+         * above a deep stack of contracted vertices, which keeps the query search spaces small.
+         */
+        private double priority(int v) {
+            int shortcuts = findShortcuts(v);
+            return shortcuts - degrees[v] + contractedNeighbors[v] + levels[v];
+        }
+
+        private void contract(int v) {
+            int shortcuts = findShortcuts(v);
+
+            // The remaining neighbors of v are all contracted later, so its edges are upward
+            int degree = degrees[v];
+            upTargets[v] = Arrays.copyOf(adjTargets[v], degree);
+            upWeights[v] = Arrays.copyOf(adjWeights[v], degree);
+            upMiddles[v] = Arrays.copyOf(adjMiddles[v], degree);
+            upDegrees[v] = degree;
+
+            contracted[v] = true;
+            for (int i = 0; i < degree; ++i) {
+                int u = adjTargets[v][i];
+                removeEdge(u, v);
+                contractedNeighbors[u]++;
+                levels[u] = Math.max(levels[u], levels[v] + 1);
+            }
+            for (int i = 0; i < shortcuts; ++i) {
+                addEdge(pendingFrom[i], pendingTo[i], pendingWeights[i], v);
+                shortcutCount++;
+            }
+
+            // Release the working copy of v's edges
+            adjTargets[v] = null;
+            adjWeights[v] = null;
+            adjMiddles[v] = null;
+            degrees[v] = 0;
+        }
+
+        /**
+         * Finds the shortcuts needed to contract v and stores them in the pending arrays.
+         * @return The number of shortcuts found.
+         */
+        private int findShortcuts(int v) {
+            pendingCount = 0;
+            int degree = degrees[v];
+            for (int i = 0; i < degree; ++i) {
+                int u = adjTargets[v][i];
+                double maxVia = 0;
+                for (int j = i + 1; j < degree; ++j) {
+                    maxVia = Math.max(maxVia, adjWeights[v][i] + adjWeights[v][j]);
+                }
+                if (i + 1 >= degree) {
+                    break;
+                }
+
+                witnessSearch(u, v, maxVia);
+                for (int j = i + 1; j < degree; ++j) {
+                    int w = adjTargets[v][j];
+                    double via = adjWeights[v][i] + adjWeights[v][j];
+                    boolean hasWitness = witnessReached[w] == witnessGeneration
+                            && witnessDistances[w] <= via;
+                    if (!hasWitness) {
+                        addPending(u, w, via);
+                    }
+                }
+            }
+            return pendingCount;
+        }
+
+        /**
+         * Dijkstra from source in the remaining graph without the vertex being contracted,
+         * up to the given distance or the settle limit.
+         */
+        private void witnessSearch(int source, int excluded, double limit) {
+            witnessGeneration++;
+            witnessFringe.clear();
+            witnessReached[source] = witnessGeneration;
+            witnessDistances[source] = 0;
+            witnessFringe.insertOrDecrease(source, 0);
+
+            int settled = 0;
+            while (!witnessFringe.isEmpty() && settled < WITNESS_SETTLE_LIMIT) {
+                if (witnessFringe.minKey() > limit) {
+                    break;
+                }
+                int v = witnessFringe.removeMin();
+                settled++;
+                double dv = witnessDistances[v];
+                for (int i = 0; i < degrees[v]; ++i) {
+                    int w = adjTargets[v][i];
+                    if (w == excluded) {
+                        continue;
+                    }
+                    double dw = dv + adjWeights[v][i];
+                    if (witnessReached[w] != witnessGeneration || dw < witnessDistances[w]) {
+                        witnessReached[w] = witnessGeneration;
+                        witnessDistances[w] = dw;
+                        witnessFringe.insertOrDecrease(w, dw);
+                    }
+                }
+            }
+            witnessFringe.clear();
+        }
+
+        private void addPending(int u, int w, double weight) {
+            if (pendingCount == pendingFrom.length) {
+                pendingFrom = Arrays.copyOf(pendingFrom, pendingCount * 2);
+                pendingTo = Arrays.copyOf(pendingTo, pendingCount * 2);
+                pendingWeights = Arrays.copyOf(pendingWeights, pendingCount * 2);
+            }
+            pendingFrom[pendingCount] = u;
+            pendingTo[pendingCount] = w;
+            pendingWeights[pendingCount] = weight;
+            pendingCount++;
+        }
+
+        /** Adds an undirected edge, or shortens the existing edge between v and w. */
+        private void addEdge(int v, int w, double weight, int middle) {
+            addArc(v, w, weight, middle);
+            addArc(w, v, weight, middle);
+        }
+
+        private void addArc(int v, int w, double weight, int middle) {
+            for (int i = 0; i < degrees[v]; ++i) {
+                if (adjTargets[v][i] == w) {
+                    if (weight < adjWeights[v][i]) {
+                        adjWeights[v][i] = weight;
+                        adjMiddles[v][i] = middle;
+                    }
+                    return;
+                }
+            }
+
+            int degree = degrees[v];
+            if (degree == adjTargets[v].length) {
+                adjTargets[v] = Arrays.copyOf(adjTargets[v], degree * 2);
+                adjWeights[v] = Arrays.copyOf(adjWeights[v], degree * 2);
+                adjMiddles[v] = Arrays.copyOf(adjMiddles[v], degree * 2);
+            }
+            adjTargets[v][degree] = w;
+            adjWeights[v][degree] = weight;
+            adjMiddles[v][degree] = middle;
+            degrees[v]++;
+        }
+
+        private void removeEdge(int v, int w) {
+            int last = degrees[v] - 1;
+            for (int i = 0; i <= last; ++i) {
+                if (adjTargets[v][i] == w) {
+                    adjTargets[v][i] = adjTargets[v][last];
+                    adjWeights[v][i] = adjWeights[v][last];
+                    adjMiddles[v][i] = adjMiddles[v][last];
+                    degrees[v]--;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -3,9 +3,9 @@ import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import java.util.Arrays;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -25,6 +25,12 @@ import java.util.Set;
  *  element in the file. This is a very common but strange-when-you-first-see it pattern.
  *  It is similar to the Visitor pattern we discussed for graphs.
  *
+ *  To keep garbage low on large extracts, nothing is built per OSM node. Node ids and
+ *  coordinates are buffered in primitive arrays, and the node refs of allowed highways in one
+ *  growable long array. Once the whole document has been read, only the nodes that allowed
+ *  highways refer to become vertices, and the graph is packed directly into a CompactGraph.
+ *  Named nodes are also passed on to the graph as searchable locations.
+ *
  *  @author Alan Yao, Maurice Lee
  */
 public class GraphBuildingHandler extends DefaultHandler {
@@ -38,24 +44,44 @@ public class GraphBuildingHandler extends DefaultHandler {
             ("motorway", "trunk", "primary", "secondary", "tertiary", "unclassified",
                     "residential", "living_street", "motorway_link", "trunk_link", "primary_link",
                     "secondary_link", "tertiary_link"));
-    private String activeState;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    /** The element whose tags are being read. */
+    private static final int NONE = 0;
+    private static final int NODE = 1;
+    private static final int WAY = 2;
+    private int activeState;
+
     private final GraphDB g;
+
+    /* Every node in the document, in document order. */
+    private long[] nodeIds = new long[INITIAL_CAPACITY];
+    private double[] nodeLons = new double[INITIAL_CAPACITY];
+    private double[] nodeLats = new double[INITIAL_CAPACITY];
+    /** Names of the few nodes that have one, by their index in the node arrays. */
+    private final Map<Integer, String> nodeNames = new HashMap<>();
+    private int nodeCount;
+
+    /* Node refs of the allowed highways, where way i has the refs from wayStarts[i] up to
+     * wayStarts[i + 1]. */
+    private long[] refs = new long[INITIAL_CAPACITY];
+    private int refCount;
+    private int[] wayStarts = new int[INITIAL_CAPACITY];
+    private GraphDB.Edge[] ways = new GraphDB.Edge[INITIAL_CAPACITY];
+    private int wayCount;
+
     private boolean allowedHighway;
-    private GraphDB.Node lastNode;
     private GraphDB.Edge lastEdge;
-    private List<Long> possibleConnections;
 
     /**
      * Create a new GraphBuildingHandler.
      * @param g The graph to populate with the XML data.
      */
     public GraphBuildingHandler(GraphDB g) {
-        this.activeState = "";
+        this.activeState = NONE;
         this.g = g;
         this.allowedHighway = false;
-        this.lastNode = null;
         this.lastEdge = null;
-        this.possibleConnections = new ArrayList<>();
     }
 
     /**
@@ -75,37 +101,48 @@ public class GraphBuildingHandler extends DefaultHandler {
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attributes)
             throws SAXException {
-        if (qName.equals("node")) {
-            activeState = "node";
-            lastNode = new GraphDB.Node();
-            lastNode.id = Long.parseLong(attributes.getValue("id"));
-            lastNode.lat = Double.parseDouble(attributes.getValue("lat"));
-            lastNode.lon = Double.parseDouble(attributes.getValue("lon"));
-        } else if (qName.equals("way")) {
-            activeState = "way";
-            lastEdge = new GraphDB.Edge();
-        } else if (activeState.equals("way") && qName.equals("nd")) {
-            possibleConnections.add(Long.parseLong(attributes.getValue("ref")));
-        } else if (activeState.equals("way") && qName.equals("tag")) {
-            String k = attributes.getValue("k");
-            String v = attributes.getValue("v");
-            if (k.equals("maxspeed")) {
-                if (lastEdge != null) {
-                    lastEdge.maxSpeed = v;
+        switch (qName) {
+            case "node":
+                activeState = NODE;
+                addNode(Long.parseLong(attributes.getValue("id")),
+                        Double.parseDouble(attributes.getValue("lon")),
+                        Double.parseDouble(attributes.getValue("lat")));
+                break;
+            case "way":
+                activeState = WAY;
+                lastEdge = new GraphDB.Edge();
+                break;
+            case "nd":
+                if (activeState == WAY) {
+                    addRef(Long.parseLong(attributes.getValue("ref")));
                 }
-            } else if (k.equals("highway")) {
-                allowedHighway = ALLOWED_HIGHWAY_TYPES.contains(v);
-            } else if (k.equals("name")) {
-                if (lastEdge != null) {
-                    lastEdge.name = v;
+                break;
+            case "tag":
+                if (activeState == WAY) {
+                    wayTag(attributes.getValue("k"), attributes.getValue("v"));
+                } else if (activeState == NODE && attributes.getValue("k").equals("name")) {
+                    nodeNames.put(nodeCount - 1, attributes.getValue("v"));
                 }
-            }
-        } else if (activeState.equals("node")
-                && qName.equals("tag")
-                && attributes.getValue("k").equals("name")) {
-            if (lastNode != null) {
-                lastNode.name = attributes.getValue("v");
-            }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void wayTag(String k, String v) {
+        switch (k) {
+            case "maxspeed":
+                lastEdge.maxSpeed = v;
+                break;
+            case "highway":
+                allowedHighway = ALLOWED_HIGHWAY_TYPES.contains(v);
+                lastEdge.highway = v;
+                break;
+            case "name":
+                lastEdge.name = v;
+                break;
+            default:
+                break;
         }
     }
 
@@ -122,22 +159,101 @@ public class GraphBuildingHandler extends DefaultHandler {
      */
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException {
-        if (qName.equals("way")) {
-            if (allowedHighway && lastEdge != null) {
-                for (int i = 1; i < possibleConnections.size(); ++i) {
-                    long from = possibleConnections.get(i);
-                    long to = possibleConnections.get(i - 1);
-                    g.addEdge(from, to, lastEdge);
+        if (activeState == WAY && qName.equals("way")) {
+            if (allowedHighway) {
+                // Keep the refs and close the way; the next one starts where this one ends
+                if (wayCount + 2 > wayStarts.length) {
+                    wayStarts = Arrays.copyOf(wayStarts, wayStarts.length * 2);
+                    ways = Arrays.copyOf(ways, ways.length * 2);
                 }
-                lastEdge = null;
+                lastEdge.speed = SpeedLimits.speed(lastEdge.maxSpeed, lastEdge.highway);
+                ways[wayCount] = lastEdge;
+                wayStarts[++wayCount] = refCount;
+            } else {
+                refCount = wayStarts[wayCount];
             }
+            activeState = NONE;
             allowedHighway = false;
-            possibleConnections.clear();
-        } else if (qName.equals("node")) {
-            if (lastNode != null) {
-                g.addNode(lastNode);
-                lastNode = null;
+            lastEdge = null;
+        } else if (activeState == NODE && qName.equals("node")) {
+            String name = nodeNames.get(nodeCount - 1);
+            if (name != null) {
+                g.addLocation(nodeIds[nodeCount - 1], nodeLons[nodeCount - 1],
+                        nodeLats[nodeCount - 1], name);
+            }
+            activeState = NONE;
+        }
+    }
+
+    /**
+     * Receive notification of the end of the document. Turns the nodes referred to by allowed
+     * highways into vertices, connects consecutive refs of each highway, and hands the packed
+     * graph to the GraphDB. Nodes that no highway refers to are dropped here.
+     * @throws SAXException Any SAX exception, possibly wrapping another exception.
+     */
+    @Override
+    public void endDocument() throws SAXException {
+        // Sort the node ids so refs can be resolved with a binary search
+        int n = nodeCount;
+        long[] sortedIds = Arrays.copyOf(nodeIds, n);
+        Arrays.sort(sortedIds);
+        int[] byRank = new int[n];
+        for (int i = 0; i < n; ++i) {
+            byRank[Arrays.binarySearch(sortedIds, nodeIds[i])] = i;
+        }
+
+        CompactGraph.Builder builder = new CompactGraph.Builder(Math.min(n, refCount));
+        int[] vertices = new int[n];
+        Arrays.fill(vertices, -1);
+        for (int way = 0; way < wayCount; ++way) {
+            int previous = -1;
+            for (int r = wayStarts[way]; r < wayStarts[way + 1]; ++r) {
+                int rank = Arrays.binarySearch(sortedIds, 0, n, refs[r]);
+                if (rank >= 0 && previous >= 0) {
+                    int v = vertex(builder, vertices, byRank, rank);
+                    int w = vertex(builder, vertices, byRank, previous);
+                    // A node repeated in a row becomes a vertex, but without a loop edge
+                    if (v != w) {
+                        builder.addEdge(v, w, ways[way]);
+                    }
+                }
+                previous = rank;
             }
         }
+
+        g.freeze(builder.build());
+    }
+
+    /**
+     * Returns the builder index of the node with the given rank among the sorted node ids,
+     * adding it as a vertex the first time.
+     */
+    private int vertex(CompactGraph.Builder builder, int[] vertices, int[] byRank, int rank) {
+        if (vertices[rank] < 0) {
+            int i = byRank[rank];
+            vertices[rank] = builder.addVertex(nodeIds[i], nodeLons[i], nodeLats[i],
+                    nodeNames.get(i));
+        }
+        return vertices[rank];
+    }
+
+    private void addNode(long id, double lon, double lat) {
+        if (nodeCount == nodeIds.length) {
+            int capacity = nodeCount * 2;
+            nodeIds = Arrays.copyOf(nodeIds, capacity);
+            nodeLons = Arrays.copyOf(nodeLons, capacity);
+            nodeLats = Arrays.copyOf(nodeLats, capacity);
+        }
+        nodeIds[nodeCount] = id;
+        nodeLons[nodeCount] = lon;
+        nodeLats[nodeCount] = lat;
+        nodeCount++;
+    }
+
+    private void addRef(long ref) {
+        if (refCount == refs.length) {
+            refs = Arrays.copyOf(refs, refCount * 2);
+        }
+        refs[refCount++] = ref;
     }
 }
@@ -1,14 +1,18 @@
 import org.xml.sax.SAXException;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
@@ -39,30 +43,12 @@ public class GraphDB {
         double lat;
         double lon;
         String name;
-        private Map<Long, Edge> edges;
 
         Node() {
             this.id = 0;
             this.lat = 0;
             this.lon = 0;
             this.name = "";
-            this.edges = new HashMap<>();
-        }
-
-        void addEdge(long v, Edge e) {
-            edges.put(v, e);
-        }
-        Edge removeEdge(long v) {
-            return edges.remove(v);
-        }
-        Edge getEdge(long v) {
-            return edges.get(v);
-        }
-        boolean hasEdges() {
-            return !edges.isEmpty();
-        }
-        Set<Long> getNeighbors() {
-            return edges.keySet();
         }
 
         @Override
@@ -82,17 +68,29 @@ public class GraphDB {
     static class Edge {
         String name;
         String maxSpeed;
+        String highway;
+        /** Speed in mph, parsed from maxSpeed and highway when the graph is loaded. */
+        double speed;
 
         Edge() {
             this.name = "";
             this.maxSpeed = "";
+            this.highway = "";
+            this.speed = SpeedLimits.DEFAULT_MPH;
         }
     }
 
-    private final Map<Long, Node> graph = new HashMap<>();
     private final Map<String, Set<String>> locationNames = new HashMap<>();
     private final Map<String, Set<Node>> locations = new HashMap<>();
     private final Trie prefixes = new Trie();
+    /** Packed form of the cleaned graph that serves all queries once the graph is frozen. */
+    private CompactGraph compact;
+    /** Spatial index over the vertices of compact, for closest queries. */
+    private KdTree spatialIndex;
+    /** Contraction hierarchy for fast routing, built on first use. */
+    private ContractionHierarchy contractionHierarchy;
+    /** Landmark distances for the ALT heuristic, computed on first use. */
+    private Landmarks landmarks;
 
     /**
      * Example constructor shows how to create and start an XML parser.
@@ -102,17 +100,135 @@ public class GraphDB {
     public GraphDB(String dbPath) {
         try {
             File inputFile = new File(dbPath);
-            FileInputStream inputStream = new FileInputStream(inputFile);
-            // GZIPInputStream stream = new GZIPInputStream(inputStream);
+            InputStream inputStream = new BufferedInputStream(new FileInputStream(inputFile),
+                    1 << 16);
+            if (dbPath.endsWith(".gz")) {
+                inputStream = new GZIPInputStream(inputStream, 1 << 16);
+            }
 
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser saxParser = factory.newSAXParser();
-            GraphBuildingHandler gbh = new GraphBuildingHandler(this);
-            saxParser.parse(inputStream, gbh);
+            try (InputStream stream = inputStream) {
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                SAXParser saxParser = factory.newSAXParser();
+                GraphBuildingHandler gbh = new GraphBuildingHandler(this);
+                saxParser.parse(stream, gbh);
+            }
         } catch (ParserConfigurationException | SAXException | IOException e) {
             e.printStackTrace();
         }
-        clean();
+        if (compact == null) {
+            // Parsing failed before the handler could build the graph
+            freeze(new CompactGraph.Builder(0).build());
+        }
+    }
+
+    /**
+     * Reads a graph from a snapshot written by writeSnapshot.
+     */
+    private GraphDB(GraphSnapshot.Reader in) {
+        freeze(CompactGraph.readSnapshot(in));
+        for (int v = 0; v < compact.capacity(); ++v) {
+            if (compact.isRemoved(v)) {
+                spatialIndex.remove(v);
+            }
+        }
+
+        int locationCount = in.readInt();
+        for (int i = 0; i < locationCount; ++i) {
+            String name = in.readString();
+            int nodeCount = in.readInt();
+            Set<Node> nodes = new HashSet<>();
+            for (int j = 0; j < nodeCount; ++j) {
+                Node node = new Node();
+                node.id = in.readLong();
+                node.lon = in.readDouble();
+                node.lat = in.readDouble();
+                node.name = name;
+                nodes.add(node);
+            }
+            locations.put(name, nodes);
+        }
+
+        int cleanNameCount = in.readInt();
+        for (int i = 0; i < cleanNameCount; ++i) {
+            String cleanName = in.readString();
+            int nameCount = in.readInt();
+            Set<String> names = new HashSet<>();
+            for (int j = 0; j < nameCount; ++j) {
+                names.add(in.readString());
+            }
+            locationNames.put(cleanName, names);
+        }
+
+        int wordCount = in.readInt();
+        for (int i = 0; i < wordCount; ++i) {
+            String word = in.readString();
+            prefixes.put(word, in.readInt());
+        }
+    }
+
+    /**
+     * Loads the graph for the given OSM XML file from its binary snapshot if there is a valid
+     * one, which is much faster than parsing the XML. Otherwise parses the XML as the
+     * constructor does and saves a snapshot for next time.
+     * @param dbPath Path to the XML file.
+     * @return The graph.
+     */
+    public static GraphDB load(String dbPath) {
+        File source = new File(dbPath);
+        File snapshot = GraphSnapshot.snapshotFile(dbPath);
+        try {
+            GraphSnapshot.Reader in = GraphSnapshot.open(source, snapshot);
+            if (in != null) {
+                return new GraphDB(in);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable graph snapshot " + snapshot + ": " + e);
+        }
+
+        GraphDB g = new GraphDB(dbPath);
+        if (source.isFile()) {
+            try {
+                GraphSnapshot.save(g, source, snapshot);
+            } catch (IOException e) {
+                System.err.println("Could not save graph snapshot " + snapshot + ": " + e);
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Writes the cleaned graph, the location names and the autocomplete words with their counts
+     * to a snapshot.
+     */
+    void writeSnapshot(GraphSnapshot.Writer out) throws IOException {
+        compact.writeSnapshot(out);
+
+        out.writeInt(locations.size());
+        for (Map.Entry<String, Set<Node>> entry : locations.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (Node node : entry.getValue()) {
+                out.writeLong(node.id);
+                out.writeDouble(node.lon);
+                out.writeDouble(node.lat);
+            }
+        }
+
+        out.writeInt(locationNames.size());
+        for (Map.Entry<String, Set<String>> entry : locationNames.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (String name : entry.getValue()) {
+                out.writeString(name);
+            }
+        }
+
+        List<String> words = prefixes.getAllWords();
+        out.writeInt(words.size());
+        for (String word : words) {
+            out.writeString(word);
+            out.writeInt(prefixes.count(word));
+        }
     }
 
     /**
@@ -125,12 +241,41 @@ public class GraphDB {
     }
 
     /**
-     *  Remove nodes with no connections from the graph.
-     *  While this does not guarantee that any two nodes in the remaining graph are connected,
-     *  we can reasonably assume this since typically roads are connected.
+     * Installs the packed road graph, which GraphBuildingHandler builds from the nodes that
+     * highways connect, and indexes its vertices for closest queries.
+     */
+    void freeze(CompactGraph packed) {
+        compact = packed;
+        spatialIndex = new KdTree(compact.lons(), compact.lats(), compact.capacity());
+    }
+
+    /**
+     * Returns the packed graph, for callers such as Router that work with dense vertex indices.
+     */
+    CompactGraph compactGraph() {
+        return compact;
+    }
+
+    /**
+     * Returns the contraction hierarchy of this graph, preprocessing it on the first call and
+     * again after vertices have been removed.
+     */
+    synchronized ContractionHierarchy contractionHierarchy() {
+        if (contractionHierarchy == null || !contractionHierarchy.isCurrent()) {
+            contractionHierarchy = new ContractionHierarchy(compact);
+        }
+        return contractionHierarchy;
+    }
+
+    /**
+     * Returns the routing landmarks of this graph, choosing them on the first call. The number
+     * of landmarks is set by the router.landmarks system property and defaults to 16.
      */
-    private void clean() {
-        graph.values().removeIf(node -> !node.hasEdges());
+    synchronized Landmarks landmarks() {
+        if (landmarks == null) {
+            landmarks = new Landmarks(compact, Integer.getInteger("router.landmarks", 16));
+        }
+        return landmarks;
     }
 
     /**
@@ -138,7 +283,7 @@ public class GraphDB {
      * @return An iterable of id's of all vertices in the graph.
      */
     Iterable<Long> vertices() {
-        return graph.keySet();
+        return compact.vertexIds();
     }
 
     /**
@@ -147,8 +292,8 @@ public class GraphDB {
      * @return An iterable of the ids of the neighbors of v.
      */
     Iterable<Long> adjacent(long v) {
-        Node node = graph.get(v);
-        return node != null ? node.getNeighbors() : null;
+        int index = compact.index(v);
+        return index >= 0 ? compact.adjacentIds(index) : null;
     }
 
     /**
@@ -209,17 +354,23 @@ public class GraphDB {
      * @return The id of the node in the graph closest to the target.
      */
     long closest(double lon, double lat) {
-        long closest = 0;
-        double closestDistance = Double.MAX_VALUE;
-
-        for (Node node : graph.values()) {
-            double distance = distance(lon, lat, node.lon, node.lat);
-            if (distance < closestDistance) {
-                closest = node.id;
-                closestDistance = distance;
-            }
-        }
+        int v = spatialIndex.nearest(lon, lat);
+        return v >= 0 ? compact.id(v) : 0;
+    }
 
+    /**
+     * Returns the k vertices closest to the given longitude and latitude, e.g. to snap a
+     * location to several candidate roads.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param k The number of vertices to return.
+     * @return The ids of the k closest nodes, ordered from closest to farthest.
+     */
+    List<Long> closest(double lon, double lat, int k) {
+        List<Long> closest = new ArrayList<>();
+        for (int v : spatialIndex.nearest(lon, lat, k)) {
+            closest.add(compact.id(v));
+        }
         return closest;
     }
 
@@ -229,8 +380,8 @@ public class GraphDB {
      * @return The longitude of the vertex.
      */
     double lon(long v) {
-        Node node = graph.get(v);
-        return node != null ? node.lon : 0;
+        int index = compact.index(v);
+        return index >= 0 ? compact.lon(index) : 0;
     }
 
     /**
@@ -239,46 +390,41 @@ public class GraphDB {
      * @return The latitude of the vertex.
      */
     double lat(long v) {
-        Node node = graph.get(v);
-        return node != null ? node.lat : 0;
+        int index = compact.index(v);
+        return index >= 0 ? compact.lat(index) : 0;
     }
 
-    void addNode(Node node) {
-        if (node != null) {
-            graph.put(node.id, node);
-
-            String cleanName = cleanString(node.name);
-            prefixes.put(cleanName);
-            locationNames.computeIfAbsent(cleanName, k-> new HashSet<>()).add(node.name);
-            locations.computeIfAbsent(node.name, k -> new HashSet<>()).add(node);
-        }
-    }
-
-    void addEdge(long from, long to, Edge edge) {
-        if (edge != null) {
-            Node fromNode = graph.get(from);
-            Node toNode = graph.get(to);
-
-            if (fromNode != null && toNode != null) {
-                fromNode.addEdge(to, edge);
-                toNode.addEdge(from, edge);
-            }
-        }
+    /**
+     * Makes a named OSM node findable by location searches and autocomplete.
+     */
+    void addLocation(long id, double lon, double lat, String name) {
+        Node node = new Node();
+        node.id = id;
+        node.lon = lon;
+        node.lat = lat;
+        node.name = name;
+
+        String cleanName = cleanString(name);
+        prefixes.put(cleanName);
+        locationNames.computeIfAbsent(cleanName, k-> new HashSet<>()).add(name);
+        locations.computeIfAbsent(name, k -> new HashSet<>()).add(node);
     }
 
     Node removeNode(long v) {
-        Node node = graph.remove(v);
-        if (node == null) {
+        int index = compact.index(v);
+        if (index < 0) {
             return null;
         }
 
-        // Remove all edges connecting to this node
-        for (long w : node.getNeighbors()) {
-            Node connectedNode = graph.get(w);
-            if (connectedNode != null) {
-                connectedNode.removeEdge(v);
-            }
-        }
+        Node node = new Node();
+        node.id = v;
+        node.lon = compact.lon(index);
+        node.lat = compact.lat(index);
+        node.name = compact.name(index);
+
+        // Removing the vertex also removes all edges connecting to it
+        compact.remove(index);
+        spatialIndex.remove(index);
 
         // Remove node from appearing in autocomplete searches
         String cleanName = cleanString(node.name);
@@ -297,8 +443,13 @@ public class GraphDB {
     }
 
     Edge getEdge(long from, long to) {
-        Node node = graph.get(from);
-        return node != null ? node.getEdge(to) : null;
+        int v = compact.index(from);
+        int w = compact.index(to);
+        if (v < 0 || w < 0) {
+            return null;
+        }
+        int e = compact.findEdge(v, w);
+        return e >= 0 ? compact.way(e) : null;
     }
 
     List<Map<String, Object>> getLocations(String locationName) {
@@ -322,6 +473,13 @@ public class GraphDB {
         return locationsMap;
     }
 
+    /**
+     * Returns the cleaned names of all locations, in alphabetical order.
+     */
+    List<String> cleanLocationNames() {
+        return prefixes.getAllWords();
+    }
+
     List<String> getLocationsByPrefix(String prefix) {
         List<String> fullLocationNames = new ArrayList<>();
 
@@ -332,5 +490,56 @@ public class GraphDB {
 
         return fullLocationNames;
     }
-}
 
+    /**
+     * Returns at most limit full names of locations whose cleaned name starts with the cleaned
+     * prefix. Cleaned names shared by more locations come first.
+     */
+    List<String> getLocationsByPrefix(String prefix, int limit) {
+        return fullNames(prefixes.getWords(cleanString(prefix), limit), limit);
+    }
+
+    /**
+     * Like getLocationsByPrefix, but tolerates typos: returns at most limit full names of
+     * locations whose cleaned name starts with a string a few edits away from the cleaned
+     * prefix, the closest first. Exact prefix matches come first, so this ranks them the same
+     * way as getLocationsByPrefix does.
+     */
+    List<String> getLocationsByFuzzyPrefix(String prefix, int limit) {
+        String cleanPrefix = cleanString(prefix);
+        return fullNames(prefixes.getFuzzyWords(cleanPrefix, maxEdits(cleanPrefix), limit),
+                limit);
+    }
+
+    /**
+     * Returns the number of typos tolerated in a cleaned prefix: none in very short prefixes,
+     * which would match almost everything, and at most two.
+     */
+    static int maxEdits(String cleanPrefix) {
+        if (cleanPrefix.length() < 3) {
+            return 0;
+        }
+        return cleanPrefix.length() < 6 ? 1 : 2;
+    }
+
+    /**
+     * Returns at most limit full names of the locations with the given cleaned names, in the
+     * order of the cleaned names.
+     */
+    private List<String> fullNames(List<String> cleanNames, int limit) {
+        List<String> fullLocationNames = new ArrayList<>();
+        for (String cleanName : cleanNames) {
+            List<String> names = new ArrayList<>(
+                    locationNames.getOrDefault(cleanName, new HashSet<>()));
+            Collections.sort(names);
+            for (String name : names) {
+                if (fullLocationNames.size() == limit) {
+                    return fullLocationNames;
+                }
+                fullLocationNames.add(name);
+            }
+        }
+
+        return fullLocationNames;
+    }
+}
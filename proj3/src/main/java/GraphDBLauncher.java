@@ -1,3 +1,6 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -10,7 +13,24 @@ public class GraphDBLauncher {
     private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
 
     public static void main(String[] args) {
-        GraphDB g = new GraphDB(OSM_DB_PATH);
+        String path = args.length > 0 ? args[0] : OSM_DB_PATH;
+
+        /* Report how long the import takes and how much heap it needs at its peak. */
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        long start = System.nanoTime();
+        GraphDB g = new GraphDB(path);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.printf("Imported %s in %.2f s, peak heap %.1f MB%n", path, seconds,
+                peak / 1048576.0);
 
         Iterable<Long> verticesIterable = g.vertices();
 
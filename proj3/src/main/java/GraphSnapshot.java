@@ -0,0 +1,213 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of a cleaned GraphDB, so that the server can start without parsing the OSM
+ * XML again. The file starts with a fixed size header:
+ *
+ *   magic, format version, length and modification time of the XML file the graph was built
+ *   from, length of the body and CRC32 checksum of the body,
+ *
+ * followed by the body written by GraphDB.writeSnapshot. All numbers are big endian and
+ * arrays are stored as a length followed by their elements, so the body can be read straight
+ * out of a memory-mapped buffer with bulk copies.
+ *
+ * A snapshot is only used if its version is current, it was built from an XML file with the
+ * same length and modification time, and its checksum matches. Otherwise it is stale or
+ * damaged, and the graph is built from the XML instead.
+ */
+class GraphSnapshot {
+    private static final long MAGIC = 0x42454152534e4150L;
+    /** Increment whenever the layout of the body changes. */
+    static final int VERSION = 3;
+    private static final int HEADER_BYTES = 40;
+
+    private GraphSnapshot() {
+    }
+
+    /**
+     * Returns the snapshot file used for the given OSM XML file.
+     */
+    static File snapshotFile(String dbPath) {
+        return new File(dbPath + ".snapshot");
+    }
+
+    /**
+     * Writes a snapshot of the given graph, built from the given XML file. The snapshot is
+     * written to a temporary file first and then moved into place, so readers never see a
+     * partial file.
+     */
+    static void save(GraphDB g, File source, File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        long bodyLength;
+        try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+            fileOut.write(new byte[HEADER_BYTES]);
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(fileOut, 1 << 16), crc);
+            Writer out = new Writer(checked);
+            g.writeSnapshot(out);
+            out.flush();
+            bodyLength = out.size();
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+            raf.writeLong(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeLong(source.length());
+            raf.writeLong(source.lastModified());
+            raf.writeLong(bodyLength);
+            raf.writeInt((int) crc.getValue());
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Memory-maps the given snapshot and returns a reader positioned at the start of its body,
+     * or null if the snapshot does not exist, is stale or fails its checksum.
+     */
+    static Reader open(File source, File file) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_BYTES) {
+            return null;
+        }
+
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getLong() != MAGIC || buffer.getInt() != VERSION
+                || buffer.getLong() != source.length()
+                || buffer.getLong() != source.lastModified()
+                || buffer.getLong() != buffer.capacity() - HEADER_BYTES) {
+            return null;
+        }
+        int checksum = buffer.getInt();
+
+        ByteBuffer body = buffer.slice();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        return new Reader(body);
+    }
+
+    /**
+     * Writes the body of a snapshot.
+     */
+    static class Writer extends DataOutputStream {
+        Writer(OutputStream out) {
+            super(out);
+        }
+
+        /** Writes a string as its UTF-8 length and bytes, or length -1 for null. */
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            write(bytes);
+        }
+
+        void writeLongs(long[] values, int length) throws IOException {
+            writeInt(length);
+            for (int i = 0; i < length; ++i) {
+                writeLong(values[i]);
+            }
+        }
+
+        void writeInts(int[] values, int length) throws IOException {
+            writeInt(length);
+            for (int i = 0; i < length; ++i) {
+                writeInt(values[i]);
+            }
+        }
+
+        void writeDoubles(double[] values, int length) throws IOException {
+            writeInt(length);
+            for (int i = 0; i < length; ++i) {
+                writeDouble(values[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads the body of a snapshot from a memory-mapped buffer.
+     */
+    static class Reader {
+        private final ByteBuffer buffer;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int readInt() {
+            return buffer.getInt();
+        }
+
+        long readLong() {
+            return buffer.getLong();
+        }
+
+        double readDouble() {
+            return buffer.getDouble();
+        }
+
+        boolean readBoolean() {
+            return buffer.get() != 0;
+        }
+
+        String readString() {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        long[] readLongs() {
+            long[] values = new long[buffer.getInt()];
+            buffer.asLongBuffer().get(values);
+            skip(values.length * Long.BYTES);
+            return values;
+        }
+
+        int[] readInts() {
+            int[] values = new int[buffer.getInt()];
+            buffer.asIntBuffer().get(values);
+            skip(values.length * Integer.BYTES);
+            return values;
+        }
+
+        double[] readDoubles() {
+            double[] values = new double[buffer.getInt()];
+            buffer.asDoubleBuffer().get(values);
+            skip(values.length * Double.BYTES);
+            return values;
+        }
+
+        private void skip(int bytes) {
+            // Through Buffer: built on JDK 9+ for 1.8, ByteBuffer.position(int) would not link
+            ((Buffer) buffer).position(buffer.position() + bytes);
+        }
+    }
+}
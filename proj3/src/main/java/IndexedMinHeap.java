@@ -0,0 +1,132 @@
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int items 0..capacity-1 keyed by double priorities, supporting
+ * decrease-key. Items and keys are kept in parallel primitive arrays and every item's position
+ * in the heap is tracked, so no objects are allocated once the heap has been created.
+ */
+class IndexedMinHeap {
+    private final int[] items;
+    private final double[] keys;
+    /** Position of each item in the heap, or -1 if the item is not in the heap. */
+    private final int[] positions;
+    private int size;
+
+    IndexedMinHeap(int capacity) {
+        items = new int[capacity];
+        keys = new double[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int item) {
+        return positions[item] >= 0;
+    }
+
+    /** Returns the smallest key in the heap. The heap must not be empty. */
+    double minKey() {
+        return keys[0];
+    }
+
+    /** Returns the item with the smallest key. The heap must not be empty. */
+    int peek() {
+        return items[0];
+    }
+
+    /**
+     * Inserts item with the given key, or lowers its key if it is already in the heap with a
+     * larger key. Does nothing if the item is in the heap with a smaller or equal key.
+     */
+    void insertOrDecrease(int item, double key) {
+        int i = positions[item];
+        if (i < 0) {
+            i = size++;
+        } else if (key >= keys[i]) {
+            return;
+        }
+        siftUp(i, item, key);
+    }
+
+    /**
+     * Inserts item with the given key, or changes its key in either direction if it is already
+     * in the heap.
+     */
+    void update(int item, double key) {
+        int i = positions[item];
+        if (i < 0) {
+            siftUp(size++, item, key);
+        } else if (key < keys[i]) {
+            siftUp(i, item, key);
+        } else {
+            siftDown(i, item, key);
+        }
+    }
+
+    /** Removes and returns the item with the smallest key. The heap must not be empty. */
+    int removeMin() {
+        int min = items[0];
+        positions[min] = -1;
+        size--;
+        if (size > 0) {
+            siftDown(0, items[size], keys[size]);
+        }
+        return min;
+    }
+
+    /** Removes all items, in time proportional to the number of items in the heap. */
+    void clear() {
+        for (int i = 0; i < size; ++i) {
+            positions[items[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int i, int item, double key) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        place(i, item, key);
+    }
+
+    private void siftDown(int i, int item, double key) {
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        place(i, item, key);
+    }
+
+    private void move(int from, int to) {
+        items[to] = items[from];
+        keys[to] = keys[from];
+        positions[items[to]] = to;
+    }
+
+    private void place(int i, int item, double key) {
+        items[i] = item;
+        keys[i] = key;
+        positions[item] = i;
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * A static 2-d tree over the longitudes and latitudes of the graph vertices, used to answer
+ * nearest vertex queries in O(log n) instead of scanning every vertex.
+ *
+ * The tree is stored implicitly in parallel arrays: the median of each range is the splitting
+ * point of that subtree, and the splitting axis alternates between longitude and latitude by
+ * depth. Subtrees are pruned using lower bounds on the great-circle distance, so the results
+ * are the same as a linear scan using GraphDB.distance. Points are the dense vertex indices of
+ * a CompactGraph. Removed points stay in the arrays but are skipped by queries.
+ */
+class KdTree {
+    /** Slack applied to the pruning bounds so rounding never prunes an equally close point. */
+    private static final double BOUND_SLACK = 1 - 1e-9;
+    /** Radius of the earth in miles, as used by GraphDB.distance. */
+    private static final double EARTH_RADIUS = 3963;
+
+    private final int[] vertices;
+    private final int[] positions;
+    private final double[] lons;
+    private final double[] lats;
+    private final boolean[] removed;
+    private int size;
+
+    /**
+     * Builds a tree over the points 0..n-1. The arrays are copied and may be reused afterwards.
+     * @param lons The longitudes of the points.
+     * @param lats The latitudes of the points, parallel to lons.
+     * @param n The number of points to use from the arrays.
+     */
+    KdTree(double[] lons, double[] lats, int n) {
+        this.vertices = new int[n];
+        this.positions = new int[n];
+        this.lons = new double[n];
+        this.lats = new double[n];
+        this.removed = new boolean[n];
+        this.size = n;
+
+        for (int i = 0; i < n; ++i) {
+            vertices[i] = i;
+        }
+        build(vertices, lons, lats, 0, n - 1, 0);
+
+        for (int i = 0; i < n; ++i) {
+            positions[vertices[i]] = i;
+            this.lons[i] = lons[vertices[i]];
+            this.lats[i] = lats[vertices[i]];
+        }
+    }
+
+    /**
+     * Returns the number of points that have not been removed.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes point v from the tree.
+     * @return True if the point had not already been removed.
+     */
+    boolean remove(int v) {
+        int position = positions[v];
+        if (removed[position]) {
+            return false;
+        }
+        removed[position] = true;
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns the point closest to lon, lat, or -1 if the tree is empty.
+     */
+    int nearest(double lon, double lat) {
+        Neighbors best = new Neighbors(1);
+        nearest(lon, lat, 0, vertices.length - 1, 0, best);
+        return best.count > 0 ? vertices[best.indices[0]] : -1;
+    }
+
+    /**
+     * Returns the k points closest to lon, lat, ordered from closest to farthest. Fewer than k
+     * points are returned if the tree holds fewer than k points.
+     */
+    int[] nearest(double lon, double lat, int k) {
+        if (k <= 0) {
+            return new int[0];
+        }
+
+        Neighbors best = new Neighbors(k);
+        nearest(lon, lat, 0, vertices.length - 1, 0, best);
+
+        // Drain the max-heap from the back, so the closest point ends up first
+        int[] nearest = new int[best.count];
+        for (int i = best.count - 1; i >= 0; --i) {
+            nearest[i] = vertices[best.poll()];
+        }
+        return nearest;
+    }
+
+    private void nearest(double lon, double lat, int lo, int hi, int depth, Neighbors best) {
+        if (lo > hi) {
+            return;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        if (!removed[mid]) {
+            best.offer(mid, GraphDB.distance(lon, lat, lons[mid], lats[mid]));
+        }
+
+        double diff = isLonAxis(depth) ? lon - lons[mid] : lat - lats[mid];
+        if (diff < 0) {
+            nearest(lon, lat, lo, mid - 1, depth + 1, best);
+        } else {
+            nearest(lon, lat, mid + 1, hi, depth + 1, best);
+        }
+
+        double bound = isLonAxis(depth)
+            ? meridianBound(lat, lon - lons[mid]) : latitudeBound(lat - lats[mid]);
+        if (bound * BOUND_SLACK <= best.worst()) {
+            if (diff < 0) {
+                nearest(lon, lat, mid + 1, hi, depth + 1, best);
+            } else {
+                nearest(lon, lat, lo, mid - 1, depth + 1, best);
+            }
+        }
+    }
+
+    private static boolean isLonAxis(int depth) {
+        return (depth & 1) == 0;
+    }
+
+    /**
+     * Lower bound on the distance from a point at latitude lat to any point on the far side of
+     * a meridian dlon degrees away: the distance to the great circle through that meridian.
+     */
+    private static double meridianBound(double lat, double dlon) {
+        double lambda = Math.toRadians(Math.abs(dlon));
+        if (lambda >= Math.PI / 2) {
+            return 0;
+        }
+        return EARTH_RADIUS * Math.asin(Math.sin(lambda) * Math.cos(Math.toRadians(lat)));
+    }
+
+    /**
+     * Lower bound on the distance to any point on the far side of a parallel dlat degrees away.
+     */
+    private static double latitudeBound(double dlat) {
+        return EARTH_RADIUS * Math.toRadians(Math.abs(dlat));
+    }
+
+    /**
+     * Arranges order[lo..hi] so that the median of each range, by the axis of its depth, is at
+     * the middle of that range with smaller points before it and larger points after it.
+     */
+    private static void build(int[] order, double[] lons, double[] lats,
+                              int lo, int hi, int depth) {
+        if (lo >= hi) {
+            return;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        double[] keys = isLonAxis(depth) ? lons : lats;
+        select(order, keys, lo, hi, mid);
+        build(order, lons, lats, lo, mid - 1, depth + 1);
+        build(order, lons, lats, mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * Quickselect: partially sorts order[lo..hi] by keys so that position k holds the kth
+     * smallest element.
+     */
+    private static void select(int[] order, double[] keys, int lo, int hi, int k) {
+        while (lo < hi) {
+            double pivot = keys[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[order[i]] < pivot) {
+                    i++;
+                }
+                while (keys[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int temp = order[i];
+                    order[i] = order[j];
+                    order[j] = temp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Bounded max-heap of the k best candidates found so far, keyed by distance.
+     */
+    private static class Neighbors {
+        final int[] indices;
+        final double[] distances;
+        int count;
+
+        Neighbors(int k) {
+            indices = new int[k];
+            distances = new double[k];
+            count = 0;
+        }
+
+        /** Distance that a candidate must beat, or infinity while the heap is not full. */
+        double worst() {
+            return count < indices.length ? Double.POSITIVE_INFINITY : distances[0];
+        }
+
+        void offer(int index, double distance) {
+            if (count < indices.length) {
+                int i = count++;
+                while (i > 0 && distances[(i - 1) / 2] < distance) {
+                    indices[i] = indices[(i - 1) / 2];
+                    distances[i] = distances[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                indices[i] = index;
+                distances[i] = distance;
+            } else if (distance < distances[0]) {
+                siftDown(index, distance);
+            }
+        }
+
+        int poll() {
+            int top = indices[0];
+            count--;
+            if (count > 0) {
+                int lastIndex = indices[count];
+                double lastDistance = distances[count];
+                siftDown(lastIndex, lastDistance);
+            }
+            return top;
+        }
+
+        private void siftDown(int index, double distance) {
+            int i = 0;
+            while (2 * i + 1 < count) {
+                int child = 2 * i + 1;
+                if (child + 1 < count && distances[child + 1] > distances[child]) {
+                    child++;
+                }
+                if (distances[child] <= distance) {
+                    break;
+                }
+                indices[i] = indices[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            indices[i] = index;
+            distances[i] = distance;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/**
+ * Landmark distances for the ALT variant of A* (A*, Landmarks, Triangle inequality).
+ *
+ * A few landmark vertices are chosen far apart near the edges of the map, and the exact road
+ * distance from every landmark to every vertex is precomputed. Since the graph is undirected,
+ * the triangle inequality gives |d(L, t) - d(L, v)| as a lower bound on the distance from v to
+ * t for each landmark L. Unlike the straight-line distance this bound follows the actual road
+ * network, so it is much tighter where roads have to go around hills or the bay.
+ *
+ * Distances are stored as floats, one array per landmark, to halve their memory. Removing
+ * vertices from the graph later only makes distances longer, so the bounds stay valid.
+ */
+class Landmarks {
+    /**
+     * Relative error allowed for float rounding, subtracted from the bounds so that they never
+     * exceed the true distance.
+     */
+    private static final double FLOAT_SLACK = 1e-6;
+
+    private final CompactGraph graph;
+    private final int[] landmarks;
+    /** distances[i][v] is the distance from landmark i to v, or infinity if unreachable. */
+    private final float[][] distances;
+
+    /**
+     * Chooses up to k landmarks in the given graph and computes their distances. The first
+     * landmark is the vertex farthest from an arbitrary vertex, and each next one is the
+     * vertex farthest from all landmarks chosen so far.
+     */
+    Landmarks(CompactGraph graph, int k) {
+        this.graph = graph;
+        int n = graph.capacity();
+        int start = 0;
+        while (start < n && graph.isRemoved(start)) {
+            start++;
+        }
+
+        int[] chosen = new int[Math.min(k, graph.size())];
+        float[][] computed = new float[chosen.length][];
+        double[] scratch = new double[n];
+        IndexedMinHeap fringe = new IndexedMinHeap(n);
+        int count = 0;
+        if (chosen.length > 0) {
+            dijkstra(graph, start, scratch, fringe);
+            float[] nearest = new float[n];
+            Arrays.fill(nearest, Float.POSITIVE_INFINITY);
+            int next = farthest(graph, scratch, null);
+            while (count < chosen.length && next >= 0) {
+                dijkstra(graph, next, scratch, fringe);
+                float[] row = new float[n];
+                for (int v = 0; v < n; ++v) {
+                    row[v] = (float) scratch[v];
+                    nearest[v] = Math.min(nearest[v], row[v]);
+                }
+                chosen[count] = next;
+                computed[count] = row;
+                count++;
+                next = farthest(graph, scratch, nearest);
+            }
+        }
+
+        this.landmarks = Arrays.copyOf(chosen, count);
+        this.distances = Arrays.copyOf(computed, count);
+    }
+
+    /** Returns true if these landmarks were computed for the given graph. */
+    boolean isFor(CompactGraph g) {
+        return graph == g;
+    }
+
+    /** Returns the number of landmarks. */
+    int size() {
+        return landmarks.length;
+    }
+
+    /** Returns the vertex index of the ith landmark. */
+    int landmark(int i) {
+        return landmarks[i];
+    }
+
+    /**
+     * Returns a lower bound on the road distance between vertices v and t, or 0 if no landmark
+     * reaches both.
+     */
+    double lowerBound(int v, int t) {
+        double bound = 0;
+        for (float[] row : distances) {
+            float dv = row[v];
+            float dt = row[t];
+            if (dv == Float.POSITIVE_INFINITY || dt == Float.POSITIVE_INFINITY) {
+                continue;
+            }
+            double difference = Math.abs(dt - (double) dv) - FLOAT_SLACK * (dt + (double) dv);
+            if (difference > bound) {
+                bound = difference;
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Returns the reachable vertex that maximizes its distance in nearest, or in distances if
+     * nearest is null, skipping vertices that are already landmarks. Returns -1 if none.
+     */
+    private static int farthest(CompactGraph graph, double[] distances, float[] nearest) {
+        int best = -1;
+        double bestDistance = 0;
+        for (int v = 0; v < distances.length; ++v) {
+            if (graph.isRemoved(v) || distances[v] == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            double d = nearest == null ? distances[v] : nearest[v];
+            if (d > bestDistance || best < 0 && d > 0) {
+                best = v;
+                bestDistance = d;
+            }
+        }
+        return best;
+    }
+
+    /** Fills distances with the road distance from s to every vertex. */
+    private static void dijkstra(CompactGraph graph, int s, double[] distances,
+                                 IndexedMinHeap fringe) {
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        distances[s] = 0;
+        fringe.insertOrDecrease(s, 0);
+        while (!fringe.isEmpty()) {
+            double dv = fringe.minKey();
+            int v = fringe.removeMin();
+            for (int e = graph.firstEdge(v), end = graph.endEdge(v); e < end; ++e) {
+                int w = graph.target(e);
+                double dw = dv + graph.weight(e);
+                if (dw < distances[w] && !graph.isRemoved(w)) {
+                    distances[w] = dw;
+                    fringe.insertOrDecrease(w, dw);
+                }
+            }
+        }
+    }
+}
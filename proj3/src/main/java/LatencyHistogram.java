@@ -0,0 +1,98 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds with logarithmic buckets, in the style of
+ * HdrHistogram. Every power of two is split into SUB_BUCKETS linear buckets, so quantiles are
+ * accurate to about 3% from nanoseconds up to minutes in a fixed array of about a thousand
+ * counters.
+ *
+ * Recording is lock-free and costs one atomic increment plus two adder updates, so it can stay
+ * on in production. Quantiles are read from the live counters and may be slightly off while
+ * values are being recorded.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Durations of 2^MAX_EXPONENT ns, about 73 minutes, or more share the last bucket. */
+    private static final int MAX_EXPONENT = 42;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Records one duration. Negative durations count as 0.
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+    }
+
+    /** Returns the number of recorded durations. */
+    long count() {
+        return count.sum();
+    }
+
+    /** Returns the sum of the recorded durations in nanoseconds. */
+    long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns an upper bound on the given quantile of the recorded durations in nanoseconds,
+     * at most about 3% above the true value, or 0 if nothing has been recorded.
+     * @param q The quantile, between 0 and 1.
+     */
+    long quantile(double q) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(BUCKETS - 1);
+    }
+
+    /**
+     * Returns the bucket of a non-negative value. Values below SUB_BUCKETS have a bucket each;
+     * above that, the bucket is given by the position of the highest bit and the SUB_BUCKET_BITS
+     * bits below it.
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /** Returns the highest value that falls into the given bucket. */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
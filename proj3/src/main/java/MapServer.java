@@ -3,15 +3,16 @@ import java.awt.Graphics2D;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.awt.image.BufferedImage;
-import javax.imageio.ImageIO;
 import java.io.IOException;
 
 
@@ -76,10 +77,22 @@ public class MapServer {
      **/
     private static final String[] REQUIRED_RASTER_RESULT_PARAMS = {"render_grid", "raster_ul_lon",
         "raster_ul_lat", "raster_lr_lon", "raster_lr_lat", "depth", "query_success"};
+    /** Number of names returned by a fuzzy search without a limit. */
+    private static final int DEFAULT_FUZZY_LIMIT = 10;
+    /** Most source-target pairs a single /route_matrix request may ask for. */
+    private static final int MAX_MATRIX_CELLS = 10000;
 
     private static Rasterer rasterer;
+    private static TileCache tileCache;
+    private static TileCompositor compositor;
+    private static RasterCache rasterCache;
     private static GraphDB graph;
-    private static List<Long> route = new LinkedList<>();
+    /** The current route of each client. */
+    private static RouteSessions sessions;
+    /** Runs the searches of /route_matrix requests from different sources in parallel. */
+    private static ThreadPoolExecutor routingPool;
+    /** Latencies of requests and their phases, and cache counters, served by /metrics. */
+    private static Metrics metrics;
     /* Define any static variables here. Do not define any instance variables of MapServer. */
 
 
@@ -89,8 +102,76 @@ public class MapServer {
      * This is for testing purposes, and you may fail tests otherwise.
      **/
     public static void initialize() {
-        graph = new GraphDB(OSM_DB_PATH);
+        graph = GraphDB.load(OSM_DB_PATH);
         rasterer = new Rasterer();
+
+        /* Keep up to -Dtiles.cacheMB of decoded tiles in memory, and unless -Dtiles.prefetch is
+         * false, load the tiles around each raster in the background. */
+        long cacheBytes = Long.getLong("tiles.cacheMB", 128) << 20;
+        ThreadPoolExecutor prefetcher = null;
+        if (Boolean.parseBoolean(System.getProperty("tiles.prefetch", "true"))) {
+            prefetcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(256), runnable -> {
+                        Thread thread = new Thread(runnable, "tile-prefetch");
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.DiscardOldestPolicy());
+        }
+        tileCache = new TileCache(IMG_ROOT, cacheBytes, prefetcher);
+
+        /* Fetch and decode the tiles of each raster on -Dtiles.decodeThreads threads. */
+        int decodeThreads = Integer.getInteger("tiles.decodeThreads",
+                Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor decoder = new ThreadPoolExecutor(decodeThreads, decodeThreads, 0,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1024), runnable -> {
+                    Thread thread = new Thread(runnable, "tile-decode");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        compositor = new TileCompositor(TILE_SIZE, MapServer::getImage, decoder);
+        rasterCache = new RasterCache(Long.getLong("raster.cacheMB", 32) << 20);
+
+        /* Forget the routes of clients that have been idle for -Dsessions.idleMinutes. */
+        sessions = new RouteSessions(Long.getLong("sessions.idleMinutes", 30) * 60000,
+                System::currentTimeMillis);
+
+        /* Search from the sources of route matrices on -Drouter.threads threads. When the
+         * queue is full, the request thread runs searches itself. */
+        int routingThreads = Integer.getInteger("router.threads",
+                Runtime.getRuntime().availableProcessors());
+        routingPool = new ThreadPoolExecutor(routingThreads, routingThreads, 0,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1024), runnable -> {
+                    Thread thread = new Thread(runnable, "route-matrix");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        /* Choose the routing engine with -Drouter.engine=astar|alt|ch, and preprocess up front
+         * so the first route request is not slow. */
+        Router.Engine engine = Router.Engine.valueOf(
+                System.getProperty("router.engine", "astar").toUpperCase());
+        Router.setDefaultEngine(engine);
+        if (engine == Router.Engine.ALT) {
+            graph.landmarks();
+        } else if (engine == Router.Engine.CH) {
+            graph.contractionHierarchy();
+        }
+
+        metrics = new Metrics();
+        Router.setMetrics(metrics);
+        metrics.phase("tile_io", tileCache.loadTimes());
+        metrics.counter("tile_cache_hits", "Tiles found in the tile cache.",
+                tileCache::hits);
+        metrics.counter("tile_cache_misses", "Tiles read from disk on request.",
+                tileCache::misses);
+        metrics.counter("tile_cache_evictions", "Tiles evicted from the tile cache.",
+                tileCache::evictions);
+        metrics.counter("tile_prefetches", "Tiles read from disk ahead of requests.",
+                tileCache::prefetches);
+        metrics.counter("raster_cache_hits", "Rasters found already encoded.",
+                rasterCache::hits);
+        metrics.counter("raster_cache_misses", "Rasters that had to be encoded.",
+                rasterCache::misses);
     }
 
     public static void main(String[] args) {
@@ -106,50 +187,126 @@ public class MapServer {
 
         /* Define the raster endpoint for HTTP GET requests. I use anonymous functions to define
          * the request handlers. */
-        get("/raster", (req, res) -> {
+        get("/raster", timed("raster", (req, res) -> {
             HashMap<String, Double> params =
                     getRequestParams(req, REQUIRED_RASTER_REQUEST_PARAMS);
-            /* The png image is written to the ByteArrayOutputStream */
+            /* The image is PNG unless format=jpeg, with an optional quality from 0 to 1. */
+            ImageEncoding encoding = ImageEncoding.of(req.queryParams("format"),
+                    req.queryParams("quality"));
+            if (encoding == null) {
+                halt(HALT_RESPONSE, "Incorrect parameters - unknown format or quality.");
+            }
+            /* The image is written to the ByteArrayOutputStream */
             ByteArrayOutputStream os = new ByteArrayOutputStream();
             /* getMapRaster() does almost all the work for this API call */
+            long start = System.nanoTime();
             Map<String, Object> rasteredImgParams = rasterer.getMapRaster(params);
+            metrics.recordPhase("raster_grid", System.nanoTime() - start);
 
             boolean rasterSuccess = validateRasteredImgParams(rasteredImgParams);
 
             if (rasterSuccess) {
-                writeImagesToOutputStream(rasteredImgParams, os);
-                String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
-                rasteredImgParams.put("b64_encoded_image_data", encodedImage);
+                /* Reuse the encoded image if the same tiles were rastered with this route. */
+                String[][] renderGrid = (String[][]) rasteredImgParams.get("render_grid");
+                RouteSessions.Route route = sessions.route(getSessionId(req));
+                RasterCache.Entry cached = rasterCache.get(renderGrid, route.version(),
+                        encoding);
+                if (cached == null) {
+                    writeImagesToOutputStream(rasteredImgParams, route, encoding, os);
+                    start = System.nanoTime();
+                    String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
+                    metrics.recordPhase("base64", System.nanoTime() - start);
+                    cached = new RasterCache.Entry(encodedImage,
+                            (int) rasteredImgParams.get("raster_width"),
+                            (int) rasteredImgParams.get("raster_height"));
+                    rasterCache.put(renderGrid, route.version(), encoding, cached);
+                }
+                /* Also on a hit: the neighbors may have left the tile cache since. */
+                tileCache.prefetchNeighbors(renderGrid);
+                rasteredImgParams.put("image_type", encoding.mimeType());
+                rasteredImgParams.put("raster_width", cached.width);
+                rasteredImgParams.put("raster_height", cached.height);
+                rasteredImgParams.put("b64_encoded_image_data", cached.encodedImage);
             }
 
             /* Encode response to Json */
+            start = System.nanoTime();
             Gson gson = new Gson();
-            return gson.toJson(rasteredImgParams);
-        });
-
-        /* Define the routing endpoint for HTTP GET requests. */
-        get("/route", (req, res) -> {
+            String json = gson.toJson(rasteredImgParams);
+            metrics.recordPhase("json", System.nanoTime() - start);
+            return json;
+        }));
+
+        /* Define the routing endpoint for HTTP GET requests. With metric=time, find the
+         * fastest route at the speed limits instead of the shortest one. */
+        get("/route", timed("route", (req, res) -> {
             HashMap<String, Double> params =
                     getRequestParams(req, REQUIRED_ROUTE_REQUEST_PARAMS);
-            route = Router.shortestPath(graph, params.get("start_lon"), params.get("start_lat"),
-                    params.get("end_lon"), params.get("end_lat"));
-            String directions = getDirectionsText();
+            RouteSessions.Route route = RouteSessions.Route.of(graph,
+                    Router.shortestPath(graph, params.get("start_lon"), params.get("start_lat"),
+                            params.get("end_lon"), params.get("end_lat"),
+                            Router.defaultEngine(), getMetric(req)));
+            sessions.setRoute(getSessionId(req), route);
+            long start = System.nanoTime();
+            String directions = getDirectionsText(route);
+            metrics.recordPhase("directions", System.nanoTime() - start);
             Map<String, Object> routeParams = new HashMap<>();
             routeParams.put("routing_success", !route.isEmpty());
             routeParams.put("directions_success", directions.length() > 0);
             routeParams.put("directions", directions);
             Gson gson = new Gson();
             return gson.toJson(routeParams);
-        });
+        }));
+
+        /* Define the API endpoint for the distances, and with paths=true the paths, from
+         * each of several sources to each of several targets. Sources and targets are given
+         * as lon,lat pairs separated by semicolons. Missing routes have a null distance.
+         * With metric=time, distances are driving times in seconds. */
+        get("/route_matrix", timed("route_matrix", (req, res) -> {
+            double[][] sources = getRequestPoints(req, "sources");
+            double[][] targets = getRequestPoints(req, "targets");
+            if ((long) sources.length * targets.length > MAX_MATRIX_CELLS) {
+                halt(HALT_RESPONSE, "Request failed - too many sources and targets.");
+            }
+            boolean withPaths = Boolean.parseBoolean(req.queryParams("paths"));
+            RouteMatrix matrix = Router.routeMatrix(graph, sources, targets, getMetric(req),
+                    withPaths, routingPool);
+
+            List<List<Double>> distances = new ArrayList<>();
+            for (int i = 0; i < matrix.sourceCount(); ++i) {
+                List<Double> row = new ArrayList<>();
+                for (int j = 0; j < matrix.targetCount(); ++j) {
+                    double distance = matrix.distance(i, j);
+                    row.add(Double.isInfinite(distance) ? null : distance);
+                }
+                distances.add(row);
+            }
+            Map<String, Object> matrixParams = new HashMap<>();
+            matrixParams.put("distances", distances);
+            if (withPaths) {
+                List<List<List<Long>>> paths = new ArrayList<>();
+                for (int i = 0; i < matrix.sourceCount(); ++i) {
+                    List<List<Long>> row = new ArrayList<>();
+                    for (int j = 0; j < matrix.targetCount(); ++j) {
+                        row.add(matrix.path(i, j));
+                    }
+                    paths.add(row);
+                }
+                matrixParams.put("paths", paths);
+            }
+            matrixParams.put("matrix_success", true);
+            Gson gson = new Gson();
+            return gson.toJson(matrixParams);
+        }));
 
         /* Define the API endpoint for clearing the current route. */
-        get("/clear_route", (req, res) -> {
-            clearRoute();
+        get("/clear_route", timed("clear_route", (req, res) -> {
+            clearRoute(getSessionId(req));
             return true;
-        });
+        }));
 
         /* Define the API endpoint for search */
-        get("/search", (req, res) -> {
+        get("/search", timed("search", (req, res) -> {
             Set<String> reqParams = req.queryParams();
             String term = req.queryParams("term");
             Gson gson = new Gson();
@@ -158,10 +315,26 @@ public class MapServer {
                 List<Map<String, Object>> data = getLocations(term);
                 return gson.toJson(data);
             } else {
-                /* Search for prefix matching strings. */
-                List<String> matches = getLocationsByPrefix(term);
+                /* Search for prefix matching strings, the most common first if limited. */
+                String limit = req.queryParams("limit");
+                List<String> matches;
+                if (reqParams.contains("fuzzy")) {
+                    matches = getLocationsByFuzzyPrefix(term,
+                            limit == null ? DEFAULT_FUZZY_LIMIT : parseLimit(limit));
+                } else if (limit == null) {
+                    matches = getLocationsByPrefix(term);
+                } else {
+                    matches = getLocationsByPrefix(term, parseLimit(limit));
+                }
                 return gson.toJson(matches);
             }
+        }));
+
+        /* Define the endpoint for the request and cache metrics, in the Prometheus text
+         * format. */
+        get("/metrics", (req, res) -> {
+            res.type("text/plain; version=0.0.4");
+            return metrics.prometheus();
         });
 
         /* Define map application redirect */
@@ -171,6 +344,24 @@ public class MapServer {
         });
     }
 
+    /**
+     * Wraps a request handler to record its latency under the given endpoint name. Requests
+     * that halt or throw count as errors.
+     */
+    private static spark.Route timed(String endpoint, spark.Route handler) {
+        return (req, res) -> {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = handler.handle(req, res);
+                failed = false;
+                return result;
+            } finally {
+                metrics.recordRequest(endpoint, System.nanoTime() - start, failed);
+            }
+        };
+    }
+
     /**
      * Validate & return a parameter map of the required request parameters.
      * Requires that all input parameters are doubles.
@@ -197,32 +388,67 @@ public class MapServer {
         return params;
     }
 
+    /**
+     * Validate & return the metric routes should minimize: metric=distance, the default, or
+     * metric=time.
+     * @param req HTTP Request.
+     * @return The metric.
+     */
+    private static Router.Metric getMetric(spark.Request req) {
+        String metric = req.queryParams("metric");
+        if (metric == null || metric.equalsIgnoreCase("distance")) {
+            return Router.Metric.DISTANCE;
+        } else if (metric.equalsIgnoreCase("time")) {
+            return Router.Metric.TIME;
+        }
+        halt(HALT_RESPONSE, "Incorrect parameters - metric must be time or distance.");
+        return null;
+    }
+
+    /**
+     * Validate & return a list of locations given as lon,lat pairs separated by semicolons.
+     * @param req HTTP Request.
+     * @param param The name of the parameter.
+     * @return The longitude and latitude of each location.
+     */
+    private static double[][] getRequestPoints(spark.Request req, String param) {
+        String value = req.queryParams(param);
+        if (value == null || value.isEmpty()) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        String[] pairs = value.split(";");
+        double[][] points = new double[pairs.length][];
+        for (int i = 0; i < pairs.length; ++i) {
+            String[] lonLat = pairs[i].split(",");
+            try {
+                if (lonLat.length != 2) {
+                    throw new NumberFormatException(pairs[i]);
+                }
+                points[i] = new double[]{Double.parseDouble(lonLat[0].trim()),
+                    Double.parseDouble(lonLat[1].trim())};
+            } catch (NumberFormatException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide lon,lat pairs.");
+            }
+        }
+        return points;
+    }
+
     /**
      * Writes the images corresponding to rasteredImgParams to the output stream.
      * In Spring 2016, students had to do this on their own, but in 2017,
      * we have made this into provided code since it was just a bit too low level.
      */
     private static void writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
+                                                  RouteSessions.Route route,
+                                                  ImageEncoding encoding,
                                                   ByteArrayOutputStream os) {
         String[][] renderGrid = (String[][]) rasteredImageParams.get("render_grid");
-        int numVertTiles = renderGrid.length;
-        int numHorizTiles = renderGrid[0].length;
 
-        BufferedImage img = new BufferedImage(numHorizTiles * MapServer.TILE_SIZE,
-                numVertTiles * MapServer.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        /* Decode the tiles in parallel, straight into the pixels of the raster. */
+        long start = System.nanoTime();
+        BufferedImage img = compositor.compose(renderGrid);
+        metrics.recordPhase("compose", System.nanoTime() - start);
         Graphics graphic = img.getGraphics();
-        int x = 0, y = 0;
-
-        for (int r = 0; r < numVertTiles; r += 1) {
-            for (int c = 0; c < numHorizTiles; c += 1) {
-                graphic.drawImage(getImage(IMG_ROOT + renderGrid[r][c]), x, y, null);
-                x += MapServer.TILE_SIZE;
-                if (x >= img.getWidth()) {
-                    x = 0;
-                    y += MapServer.TILE_SIZE;
-                }
-            }
-        }
 
         /* If there is a route, draw it. */
         double ullon = (double) rasteredImageParams.get("raster_ul_lon"); //tiles.get(0).ulp;
@@ -232,49 +458,56 @@ public class MapServer {
 
         final double wdpp = (lrlon - ullon) / img.getWidth();
         final double hdpp = (ullat - lrlat) / img.getHeight();
-        if (route != null && !route.isEmpty()) {
+        start = System.nanoTime();
+        if (!route.isEmpty()) {
             Graphics2D g2d = (Graphics2D) graphic;
             g2d.setColor(MapServer.ROUTE_STROKE_COLOR);
             g2d.setStroke(new BasicStroke(MapServer.ROUTE_STROKE_WIDTH_PX,
                     BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            route.stream().reduce((v, w) -> {
-                g2d.drawLine((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
-                             (int) ((ullat - graph.lat(v)) * (1 / hdpp)),
-                             (int) ((graph.lon(w) - ullon) * (1 / wdpp)),
-                             (int) ((ullat - graph.lat(w)) * (1 / hdpp)));
-                return w;
-            });
+            for (int i = 1; i < route.size(); ++i) {
+                g2d.drawLine((int) ((route.lon(i - 1) - ullon) * (1 / wdpp)),
+                             (int) ((ullat - route.lat(i - 1)) * (1 / hdpp)),
+                             (int) ((route.lon(i) - ullon) * (1 / wdpp)),
+                             (int) ((ullat - route.lat(i)) * (1 / hdpp)));
+            }
         }
 
+        metrics.recordPhase("draw_route", System.nanoTime() - start);
+
         rasteredImageParams.put("raster_width", img.getWidth());
         rasteredImageParams.put("raster_height", img.getHeight());
 
+        start = System.nanoTime();
         try {
-            ImageIO.write(img, "png", os);
+            encoding.write(img, os);
         } catch (IOException e) {
             e.printStackTrace();
         }
+        metrics.recordPhase("encode", System.nanoTime() - start);
 
     }
 
-    private static BufferedImage getImage(String imgPath) {
-        BufferedImage tileImg = null;
-        if (tileImg == null) {
-            try {
-                File in = new File(imgPath);
-                tileImg = ImageIO.read(in);
-            } catch (IOException | NullPointerException e) {
-                e.printStackTrace();
-            }
-        }
-        return tileImg;
+    /**
+     * Returns the decoded tile with the given file name, from the tile cache when possible.
+     */
+    private static BufferedImage getImage(String fileName) {
+        return tileCache.get(fileName);
     }
 
     /**
-     * Clear the current found route, if it exists.
+     * Clear the current found route of a session, if it exists.
+     * @param sessionId The session, as returned by getSessionId.
      */
-    public static void clearRoute() {
-        route = new LinkedList<Long>();
+    public static void clearRoute(String sessionId) {
+        sessions.clearRoute(sessionId);
+    }
+
+    /**
+     * Returns the route session of a request, given by its session parameter. Requests
+     * without one share a default session.
+     */
+    private static String getSessionId(spark.Request req) {
+        return RouteSessions.sessionId(req.queryParams("session"));
     }
 
     /**
@@ -288,6 +521,39 @@ public class MapServer {
         return graph.getLocationsByPrefix(prefix);
     }
 
+    /**
+     * Collect at most limit names of OSM locations that prefix-match the query string, those
+     * whose cleaned name is shared by the most locations first.
+     * @param prefix Prefix string to be searched for.
+     * @param limit The most names to return.
+     * @return A <code>List</code> of at most <code>limit</code> full names.
+     */
+    public static List<String> getLocationsByPrefix(String prefix, int limit) {
+        return graph.getLocationsByPrefix(prefix, limit);
+    }
+
+    /**
+     * Collect at most limit names of OSM locations that prefix-match the query string with a
+     * few typos, the closest matches first.
+     * @param prefix Prefix string to be searched for, possibly misspelled.
+     * @param limit The most names to return.
+     * @return A <code>List</code> of at most <code>limit</code> full names.
+     */
+    public static List<String> getLocationsByFuzzyPrefix(String prefix, int limit) {
+        return graph.getLocationsByFuzzyPrefix(prefix, limit);
+    }
+
+    /**
+     * Parses the limit parameter of a search, or returns 0 if it is not a positive number.
+     */
+    private static int parseLimit(String limit) {
+        try {
+            return Math.max(0, Integer.parseInt(limit));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     /**
      * Collect all locations that match a cleaned <code>locationName</code>, and return
      * information about each node that matches.
@@ -340,11 +606,14 @@ public class MapServer {
     }
 
     /**
-     * Takes the route of this MapServer and converts it into an HTML friendly
+     * Takes a route and converts it into an HTML friendly
      * String to be passed to the frontend.
      */
-    private static String getDirectionsText() {
-        List<Router.NavigationDirection> directions = Router.routeDirections(graph, route);
+    private static String getDirectionsText(RouteSessions.Route route) {
+        if (route.size() < 2) {
+            return "";
+        }
+        List<Router.NavigationDirection> directions = Router.routeDirections(graph, route.ids());
         if (directions == null || directions.isEmpty()) {
             return "";
         }
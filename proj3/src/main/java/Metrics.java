@@ -0,0 +1,137 @@
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Request and phase timings of the server, served by /metrics in the Prometheus text format.
+ *
+ * Each endpoint has a latency histogram and an error count. Phases are the internal steps of
+ * requests, such as rastering, encoding or the route search, and have a latency histogram each.
+ * Counters maintained elsewhere, such as cache hits, can be exported too. Histograms are
+ * exported as summaries with the 0.5, 0.99 and 0.999 quantiles.
+ *
+ * All methods are thread-safe. Recording a duration looks up its histogram in a concurrent map
+ * and is otherwise lock-free.
+ */
+class Metrics {
+    private static final String PREFIX = "bearmaps_";
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final Map<String, LatencyHistogram> requests = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> phases = new ConcurrentSkipListMap<>();
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+
+    private static class Counter {
+        final String help;
+        final LongSupplier value;
+
+        Counter(String help, LongSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Records a request to an endpoint that took the given time.
+     * @param failed Whether the request failed, e.g. was halted or threw.
+     */
+    void recordRequest(String endpoint, long nanos, boolean failed) {
+        requests.computeIfAbsent(endpoint, e -> new LatencyHistogram()).record(nanos);
+        LongAdder errorCount = errors.computeIfAbsent(endpoint, e -> new LongAdder());
+        if (failed) {
+            errorCount.increment();
+        }
+    }
+
+    /**
+     * Records one run of a phase that took the given time.
+     */
+    void recordPhase(String phase, long nanos) {
+        phase(phase).record(nanos);
+    }
+
+    /**
+     * Returns the histogram of a phase, e.g. to be recorded into directly by the code that
+     * runs it.
+     */
+    LatencyHistogram phase(String phase) {
+        return phases.computeIfAbsent(phase, p -> new LatencyHistogram());
+    }
+
+    /**
+     * Exports the histogram of a phase that is recorded elsewhere.
+     */
+    void phase(String phase, LatencyHistogram histogram) {
+        phases.put(phase, histogram);
+    }
+
+    /**
+     * Exports a counter that is maintained elsewhere, read whenever metrics are served.
+     */
+    void counter(String name, String help, LongSupplier value) {
+        counters.put(name, new Counter(help, value));
+    }
+
+    /**
+     * Returns all metrics in the Prometheus text exposition format.
+     */
+    String prometheus() {
+        StringBuilder out = new StringBuilder();
+        summary(out, "request_seconds", "Latency of requests by endpoint.", "endpoint",
+                requests);
+
+        header(out, "request_errors_total", "Failed requests by endpoint.", "counter");
+        for (Map.Entry<String, LatencyHistogram> entry : requests.entrySet()) {
+            LongAdder errorCount = errors.get(entry.getKey());
+            out.append(PREFIX).append("request_errors_total{endpoint=\"")
+                    .append(escape(entry.getKey())).append("\"} ")
+                    .append(errorCount == null ? 0 : errorCount.sum()).append('\n');
+        }
+
+        summary(out, "phase_seconds", "Latency of the phases of requests.", "phase", phases);
+
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            String name = entry.getKey() + "_total";
+            header(out, name, entry.getValue().help, "counter");
+            out.append(PREFIX).append(name).append(' ')
+                    .append(entry.getValue().value.getAsLong()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void summary(StringBuilder out, String name, String help, String label,
+                                Map<String, LatencyHistogram> histograms) {
+        header(out, name, help, "summary");
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            String labelValue = label + "=\"" + escape(entry.getKey()) + "\"";
+            LatencyHistogram histogram = entry.getValue();
+            for (double q : QUANTILES) {
+                out.append(PREFIX).append(name).append('{').append(labelValue)
+                        .append(",quantile=\"").append(q).append("\"} ")
+                        .append(seconds(histogram.quantile(q))).append('\n');
+            }
+            out.append(PREFIX).append(name).append("_sum{").append(labelValue).append("} ")
+                    .append(seconds(histogram.sum())).append('\n');
+            out.append(PREFIX).append(name).append("_count{").append(labelValue).append("} ")
+                    .append(histogram.count()).append('\n');
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    /** Escapes a label value as the text format requires. */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Least recently used cache of finished /raster responses: the base64 encoded PNG of the
+ * composed tiles with the route drawn on top. Responses are keyed by the depth and tile range
+ * of the render grid, by the version of the route drawn on them and by the image encoding, so
+ * a hit skips compositing, route drawing and both encodings.
+ *
+ * The route version must change whenever the route does. Since it is part of the key, a
+ * response drawn with an old route can never be returned, even if it is stored after the route
+ * has changed. Such responses are never hit again and age out as newer ones are stored.
+ *
+ * All methods are thread-safe.
+ */
+class RasterCache {
+    private final long maxBytes;
+    /** Responses in access order, least recently used first. Guarded by this. */
+    private final LinkedHashMap<Key, Entry> responses = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * A cached response.
+     */
+    static class Entry {
+        final String encodedImage;
+        final int width;
+        final int height;
+
+        Entry(String encodedImage, int width, int height) {
+            this.encodedImage = encodedImage;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * @param maxBytes The most memory the encoded images may take.
+     */
+    RasterCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached response for the given render grid, route version and encoding, or
+     * null.
+     */
+    Entry get(String[][] renderGrid, long routeVersion, ImageEncoding encoding) {
+        Key key = Key.of(renderGrid, routeVersion, encoding);
+        Entry entry = null;
+        if (key != null) {
+            synchronized (this) {
+                entry = responses.get(key);
+            }
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Caches the response for the given render grid, route version and encoding.
+     */
+    void put(String[][] renderGrid, long routeVersion, ImageEncoding encoding, Entry entry) {
+        Key key = Key.of(renderGrid, routeVersion, encoding);
+        if (key == null || sizeOf(entry) > maxBytes) {
+            return;
+        }
+
+        synchronized (this) {
+            Entry previous = responses.put(key, entry);
+            if (previous != null) {
+                bytes -= sizeOf(previous);
+            }
+            bytes += sizeOf(entry);
+
+            Iterator<Entry> eldest = responses.values().iterator();
+            while (bytes > maxBytes) {
+                bytes -= sizeOf(eldest.next());
+                eldest.remove();
+            }
+        }
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    synchronized int size() {
+        return responses.size();
+    }
+
+    private static long sizeOf(Entry entry) {
+        return entry.encodedImage.length();
+    }
+
+    /**
+     * Depth and tile range of a render grid, the route version and the encoding.
+     */
+    private static class Key {
+        private final int depth;
+        private final int xStart;
+        private final int yStart;
+        private final int xEnd;
+        private final int yEnd;
+        private final long routeVersion;
+        private final ImageEncoding encoding;
+
+        private Key(int[] first, int[] last, long routeVersion, ImageEncoding encoding) {
+            this.depth = first[0];
+            this.xStart = first[1];
+            this.yStart = first[2];
+            this.xEnd = last[1];
+            this.yEnd = last[2];
+            this.routeVersion = routeVersion;
+            this.encoding = encoding;
+        }
+
+        /** Returns the key of a render grid, or null if its file names cannot be parsed. */
+        static Key of(String[][] renderGrid, long routeVersion, ImageEncoding encoding) {
+            if (renderGrid.length == 0 || renderGrid[0].length == 0) {
+                return null;
+            }
+            String[] lastRow = renderGrid[renderGrid.length - 1];
+            int[] first = Rasterer.parseFileName(renderGrid[0][0]);
+            int[] last = Rasterer.parseFileName(lastRow[lastRow.length - 1]);
+            if (first == null || last == null || first[0] != last[0]) {
+                return null;
+            }
+            return new Key(first, last, routeVersion, encoding);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return depth == other.depth && xStart == other.xStart && yStart == other.yStart
+                    && xEnd == other.xEnd && yEnd == other.yEnd
+                    && routeVersion == other.routeVersion && encoding.equals(other.encoding);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(depth, xStart, yStart, xEnd, yEnd, routeVersion, encoding);
+        }
+    }
+}
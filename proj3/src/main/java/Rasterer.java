@@ -1,5 +1,7 @@
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * This class provides all code necessary to take a query box and produce
@@ -9,6 +11,7 @@ import java.util.Map;
  */
 public class Rasterer {
     private static final int MAX_FILE_DEPTH = 7;
+    private static final Pattern FILE_NAME = Pattern.compile("d(\\d+)_x(\\d+)_y(\\d+)\\.png");
 
     private static final double[] DEPTH_LON_DPP;
     static {
@@ -142,7 +145,23 @@ public class Rasterer {
         return MAX_FILE_DEPTH;
     }
 
-    private String getFileName(int depth, int x, int y) {
+    /**
+     * Returns the file name of the tile at column x and row y of the given depth.
+     */
+    static String getFileName(int depth, int x, int y) {
         return "d" + depth + "_x" + x + "_y" + y + ".png";
     }
+
+    /**
+     * Returns the depth, column and row of the tile with the given file name, or null if it is
+     * not a tile file name.
+     */
+    static int[] parseFileName(String fileName) {
+        Matcher matcher = FILE_NAME.matcher(fileName);
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new int[] {Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+            Integer.parseInt(matcher.group(3))};
+    }
 }
@@ -0,0 +1,46 @@
+import java.util.List;
+
+/**
+ * The shortest distances, and optionally the paths, from each of several sources to each of
+ * several targets, as found by Router.routeMatrix.
+ */
+class RouteMatrix {
+    private final double[][] distances;
+    private final List<List<List<Long>>> paths;
+
+    /**
+     * @param distances The distance from each source to each target, or infinity if there is
+     *                  no route.
+     * @param paths The path from each source to each target, or null if paths were not asked
+     *              for. Paths without a route are empty.
+     */
+    RouteMatrix(double[][] distances, List<List<List<Long>>> paths) {
+        this.distances = distances;
+        this.paths = paths;
+    }
+
+    int sourceCount() {
+        return distances.length;
+    }
+
+    int targetCount() {
+        return distances.length == 0 ? 0 : distances[0].length;
+    }
+
+    /** Returns the distance from source i to target j, or infinity if there is no route. */
+    double distance(int i, int j) {
+        return distances[i][j];
+    }
+
+    boolean hasPaths() {
+        return paths != null;
+    }
+
+    /**
+     * Returns the ids of the vertices on the path from source i to target j, which is empty if
+     * there is no route.
+     */
+    List<Long> path(int i, int j) {
+        return paths.get(i).get(j);
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * The current route of each client of the server, so that concurrent users do not overwrite
+ * each other's routes. Clients identify themselves with a session id of their choosing;
+ * requests without a valid id share one default session. Sessions that have not been used for
+ * a while are expired.
+ *
+ * Routes are immutable snapshots that are replaced as a whole, so a raster request can draw
+ * the route it read without locking while another request replaces it.
+ */
+class RouteSessions {
+    /** Session used by requests without a valid session id. */
+    static final String DEFAULT_SESSION = "";
+    private static final Pattern SESSION_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long idleMillis;
+    private final LongSupplier clock;
+    private volatile long lastExpiry;
+
+    /**
+     * An immutable route: the ids of its vertices and their coordinates, captured when the
+     * route was found so that drawing it does not need the graph. Every route has a unique
+     * version, except that all empty routes share version 0.
+     */
+    static final class Route {
+        static final Route EMPTY = new Route(Collections.emptyList(), new double[0],
+                new double[0], 0);
+        private static final AtomicLong VERSIONS = new AtomicLong();
+
+        private final List<Long> ids;
+        private final double[] lons;
+        private final double[] lats;
+        private final long version;
+
+        private Route(List<Long> ids, double[] lons, double[] lats, long version) {
+            this.ids = ids;
+            this.lons = lons;
+            this.lats = lats;
+            this.version = version;
+        }
+
+        /**
+         * Returns a snapshot of the route through the given vertices of g.
+         */
+        static Route of(GraphDB g, List<Long> path) {
+            if (path.isEmpty()) {
+                return EMPTY;
+            }
+            List<Long> ids = Collections.unmodifiableList(new ArrayList<>(path));
+            double[] lons = new double[ids.size()];
+            double[] lats = new double[ids.size()];
+            for (int i = 0; i < ids.size(); ++i) {
+                lons[i] = g.lon(ids.get(i));
+                lats[i] = g.lat(ids.get(i));
+            }
+            return new Route(ids, lons, lats, VERSIONS.incrementAndGet());
+        }
+
+        /** Returns the ids of the vertices on the route, as an unmodifiable list. */
+        List<Long> ids() {
+            return ids;
+        }
+
+        int size() {
+            return ids.size();
+        }
+
+        boolean isEmpty() {
+            return ids.isEmpty();
+        }
+
+        double lon(int i) {
+            return lons[i];
+        }
+
+        double lat(int i) {
+            return lats[i];
+        }
+
+        long version() {
+            return version;
+        }
+    }
+
+    private static final class Session {
+        private volatile Route route = Route.EMPTY;
+        private volatile long lastUsed;
+    }
+
+    /**
+     * @param idleMillis How long a session may go unused before it is expired.
+     * @param clock The current time in milliseconds.
+     */
+    RouteSessions(long idleMillis, LongSupplier clock) {
+        this.idleMillis = idleMillis;
+        this.clock = clock;
+        this.lastExpiry = clock.getAsLong();
+    }
+
+    /**
+     * Returns the session id to use for the given client supplied id, which may be null.
+     */
+    static String sessionId(String requested) {
+        if (requested == null || !SESSION_ID.matcher(requested).matches()) {
+            return DEFAULT_SESSION;
+        }
+        return requested;
+    }
+
+    /**
+     * Returns the current route of a session, which is empty for a new or expired session.
+     */
+    Route route(String sessionId) {
+        long now = expireIdle();
+        Session session = sessions.computeIfPresent(sessionId, (id, s) -> {
+            s.lastUsed = now;
+            return s;
+        });
+        return session == null ? Route.EMPTY : session.route;
+    }
+
+    /**
+     * Replaces the route of a session, creating the session if needed. The session is touched
+     * and its route written in one atomic step, so a concurrent expiry either removes the old
+     * session first or sees it as just used, and never drops the new route.
+     */
+    void setRoute(String sessionId, Route route) {
+        long now = expireIdle();
+        sessions.compute(sessionId, (id, s) -> {
+            Session session = s == null ? new Session() : s;
+            session.lastUsed = now;
+            session.route = route;
+            return session;
+        });
+    }
+
+    /**
+     * Clears the route of a session, which ends the session.
+     */
+    void clearRoute(String sessionId) {
+        expireIdle();
+        sessions.remove(sessionId);
+    }
+
+    /** Returns the number of live sessions. */
+    int size() {
+        expireIdle();
+        return sessions.size();
+    }
+
+    /**
+     * Removes sessions that have been idle for too long, at most a few times per idle period,
+     * and returns the current time. Each session is checked again as it is removed, so one
+     * that was used after the sweep read it is kept.
+     */
+    private long expireIdle() {
+        long now = clock.getAsLong();
+        if (now - lastExpiry < idleMillis / 4) {
+            return now;
+        }
+        lastExpiry = now;
+        for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+            if (now - entry.getValue().lastUsed > idleMillis) {
+                sessions.computeIfPresent(entry.getKey(),
+                        (id, s) -> now - s.lastUsed > idleMillis ? null : s);
+            }
+        }
+        return now;
+    }
+}
@@ -1,16 +1,14 @@
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -23,18 +21,53 @@ import java.util.regex.Pattern;
  * down to the priority you use to order your vertices.
  */
 public class Router {
-    private static class SearchNode {
-        long v;
-        double priority;
+    /**
+     * Algorithms that shortestPath can use. All return the same shortest paths.
+     * ASTAR searches the road graph directly. ALT is A* with a landmark heuristic, which needs
+     * a few Dijkstra searches up front and then settles far fewer vertices. CH queries a
+     * contraction hierarchy, which takes a few seconds of preprocessing on first use but then
+     * answers in microseconds.
+     */
+    public enum Engine {
+        ASTAR, ALT, CH
+    }
 
-        public SearchNode(long v, double priority) {
-            this.v = v;
-            this.priority = priority;
-        }
+    /**
+     * What shortestPath minimizes: the length of the route, or the time it takes to drive it
+     * at the speed limits, parsed from the maxspeed tags or defaulted by type of highway. The
+     * contraction hierarchy only knows lengths, so CH answers TIME queries with A*.
+     */
+    public enum Metric {
+        DISTANCE, TIME
+    }
 
-        public double priority() {
-            return priority;
-        }
+    /** Engine used when none is given, e.g. set from the router.engine system property. */
+    private static volatile Engine defaultEngine = Engine.ASTAR;
+
+    /** Per-thread search state, reused across queries so that searches allocate nothing. */
+    private static final ThreadLocal<AStarSearch> SEARCHES = new ThreadLocal<>();
+    private static final ThreadLocal<ContractionHierarchy.Query> CH_QUERIES = new ThreadLocal<>();
+
+    /** Where shortestPath records the times of its phases, or null to record nothing. */
+    private static volatile Metrics metrics;
+
+    /**
+     * Sets the engine used by shortestPath when no engine is given.
+     */
+    public static void setDefaultEngine(Engine engine) {
+        defaultEngine = engine;
+    }
+
+    public static Engine defaultEngine() {
+        return defaultEngine;
+    }
+
+    /**
+     * Sets where shortestPath records the times of snapping to the closest nodes and of the
+     * search, as the closest and search phases. Null turns recording off.
+     */
+    static void setMetrics(Metrics m) {
+        metrics = m;
     }
 
     /**
@@ -50,64 +83,197 @@ public class Router {
      */
     public static List<Long> shortestPath(GraphDB g, double stlon, double stlat,
                                           double destlon, double destlat) {
-        long s = g.closest(stlon, stlat);
-        long t = g.closest(destlon, destlat);
-
-        LinkedList<Long> shortestPath = new LinkedList<>();
-        Set<Long> marked = new HashSet<>();
-        Map<Long, SearchNode> edgeTo = new HashMap<>();
-        Map<Long, Double> best = new HashMap<>();
-        best.put(s, 0.0);
+        return shortestPath(g, stlon, stlat, destlon, destlat, defaultEngine);
+    }
 
-        Queue<SearchNode> fringe = new PriorityQueue<>(
-            Comparator.comparingDouble(SearchNode::priority));
-        fringe.add(new SearchNode(s, g.distance(s, t)));
+    /**
+     * Like shortestPath(g, stlon, stlat, destlon, destlat), using the given engine.
+     */
+    public static List<Long> shortestPath(GraphDB g, double stlon, double stlat,
+                                          double destlon, double destlat, Engine engine) {
+        return shortestPath(g, stlon, stlat, destlon, destlat, engine, Metric.DISTANCE);
+    }
 
-        while (!fringe.isEmpty()) {
-            SearchNode node = fringe.poll();
+    /**
+     * Like shortestPath(g, stlon, stlat, destlon, destlat), using the given engine and
+     * minimizing the given metric.
+     */
+    public static List<Long> shortestPath(GraphDB g, double stlon, double stlat,
+                                          double destlon, double destlat, Engine engine,
+                                          Metric metric) {
+        Metrics m = metrics;
+        long start = System.nanoTime();
+        CompactGraph graph = g.compactGraph();
+        int s = graph.index(g.closest(stlon, stlat));
+        int t = graph.index(g.closest(destlon, destlat));
+        if (m != null) {
+            long now = System.nanoTime();
+            m.recordPhase("closest", now - start);
+            start = now;
+        }
 
-            if (marked.contains(node.v)) {
-                continue;
+        List<Long> shortestPath = new ArrayList<>();
+        if (s < 0 || t < 0) {
+            return shortestPath;
+        }
+        try {
+            findPath(g, graph, s, t, engine, metric, shortestPath);
+        } finally {
+            if (m != null) {
+                m.recordPhase("search", System.nanoTime() - start);
             }
+        }
+        return shortestPath;
+    }
 
-            if (node.v == t) {
-                while (node != null) {
-                    shortestPath.addFirst(node.v);
-                    node = edgeTo.get(node.v);
+    /**
+     * Adds the ids of the shortest path from s to t to shortestPath, if there is a path.
+     */
+    private static void findPath(GraphDB g, CompactGraph graph, int s, int t, Engine engine,
+                                 Metric metric, List<Long> shortestPath) {
+
+        if (engine == Engine.CH && metric == Metric.DISTANCE) {
+            ContractionHierarchy.Query query = chQuery(g.contractionHierarchy());
+            if (query.search(s, t)) {
+                for (int i = 0; i < query.pathLength(); ++i) {
+                    shortestPath.add(graph.id(query.pathVertex(i)));
                 }
-                break;
             }
+            return;
+        }
 
-            marked.add(node.v);
+        AStarSearch search = search(graph);
+        Landmarks landmarks = engine == Engine.ALT ? g.landmarks() : null;
+        if (search.search(s, t, landmarks, metric)) {
+            for (int v = t; v >= 0; v = search.parent(v)) {
+                shortestPath.add(graph.id(v));
+            }
+            Collections.reverse(shortestPath);
+        }
+    }
 
-            // Best known d (distance) from s (start) to v
-            Double dsv = best.get(node.v);
-            if (dsv != null) {
-                for (long w : g.adjacent(node.v)) {
-                    // Best known distance from start to w
-                    Double dsw = best.get(w);
+    /**
+     * Finds the shortest distances from each source location to each target location, with a
+     * single Dijkstra search per source that stops once all targets are settled. Like
+     * shortestPath, every location is snapped to its closest vertex first.
+     * @param g The graph to use.
+     * @param sources The longitude and latitude of each source.
+     * @param targets The longitude and latitude of each target.
+     * @param metric The metric to minimize, which is also the unit of the distances.
+     * @param withPaths Whether to also find the path from each source to each target.
+     * @param executor Runs the searches from different sources in parallel, or null to run
+     *                 them all in the calling thread.
+     * @return The distances, and the paths if asked for.
+     */
+    public static RouteMatrix routeMatrix(GraphDB g, double[][] sources, double[][] targets,
+                                          Metric metric, boolean withPaths,
+                                          ExecutorService executor) {
+        CompactGraph graph = g.compactGraph();
+        int[] targetIndices = new int[targets.length];
+        for (int j = 0; j < targets.length; ++j) {
+            targetIndices[j] = graph.index(g.closest(targets[j][0], targets[j][1]));
+        }
 
-                    // Great circle distance from v to w
-                    double edvw = g.distance(node.v, w);
+        List<MatrixRow> rows = new ArrayList<>();
+        if (executor == null) {
+            for (double[] source : sources) {
+                rows.add(matrixRow(g, source, targetIndices, metric, withPaths));
+            }
+        } else {
+            List<Callable<MatrixRow>> tasks = new ArrayList<>();
+            for (double[] source : sources) {
+                tasks.add(() -> matrixRow(g, source, targetIndices, metric, withPaths));
+            }
+            try {
+                for (Future<MatrixRow> row : executor.invokeAll(tasks)) {
+                    rows.add(row.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while routing", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Routing failed", e.getCause());
+            }
+        }
 
-                    if (dsw == null || dsv + edvw < dsw) {
-                        // Update best distance from start to w
-                        best.put(w, dsv + edvw);
+        double[][] distances = new double[sources.length][];
+        List<List<List<Long>>> paths = withPaths ? new ArrayList<>() : null;
+        for (int i = 0; i < rows.size(); ++i) {
+            distances[i] = rows.get(i).distances;
+            if (withPaths) {
+                paths.add(rows.get(i).paths);
+            }
+        }
+        return new RouteMatrix(distances, paths);
+    }
 
-                        // Update edge to
-                        edgeTo.put(w, node);
+    /** The distances and paths from one source of a route matrix. */
+    private static class MatrixRow {
+        double[] distances;
+        List<List<Long>> paths;
+    }
 
-                        // Great circle distance from w to t (target); heuristic
-                        double h = g.distance(w, t);
+    /**
+     * Searches from the vertex closest to source to all targets in the calling thread.
+     */
+    private static MatrixRow matrixRow(GraphDB g, double[] source, int[] targets,
+                                       Metric metric, boolean withPaths) {
+        CompactGraph graph = g.compactGraph();
+        int s = graph.index(g.closest(source[0], source[1]));
+        MatrixRow row = new MatrixRow();
+        row.distances = new double[targets.length];
+        Arrays.fill(row.distances, Double.POSITIVE_INFINITY);
+        row.paths = withPaths ? new ArrayList<>() : null;
+        if (s < 0) {
+            for (int j = 0; withPaths && j < targets.length; ++j) {
+                row.paths.add(Collections.emptyList());
+            }
+            return row;
+        }
 
-                        // Add w to the fringe with priority of best known distance + heuristic
-                        fringe.add(new SearchNode(w, dsv + edvw + h));
-                    }
+        AStarSearch search = search(graph);
+        search.searchAll(s, targets, metric);
+        for (int j = 0; j < targets.length; ++j) {
+            int t = targets[j];
+            boolean reached = t >= 0 && search.isSettled(t);
+            if (reached) {
+                row.distances[j] = search.distance(t);
+            }
+            if (withPaths) {
+                List<Long> path = new ArrayList<>();
+                for (int v = t; reached && v >= 0; v = search.parent(v)) {
+                    path.add(graph.id(v));
                 }
+                Collections.reverse(path);
+                row.paths.add(path);
             }
         }
+        return row;
+    }
 
-        return shortestPath;
+    /**
+     * Returns the search state of the calling thread for the given graph.
+     */
+    private static AStarSearch search(CompactGraph graph) {
+        AStarSearch search = SEARCHES.get();
+        if (search == null || !search.isFor(graph)) {
+            search = new AStarSearch(graph);
+            SEARCHES.set(search);
+        }
+        return search;
+    }
+
+    /**
+     * Returns the contraction hierarchy query state of the calling thread for the given
+     * hierarchy.
+     */
+    private static ContractionHierarchy.Query chQuery(ContractionHierarchy ch) {
+        ContractionHierarchy.Query query = CH_QUERIES.get();
+        if (query == null || query.hierarchy() != ch) {
+            query = ch.newQuery();
+            CH_QUERIES.set(query);
+        }
+        return query;
     }
 
     /**
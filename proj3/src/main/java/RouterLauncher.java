@@ -0,0 +1,81 @@
+import java.util.Random;
+
+/**
+ * This class provides a main method for comparing the routing engines. It runs the same random
+ * queries with plain A*, A* with landmarks (ALT) and the contraction hierarchy, and reports how
+ * many vertices each settles on average and how long each takes. A* and ALT are also timed
+ * finding the fastest rather than the shortest routes.
+ *
+ * Usage: RouterLauncher [osm file] [number of queries]
+ */
+public class RouterLauncher {
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+
+    public static void main(String[] args) {
+        String path = args.length > 0 ? args[0] : OSM_DB_PATH;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        GraphDB g = new GraphDB(path);
+        CompactGraph graph = g.compactGraph();
+        int[] vertices = new int[graph.size()];
+        int count = 0;
+        for (long id : g.vertices()) {
+            vertices[count++] = graph.index(id);
+        }
+        if (count == 0) {
+            System.out.println("The graph is empty.");
+            return;
+        }
+
+        long start = System.nanoTime();
+        Landmarks landmarks = g.landmarks();
+        System.out.printf("Chose %d landmarks in %.1f ms%n", landmarks.size(),
+                (System.nanoTime() - start) / 1e6);
+        start = System.nanoTime();
+        ContractionHierarchy ch = g.contractionHierarchy();
+        System.out.printf("Built contraction hierarchy with %d shortcuts in %.1f ms%n",
+                ch.shortcutCount(), (System.nanoTime() - start) / 1e6);
+
+        int[] sources = new int[queries];
+        int[] targets = new int[queries];
+        Random random = new Random(61);
+        for (int i = 0; i < queries; ++i) {
+            sources[i] = vertices[random.nextInt(count)];
+            targets[i] = vertices[random.nextInt(count)];
+        }
+
+        AStarSearch search = new AStarSearch(graph);
+        ContractionHierarchy.Query query = ch.newQuery();
+        System.out.println("engine     settled/query   ms/query");
+        for (Router.Engine engine : Router.Engine.values()) {
+            long settled = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; ++i) {
+                if (engine == Router.Engine.CH) {
+                    query.search(sources[i], targets[i]);
+                    settled += query.settledCount();
+                } else {
+                    Landmarks l = engine == Router.Engine.ALT ? landmarks : null;
+                    search.search(sources[i], targets[i], l);
+                    settled += search.settledCount();
+                }
+            }
+            double ms = (System.nanoTime() - start) / 1e6 / queries;
+            System.out.printf("%-10s %13.1f %10.3f%n", engine, (double) settled / queries, ms);
+        }
+
+        // Fastest rather than shortest routes, where the heuristic is weaker
+        for (Router.Engine engine : new Router.Engine[]{Router.Engine.ASTAR, Router.Engine.ALT}) {
+            Landmarks l = engine == Router.Engine.ALT ? landmarks : null;
+            long settled = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; ++i) {
+                search.search(sources[i], targets[i], l, Router.Metric.TIME);
+                settled += search.settledCount();
+            }
+            double ms = (System.nanoTime() - start) / 1e6 / queries;
+            System.out.printf("%-10s %13.1f %10.3f%n", engine + "/time",
+                    (double) settled / queries, ms);
+        }
+    }
+}
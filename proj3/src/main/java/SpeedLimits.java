@@ -0,0 +1,84 @@
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Turns the maxspeed and highway tags of OSM ways into speeds in miles per hour, once when the
+ * graph is loaded, so that routing by travel time never parses a string.
+ *
+ * See <a href="http://wiki.openstreetmap.org/wiki/Key:maxspeed">the maxspeed tag</a>. Plain
+ * numbers are km/h; "mph" and "knots" units are converted. Values without a number, such as
+ * "signals" or "none", fall back to a typical speed for the type of highway.
+ */
+final class SpeedLimits {
+    /** Speed of ways without a usable maxspeed tag or a known highway type. */
+    static final double DEFAULT_MPH = 25;
+
+    private static final double MPH_PER_KMH = 0.621371;
+    private static final double MPH_PER_KNOT = 1.150779;
+
+    /** Typical speeds in the US, in mph, by highway type. */
+    private static final Map<String, Double> HIGHWAY_MPH = new HashMap<>();
+    static {
+        HIGHWAY_MPH.put("motorway", 65.0);
+        HIGHWAY_MPH.put("trunk", 55.0);
+        HIGHWAY_MPH.put("primary", 45.0);
+        HIGHWAY_MPH.put("secondary", 35.0);
+        HIGHWAY_MPH.put("tertiary", 30.0);
+        HIGHWAY_MPH.put("unclassified", 25.0);
+        HIGHWAY_MPH.put("residential", 25.0);
+        HIGHWAY_MPH.put("living_street", 10.0);
+        HIGHWAY_MPH.put("motorway_link", 45.0);
+        HIGHWAY_MPH.put("trunk_link", 40.0);
+        HIGHWAY_MPH.put("primary_link", 35.0);
+        HIGHWAY_MPH.put("secondary_link", 30.0);
+        HIGHWAY_MPH.put("tertiary_link", 25.0);
+    }
+
+    private SpeedLimits() {
+    }
+
+    /**
+     * Returns the speed of a way in mph: its maxspeed if that can be parsed, otherwise the
+     * default for its highway type.
+     * @param maxSpeed The value of the maxspeed tag, or "" if there is none.
+     * @param highway The value of the highway tag, or "" if there is none.
+     */
+    static double speed(String maxSpeed, String highway) {
+        double parsed = parse(maxSpeed);
+        if (parsed > 0) {
+            return parsed;
+        }
+        return HIGHWAY_MPH.getOrDefault(highway, DEFAULT_MPH);
+    }
+
+    /**
+     * Parses a maxspeed tag. Of several values, such as "25;35", the first one counts.
+     * @return The speed in mph, or NaN if the tag does not start with a number.
+     */
+    static double parse(String maxSpeed) {
+        String value = maxSpeed.trim().toLowerCase(Locale.ROOT);
+        int end = 0;
+        while (end < value.length()
+                && (Character.isDigit(value.charAt(end)) || value.charAt(end) == '.')) {
+            end++;
+        }
+        if (end == 0) {
+            return Double.NaN;
+        }
+
+        double speed;
+        try {
+            speed = Double.parseDouble(value.substring(0, end));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+        String unit = value.substring(end).trim();
+        if (unit.startsWith("mph")) {
+            return speed;
+        } else if (unit.startsWith("knots")) {
+            return speed * MPH_PER_KNOT;
+        }
+        return speed * MPH_PER_KMH;
+    }
+}
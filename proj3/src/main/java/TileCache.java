@@ -0,0 +1,179 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+
+/**
+ * Least recently used cache of decoded map tiles, keyed by the tile file names that Rasterer
+ * puts in its render grid. The cache is bounded by the memory taken by the decoded pixels
+ * rather than by the number of tiles, and counts hits, misses and evictions.
+ *
+ * After a raster has been served, the tiles in a one tile wide ring around it can be loaded in
+ * the background, so that panning the map usually finds its tiles already decoded.
+ *
+ * All methods are thread-safe. Tiles are decoded outside the lock, so a slow disk read does
+ * not block requests for tiles that are already cached.
+ */
+class TileCache {
+    private final String root;
+    private final long maxBytes;
+    private final Executor prefetcher;
+    /** Tiles in access order, least recently used first. Guarded by this. */
+    private final LinkedHashMap<String, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f,
+            true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong prefetches = new AtomicLong();
+    private final LatencyHistogram loadTimes = new LatencyHistogram();
+
+    /**
+     * @param root The folder containing the tile images.
+     * @param maxBytes The most memory the decoded tiles may take.
+     * @param prefetcher Runs background prefetches, or null to disable prefetching.
+     */
+    TileCache(String root, long maxBytes, Executor prefetcher) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+        this.prefetcher = prefetcher;
+    }
+
+    /**
+     * Returns the decoded tile with the given file name, reading it from disk if it is not
+     * cached.
+     * @return The tile, or null if it could not be read.
+     */
+    BufferedImage get(String fileName) {
+        BufferedImage tile = lookup(fileName);
+        if (tile != null) {
+            hits.incrementAndGet();
+            return tile;
+        }
+        misses.incrementAndGet();
+        return load(fileName);
+    }
+
+    /**
+     * Schedules the tiles around the given render grid to be loaded in the background, if
+     * prefetching is enabled and they are not cached yet.
+     */
+    void prefetchNeighbors(String[][] renderGrid) {
+        if (prefetcher == null || renderGrid.length == 0 || renderGrid[0].length == 0) {
+            return;
+        }
+        String[] lastRow = renderGrid[renderGrid.length - 1];
+        int[] first = Rasterer.parseFileName(renderGrid[0][0]);
+        int[] last = Rasterer.parseFileName(lastRow[lastRow.length - 1]);
+        if (first == null || last == null) {
+            return;
+        }
+
+        int depth = first[0];
+        int xStart = first[1] - 1;
+        int yStart = first[2] - 1;
+        int xEnd = last[1] + 1;
+        int yEnd = last[2] + 1;
+        int numTiles = 1 << depth;
+        for (int y = Math.max(yStart, 0); y <= Math.min(yEnd, numTiles - 1); ++y) {
+            for (int x = Math.max(xStart, 0); x <= Math.min(xEnd, numTiles - 1); ++x) {
+                boolean border = x == xStart || x == xEnd || y == yStart || y == yEnd;
+                String fileName = Rasterer.getFileName(depth, x, y);
+                if (border && !contains(fileName)) {
+                    prefetcher.execute(() -> {
+                        if (!contains(fileName) && load(fileName) != null) {
+                            prefetches.incrementAndGet();
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    long evictions() {
+        return evictions.get();
+    }
+
+    /** Returns the number of tiles loaded by prefetching. */
+    long prefetches() {
+        return prefetches.get();
+    }
+
+    /** Returns the times taken to read and decode tiles from disk, including prefetches. */
+    LatencyHistogram loadTimes() {
+        return loadTimes;
+    }
+
+    /** Returns the memory taken by the cached tiles in bytes. */
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    synchronized int size() {
+        return tiles.size();
+    }
+
+    synchronized boolean contains(String fileName) {
+        return tiles.containsKey(fileName);
+    }
+
+    private synchronized BufferedImage lookup(String fileName) {
+        return tiles.get(fileName);
+    }
+
+    private BufferedImage load(String fileName) {
+        BufferedImage tile;
+        long start = System.nanoTime();
+        try {
+            tile = ImageIO.read(new File(root + fileName));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            loadTimes.record(System.nanoTime() - start);
+        }
+        if (tile != null) {
+            put(fileName, tile);
+        }
+        return tile;
+    }
+
+    private synchronized void put(String fileName, BufferedImage tile) {
+        BufferedImage previous = tiles.put(fileName, tile);
+        if (previous != null) {
+            bytes -= sizeOf(previous);
+        }
+        bytes += sizeOf(tile);
+
+        // Evict least recently used tiles, but always keep the tile just added
+        Iterator<Map.Entry<String, BufferedImage>> eldest = tiles.entrySet().iterator();
+        while (bytes > maxBytes && tiles.size() > 1) {
+            Map.Entry<String, BufferedImage> entry = eldest.next();
+            bytes -= sizeOf(entry.getValue());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /** Returns the memory taken by the pixels of an image in bytes. */
+    static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+}
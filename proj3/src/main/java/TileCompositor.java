@@ -0,0 +1,68 @@
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Composes the tiles of a render grid into one raster image. Tiles are fetched, and decoded if
+ * they are not cached, in parallel, and each is drawn straight into its part of the int pixel
+ * buffer of the raster as soon as it is ready.
+ *
+ * Every tile is drawn through its own sub-image of the raster, which shares the raster's pixel
+ * buffer but covers only that tile, so tiles can be drawn concurrently without locking.
+ */
+class TileCompositor {
+    private final int tileSize;
+    private final Function<String, BufferedImage> tiles;
+    private final Executor executor;
+
+    /**
+     * @param tileSize The width and height of every tile in pixels.
+     * @param tiles Returns the decoded tile with a given file name, or null if it is missing.
+     * @param executor Fetches and draws the tiles in parallel, or null to do it in the calling
+     *                 thread.
+     */
+    TileCompositor(int tileSize, Function<String, BufferedImage> tiles, Executor executor) {
+        this.tileSize = tileSize;
+        this.tiles = tiles;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns an RGB image of the tiles of renderGrid, with the first row of the grid at the
+     * top. Missing tiles are left black.
+     */
+    BufferedImage compose(String[][] renderGrid) {
+        int rows = renderGrid.length;
+        int columns = renderGrid[0].length;
+        BufferedImage image = new BufferedImage(columns * tileSize, rows * tileSize,
+                BufferedImage.TYPE_INT_RGB);
+
+        List<CompletableFuture<Void>> draws = new ArrayList<>();
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < columns; ++c) {
+                String fileName = renderGrid[r][c];
+                BufferedImage target = image.getSubimage(c * tileSize, r * tileSize, tileSize,
+                        tileSize);
+                Runnable draw = () -> {
+                    BufferedImage tile = tiles.apply(fileName);
+                    if (tile != null) {
+                        Graphics graphics = target.getGraphics();
+                        graphics.drawImage(tile, 0, 0, null);
+                        graphics.dispose();
+                    }
+                };
+                if (executor == null) {
+                    draw.run();
+                } else {
+                    draws.add(CompletableFuture.runAsync(draw, executor));
+                }
+            }
+        }
+        CompletableFuture.allOf(draws.toArray(new CompletableFuture[0])).join();
+        return image;
+    }
+}
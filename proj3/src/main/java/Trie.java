@@ -1,159 +1,394 @@
-import java.util.List;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.TreeMap;
-//import java.util.Set;
-//import java.util.TreeSet;
-//import java.util.Stack;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
 
+/**
+ * Trie of words with counts, for ranked autocomplete. A word can be put several times, e.g.
+ * once for every location with that name, and its count is its score: prefix queries with a
+ * limit return the completions with the highest counts first.
+ *
+ * Each node keeps its children in a packed array sorted by character, found with a binary
+ * search. Each node also caches the TOP_K best completions in its subtree, kept up to date on
+ * every put and remove, so a ranked query for at most TOP_K words only walks the prefix.
+ */
 public class Trie {
-    //private static final int R = 128;
+    /** Number of best completions cached in every node. */
+    static final int TOP_K = 10;
+
+    private static class Node {
+        char[] keys = EMPTY_KEYS;
+        Node[] children = EMPTY_CHILDREN;
+        int childCount;
+        /** The word ending at this node, or null if no word ends here. */
+        String word;
+        int count;
+
+        /* Best completions in this subtree, by count then alphabetically. */
+        String[] topWords = EMPTY_WORDS;
+        int[] topCounts = EMPTY_COUNTS;
+        int topCount;
+
+        int indexOf(char c) {
+            return Arrays.binarySearch(keys, 0, childCount, c);
+        }
+
+        Node child(char c) {
+            int i = indexOf(c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node addChild(char c) {
+            int i = indexOf(c);
+            if (i >= 0) {
+                return children[i];
+            }
+            i = -i - 1;
+            if (childCount == keys.length) {
+                int capacity = Math.max(2, childCount * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(keys, i, keys, i + 1, childCount - i);
+            System.arraycopy(children, i, children, i + 1, childCount - i);
+            keys[i] = c;
+            children[i] = new Node();
+            childCount++;
+            return children[i];
+        }
 
-    private class Node {
-        boolean exists;
-        Map<Character, Node> children;
-        //Node[] children;
+        void removeChild(char c) {
+            int i = indexOf(c);
+            if (i < 0) {
+                return;
+            }
+            childCount--;
+            System.arraycopy(keys, i + 1, keys, i, childCount - i);
+            System.arraycopy(children, i + 1, children, i, childCount - i);
+            children[childCount] = null;
+        }
 
-        Node() {
-            exists = false;
-            children = new TreeMap<>();
-            //children = new Node[R];
+        boolean isEmpty() {
+            return word == null && childCount == 0;
         }
     }
 
+    private static final char[] EMPTY_KEYS = new char[0];
+    private static final Node[] EMPTY_CHILDREN = new Node[0];
+    private static final String[] EMPTY_WORDS = new String[0];
+    private static final int[] EMPTY_COUNTS = new int[0];
+
     private final Node root;
 
     public Trie() {
         root = new Node();
     }
 
-    public Node put(String word) {
-        return putIterative(word);
-        //return putRecursive(root, word, 0);
+    /**
+     * Adds one occurrence of word. Empty words are ignored.
+     */
+    public void put(String word) {
+        put(word, 1);
     }
 
-    private Node putIterative(String word) {
-        if (word.isEmpty()) {
-            return null;
+    /**
+     * Adds count occurrences of word. Empty words are ignored.
+     */
+    public void put(String word, int count) {
+        if (word.isEmpty() || count <= 0) {
+            return;
         }
 
+        Node[] path = new Node[word.length() + 1];
         Node node = root;
-        for (char c : word.toCharArray()) {
-            node = node.children.computeIfAbsent(c, k -> new Node());
+        path[0] = node;
+        for (int i = 0; i < word.length(); ++i) {
+            node = node.addChild(word.charAt(i));
+            path[i + 1] = node;
         }
 
-        node.exists = true;
-
-        return node;
+        node.word = word;
+        node.count += count;
+        updateTops(path, path.length - 1);
     }
 
-    private Node putRecursive(Node node, String word, int index) {
-        if (node == null) {
-            node = new Node();
+    /**
+     * Removes one occurrence of word.
+     * @return True if the word was in the trie.
+     */
+    public boolean remove(String word) {
+        if (word.isEmpty()) {
+            return false;
         }
 
-        if (index == word.length()) {
-            node.exists = true;
-            return node;
+        Node[] path = new Node[word.length() + 1];
+        Node node = root;
+        path[0] = node;
+        for (int i = 0; i < word.length() && node != null; ++i) {
+            node = node.child(word.charAt(i));
+            path[i + 1] = node;
+        }
+        if (node == null || node.word == null) {
+            return false;
         }
 
-        char c = word.charAt(index);
-        node.children.put(c, putRecursive(node.children.get(c), word, index + 1));
+        node.count--;
+        if (node.count == 0) {
+            node.word = null;
+        }
 
-        return node;
+        // Prune nodes that no longer lead to any word
+        int last = path.length - 1;
+        while (last > 0 && path[last].isEmpty()) {
+            path[last - 1].removeChild(word.charAt(last - 1));
+            last--;
+        }
+        updateTops(path, last);
+        return true;
     }
 
-    public boolean remove(String word) {
-        // TODO
-        return false;
+    /**
+     * Returns the number of occurrences of word.
+     */
+    public int count(String word) {
+        Node node = getNode(word);
+        return node != null && node.word != null ? node.count : 0;
     }
 
+    /**
+     * Returns all words starting with prefix, in alphabetical order.
+     */
     public List<String> getWords(String prefix) {
         List<String> words = new ArrayList<>();
 
         Node prefixNode = getNode(prefix);
         if (prefixNode != null) {
-            collectWordsRecursive(prefixNode, new StringBuilder(prefix), words);
+            collectWords(prefixNode, words);
         }
 
         return words;
     }
 
-    private void collectWordsRecursive(Node node, StringBuilder word, List<String> words) {
-        if (node == null || words == null || word == null || word.length() == 0) {
-            return;
+    /**
+     * Returns at most limit words starting with prefix, those with the highest counts first
+     * and equal counts alphabetically. Limits up to TOP_K are answered from the cache of the
+     * prefix node without visiting its subtree.
+     */
+    public List<String> getWords(String prefix, int limit) {
+        List<String> words = new ArrayList<>();
+        Node prefixNode = getNode(prefix);
+        if (prefixNode == null || limit <= 0) {
+            return words;
+        }
+
+        if (limit <= TOP_K) {
+            for (int i = 0; i < Math.min(limit, prefixNode.topCount); ++i) {
+                words.add(prefixNode.topWords[i]);
+            }
+            return words;
+        }
+
+        // Take each count from its node once, instead of looking it up in every comparison
+        List<Match> matches = new ArrayList<>();
+        forEachWord(prefixNode, node -> matches.add(new Match(node.word, node.count, 0)));
+        matches.sort((a, b) -> compare(a.count, a.word, b.count, b.word));
+        for (int i = 0; i < Math.min(limit, matches.size()); ++i) {
+            words.add(matches.get(i).word);
         }
+        return words;
+    }
 
-        if (node.exists) {
-            words.add(word.toString());
+    /**
+     * Returns at most limit words that start with a string within maxDistance edits of prefix,
+     * where an edit inserts, deletes or replaces one character. Closer words come first, then
+     * those with the highest counts, then alphabetically.
+     *
+     * Walks the trie with one row of the Levenshtein table per node, so subtrees that are
+     * already more than maxDistance edits away are never visited. Once no longer prefix can
+     * get closer, the best words of a subtree are taken from its cache like in getWords.
+     */
+    public List<String> getFuzzyWords(String prefix, int maxDistance, int limit) {
+        List<String> words = new ArrayList<>();
+        if (prefix.isEmpty() || limit <= 0) {
+            return words;
         }
 
-        node.children.forEach((c, child) -> {
-            collectWordsRecursive(child, word.append(c), words);
-            if (word.length() > 0) {
-                word.setLength(word.length() - 1);
+        int[] row = new int[prefix.length() + 1];
+        for (int i = 0; i < row.length; ++i) {
+            row[i] = i;
+        }
+        List<Match> matches = new ArrayList<>();
+        collectFuzzy(root, prefix, row, prefix.length(), maxDistance, limit, matches);
+
+        matches.sort((a, b) -> a.distance != b.distance ? a.distance - b.distance
+                : compare(a.count, a.word, b.count, b.word));
+        for (int i = 0; i < Math.min(limit, matches.size()); ++i) {
+            words.add(matches.get(i).word);
+        }
+        return words;
+    }
+
+    /** A word found by a search, with its count and its distance from the query. */
+    private static class Match {
+        final String word;
+        final int count;
+        final int distance;
+
+        Match(String word, int count, int distance) {
+            this.word = word;
+            this.count = count;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Adds the matches below node to matches.
+     * @param row The edit distances from the string of node to each prefix of query.
+     * @param best The smallest edit distance from query to the string of node or any of its
+     *             prefixes, which is the distance of every word below node unless a longer
+     *             prefix is closer.
+     */
+    private void collectFuzzy(Node node, String query, int[] row, int best, int maxDistance,
+                              int limit, List<Match> matches) {
+        for (int c = 0; c < node.childCount; ++c) {
+            Node child = node.children[c];
+            char key = node.keys[c];
+
+            int[] next = new int[row.length];
+            next[0] = row[0] + 1;
+            int min = next[0];
+            for (int i = 1; i < row.length; ++i) {
+                int replace = row[i - 1] + (query.charAt(i - 1) == key ? 0 : 1);
+                next[i] = Math.min(replace, Math.min(next[i - 1], row[i]) + 1);
+                min = Math.min(min, next[i]);
             }
-        });
-    }
-
-//    private List<String> collectWordsIterative(String prefix) {
-//        List<String> words = new ArrayList<>();
-//
-//        if (prefix.isEmpty()) {
-//            return words;
-//        }
-//
-//        Node node = getNode(prefix);
-//        if (node == null) {
-//            return words;
-//        }
-//
-//        // Depth first traversal to collect words extending prefix
-//        Stack<Node> stack = new Stack<>();
-//        stack.push(node);
-//
-//        while (!stack.empty()) {
-//            node = stack.pop();
-//            if (node != null && node.exists) {
-//
-//            }
-//        }
-//
-//        return words;
-//    }
+            int childBest = Math.min(best, next[row.length - 1]);
 
-    private Node getNode(String prefix) {
-        return getNodeIterative(prefix);
-        //return getNodeRecursive(root, prefix, 0);
+            if (min <= maxDistance) {
+                // A longer prefix may still get closer to the query
+                if (child.word != null && childBest <= maxDistance) {
+                    matches.add(new Match(child.word, child.count, childBest));
+                }
+                collectFuzzy(child, query, next, childBest, maxDistance, limit, matches);
+            } else if (childBest <= maxDistance) {
+                // Every word below child is exactly childBest edits away
+                if (limit <= TOP_K) {
+                    for (int i = 0; i < Math.min(limit, child.topCount); ++i) {
+                        matches.add(new Match(child.topWords[i], child.topCounts[i], childBest));
+                    }
+                } else {
+                    forEachWord(child, wordNode -> matches.add(
+                            new Match(wordNode.word, wordNode.count, childBest)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns all words in the trie, in alphabetical order.
+     */
+    public List<String> getAllWords() {
+        List<String> words = new ArrayList<>();
+        collectWords(root, words);
+        return words;
     }
 
-    private Node getNodeIterative(String prefix) {
+    private void collectWords(Node start, List<String> words) {
+        forEachWord(start, node -> words.add(node.word));
+    }
+
+    /**
+     * Passes each node below start that ends a word to action, in alphabetical order. Depth
+     * first traversal without recursion.
+     */
+    private static void forEachWord(Node start, Consumer<Node> action) {
+        Node[] stack = new Node[16];
+        int size = 0;
+        stack[size++] = start;
+        while (size > 0) {
+            Node node = stack[--size];
+            if (node.word != null) {
+                action.accept(node);
+            }
+            if (size + node.childCount > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size + node.childCount));
+            }
+            for (int i = node.childCount - 1; i >= 0; --i) {
+                stack[size++] = node.children[i];
+            }
+        }
+    }
+
+    private Node getNode(String prefix) {
         if (prefix.isEmpty()) {
             return null;
         }
 
         Node node = root;
-
-        for (char c : prefix.toCharArray()) {
-            node = node.children.get(c);
-            if (node == null) {
-                break;
-            }
+        for (int i = 0; i < prefix.length() && node != null; ++i) {
+            node = node.child(prefix.charAt(i));
         }
-
         return node;
     }
 
-    private Node getNodeRecursive(Node node, String prefix, int index) {
-        if (node == null) {
-            return null;
+    /**
+     * Recomputes the cached completions of path[last] and all its ancestors, bottom up.
+     */
+    private static void updateTops(Node[] path, int last) {
+        for (int i = last; i >= 0; --i) {
+            updateTop(path[i]);
         }
+    }
 
-        Node next = node.children.get(prefix.charAt(index));
-        if (index == prefix.length() - 1) {
-            return next;
+    /**
+     * Recomputes the best completions of a node by merging its own word with the already
+     * sorted completions of its children.
+     */
+    private static void updateTop(Node node) {
+        String[] words = new String[TOP_K];
+        int[] counts = new int[TOP_K];
+        int[] heads = new int[node.childCount];
+        boolean ownWord = node.word != null;
+        int size = 0;
+        while (size < TOP_K) {
+            String bestWord = ownWord ? node.word : null;
+            int bestCount = ownWord ? node.count : 0;
+            int bestChild = -1;
+            for (int c = 0; c < node.childCount; ++c) {
+                Node child = node.children[c];
+                if (heads[c] < child.topCount) {
+                    String word = child.topWords[heads[c]];
+                    int count = child.topCounts[heads[c]];
+                    if (bestWord == null || compare(count, word, bestCount, bestWord) < 0) {
+                        bestWord = word;
+                        bestCount = count;
+                        bestChild = c;
+                    }
+                }
+            }
+            if (bestWord == null) {
+                break;
+            }
+            if (bestChild >= 0) {
+                heads[bestChild]++;
+            } else {
+                ownWord = false;
+            }
+            words[size] = bestWord;
+            counts[size] = bestCount;
+            size++;
         }
 
-        return getNodeRecursive(next, prefix, index + 1);
+        node.topWords = size > 0 ? Arrays.copyOf(words, size) : EMPTY_WORDS;
+        node.topCounts = size > 0 ? Arrays.copyOf(counts, size) : EMPTY_COUNTS;
+        node.topCount = size;
+    }
+
+    /** Orders completions by decreasing count, then alphabetically. */
+    private static int compare(int countA, String wordA, int countB, String wordB) {
+        if (countA != countB) {
+            return countA > countB ? -1 : 1;
+        }
+        return wordA.compareTo(wordB);
     }
 }
@@ -59,6 +59,13 @@ $(function() {
     const clear_route = host + '/clear_route';
     const search = host + '/search';
 
+    /* Identify this tab to the server, so its route is not shared with other users */
+    var session_id = window.sessionStorage.getItem('session_id');
+    if (!session_id) {
+        session_id = Math.random().toString(36).slice(2) + Date.now().toString(36);
+        window.sessionStorage.setItem('session_id', session_id);
+    }
+
     /* ════════════════════════════ ೋღ HELPERS ღೋ ══════════════════════════ */
     /* Compute lat and lon by window size */
     function real_lrlat() { return params.ullat - hdpp * params.h; }
@@ -111,12 +118,13 @@ $(function() {
         $.get({
             async: true,
             url: raster_server,
-            data: params,
+            data: $.extend({session: session_id}, params),
             success: function(data) {
                 console.log(data);
                 if (data.query_success) {
                     $loadingStatus.hide();
-                    map.src = 'data:image/png;base64,' + data.b64_encoded_image_data;
+                    map.src = 'data:' + (data.image_type || 'image/png') + ';base64,' +
+                        data.b64_encoded_image_data;
                     console.log('Updating map with image length: ' +
                                 data.b64_encoded_image_data.length);
                     ullon_bound = data.raster_ul_lon;
@@ -170,7 +178,7 @@ $(function() {
         $.get({
             async: true,
             url: route_server,
-            data: route_params,
+            data: $.extend({session: session_id}, route_params),
             success: function(data) {
                 data = JSON.parse(data);
                 updateImg();
@@ -325,7 +333,7 @@ $(function() {
 
     /* Make search bar do autocomplete things */
     $('#tags').autocomplete({
-          source: search,
+          source: search + '?limit=10&fuzzy=true',
           minLength: 2,
           select: function (event, ui) {
               $.get({
@@ -407,6 +415,7 @@ $(function() {
         $.get({
             async: true,
             url: clear_route,
+            data: {session: session_id},
             success: function() {
                 dest.style.visibility = 'hidden';
                 $directionsText.html('No routing directions to display.');
@@ -0,0 +1,33 @@
+import java.util.Random;
+
+/**
+ * Random road-like graphs for the tests of the routing engines.
+ */
+final class RandomGraphs {
+    private RandomGraphs() {
+    }
+
+    /**
+     * Returns a graph of n vertices at random points in a small box near latitude 38, with
+     * road lengths as edge weights, so that shortest paths are unique. Each vertex links to
+     * two random earlier ones, except that the last separated vertices form a path of their
+     * own, apart from the rest.
+     */
+    static CompactGraph randomGraph(int n, int separated, long seed) {
+        Random random = new Random(seed);
+        GraphDB.Edge way = new GraphDB.Edge();
+        CompactGraph.Builder builder = new CompactGraph.Builder(n);
+        for (int i = 0; i < n; ++i) {
+            builder.addVertex(i, random.nextDouble() / 10, 38 + random.nextDouble() / 10, null);
+        }
+        for (int v = 1; v < n - separated; ++v) {
+            for (int k = 0; k < 2; ++k) {
+                builder.addEdge(v, random.nextInt(v), way);
+            }
+        }
+        for (int v = n - separated + 1; v < n; ++v) {
+            builder.addEdge(v, v - 1, way);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,90 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that CompactGraph.Builder packs vertices and edges correctly: ids are mapped to
+ * dense indices, both directions of each edge are stored, repeated edges keep the last way
+ * and equal ways are interned.
+ */
+public class TestCompactGraph {
+    private CompactGraph graph;
+    private GraphDB.Edge first;
+    private GraphDB.Edge second;
+
+    @Before
+    public void setUp() {
+        first = way("First Street");
+        second = way("Second Street");
+
+        CompactGraph.Builder builder = new CompactGraph.Builder(2);
+        int a = builder.addVertex(30, 0.3, 38.3, "");
+        int b = builder.addVertex(10, 0.1, 38.1, "Corner");
+        int c = builder.addVertex(20, 0.2, 38.2, null);
+        builder.addEdge(a, b, first);
+        builder.addEdge(b, c, first);
+        builder.addEdge(c, b, second);
+        builder.addEdge(a, c, way("First Street"));
+        graph = builder.build();
+    }
+
+    @Test
+    public void testVertices() {
+        assertEquals(3, graph.size());
+        assertEquals(Arrays.asList(10L, 20L, 30L), toList(graph.vertexIds()));
+        assertEquals(0, graph.index(10));
+        assertEquals(-1, graph.index(15));
+        assertEquals(0.2, graph.lon(graph.index(20)), 0);
+        assertEquals(38.3, graph.lat(graph.index(30)), 0);
+        assertEquals("Corner", graph.name(graph.index(10)));
+        assertEquals("", graph.name(graph.index(20)));
+    }
+
+    @Test
+    public void testEdges() {
+        assertEquals(Arrays.asList(20L, 30L), toList(graph.adjacentIds(graph.index(10))));
+        assertEquals(Arrays.asList(10L, 20L), toList(graph.adjacentIds(graph.index(30))));
+        assertEquals(6, graph.edgeCount());
+
+        // The edge between 10 and 20 was added twice, the second way wins in both directions
+        assertSame(second, graph.way(graph.findEdge(graph.index(10), graph.index(20))));
+        assertSame(second, graph.way(graph.findEdge(graph.index(20), graph.index(10))));
+
+        // Equal ways are interned
+        assertSame(first, graph.way(graph.findEdge(graph.index(30), graph.index(20))));
+    }
+
+    @Test
+    public void testRemove() {
+        int v = graph.index(20);
+        assertTrue(graph.remove(v));
+        assertFalse(graph.remove(v));
+        assertEquals(2, graph.size());
+        assertEquals(-1, graph.index(20));
+        assertEquals(-1, graph.findEdge(graph.index(10), v));
+        assertEquals(Arrays.asList(10L, 30L), toList(graph.vertexIds()));
+        assertEquals(Arrays.asList(30L), toList(graph.adjacentIds(graph.index(10))));
+    }
+
+    private static GraphDB.Edge way(String name) {
+        GraphDB.Edge edge = new GraphDB.Edge();
+        edge.name = name;
+        return edge;
+    }
+
+    private static List<Long> toList(Iterable<Long> ids) {
+        List<Long> list = new ArrayList<>();
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+}
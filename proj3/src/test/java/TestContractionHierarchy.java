@@ -0,0 +1,119 @@
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks ContractionHierarchy queries against AStarSearch on a random road-like graph: both
+ * must agree on reachability and distance, and unpacked paths must only use original edges.
+ * Random coordinates make every shortest path unique, so there the paths must be identical
+ * too. When shortest paths tie, CH may return a different one than A*.
+ */
+public class TestContractionHierarchy {
+    private static final int N = 400;
+    private static final int QUERIES = 500;
+
+    private static CompactGraph graph;
+    private static ContractionHierarchy hierarchy;
+
+    @BeforeClass
+    public static void setUp() {
+        // The last five vertices form a separate component
+        graph = RandomGraphs.randomGraph(N, 5, 61);
+        hierarchy = new ContractionHierarchy(graph);
+    }
+
+    @Test
+    public void testMatchesAStar() {
+        Random random = new Random(62);
+        AStarSearch astar = new AStarSearch(graph);
+        ContractionHierarchy.Query query = hierarchy.newQuery();
+        for (int i = 0; i < QUERIES; ++i) {
+            int s = random.nextInt(N);
+            int t = random.nextInt(N);
+            boolean found = astar.search(s, t);
+            assertEquals(found, query.search(s, t));
+            if (!found) {
+                continue;
+            }
+
+            assertEquals(s, query.pathVertex(0));
+            assertEquals(t, query.pathVertex(query.pathLength() - 1));
+            double length = 0;
+            for (int j = 1; j < query.pathLength(); ++j) {
+                int e = graph.findEdge(query.pathVertex(j - 1), query.pathVertex(j));
+                assertTrue(e >= 0);
+                length += graph.weight(e);
+            }
+            assertEquals(astar.distance(t), length, 1e-9);
+
+            int[] expected = aStarPath(astar, t);
+            assertEquals(expected.length, query.pathLength());
+            for (int j = 0; j < expected.length; ++j) {
+                assertEquals(expected[j], query.pathVertex(j));
+            }
+        }
+    }
+
+    /** Returns the vertices of the path the last search of astar found to t, in order. */
+    private static int[] aStarPath(AStarSearch astar, int t) {
+        int length = 0;
+        for (int v = t; v >= 0; v = astar.parent(v)) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int v = t; v >= 0; v = astar.parent(v)) {
+            path[--length] = v;
+        }
+        return path;
+    }
+
+    /**
+     * Two routes from s to t that mirror each other across s's meridian have exactly the same
+     * length. CH must find one of them, but need not find the one A* does.
+     */
+    @Test
+    public void testTiesGiveAShortestPath() {
+        GraphDB.Edge way = new GraphDB.Edge();
+        CompactGraph.Builder builder = new CompactGraph.Builder(4);
+        int s = builder.addVertex(0, 0, 38, null);
+        int east = builder.addVertex(1, 1e-3, 38.001, null);
+        int west = builder.addVertex(2, -1e-3, 38.001, null);
+        int t = builder.addVertex(3, 0, 38.002, null);
+        builder.addEdge(s, east, way);
+        builder.addEdge(east, t, way);
+        builder.addEdge(s, west, way);
+        builder.addEdge(west, t, way);
+        CompactGraph square = builder.build();
+        assertEquals(square.weight(square.findEdge(s, east)),
+                square.weight(square.findEdge(s, west)), 0);
+
+        AStarSearch astar = new AStarSearch(square);
+        assertTrue(astar.search(s, t));
+        ContractionHierarchy.Query query = new ContractionHierarchy(square).newQuery();
+        assertTrue(query.search(s, t));
+        assertEquals(3, query.pathLength());
+        assertEquals(s, query.pathVertex(0));
+        assertTrue(query.pathVertex(1) == east || query.pathVertex(1) == west);
+        assertEquals(t, query.pathVertex(2));
+        int middle = query.pathVertex(1);
+        double length = square.weight(square.findEdge(s, middle))
+                + square.weight(square.findEdge(middle, t));
+        assertEquals(astar.distance(t), length, 0);
+    }
+
+    @Test
+    public void testCurrent() {
+        assertTrue(hierarchy.isFor(graph));
+        assertTrue(hierarchy.isCurrent());
+
+        ContractionHierarchy.Query query = hierarchy.newQuery();
+        assertTrue(query.search(7, 7));
+        assertEquals(1, query.pathLength());
+        assertFalse(query.search(0, N - 1));
+    }
+}
@@ -0,0 +1,107 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks which OSM nodes and ways GraphBuildingHandler turns into vertices and edges, for
+ * plain and gzipped input.
+ */
+public class TestGraphBuildingHandler {
+    private static final String OSM = String.join("\n",
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+            "<osm version=\"0.6\">",
+            "  <node id=\"5\" lat=\"37.875\" lon=\"-122.265\"/>",
+            "  <node id=\"1\" lat=\"37.871\" lon=\"-122.261\"/>",
+            "  <node id=\"2\" lat=\"37.872\" lon=\"-122.262\"/>",
+            "  <node id=\"3\" lat=\"37.873\" lon=\"-122.263\">",
+            "    <tag k=\"name\" v=\"Corner Cafe\"/>",
+            "  </node>",
+            "  <node id=\"4\" lat=\"37.874\" lon=\"-122.264\"/>",
+            "  <node id=\"6\" lat=\"37.876\" lon=\"-122.266\">",
+            "    <tag k=\"name\" v=\"Cory Hall\"/>",
+            "  </node>",
+            "  <way id=\"10\">",
+            "    <nd ref=\"1\"/>",
+            "    <nd ref=\"2\"/>",
+            "    <nd ref=\"99\"/>",
+            "    <nd ref=\"3\"/>",
+            "    <nd ref=\"5\"/>",
+            "    <tag k=\"highway\" v=\"residential\"/>",
+            "    <tag k=\"name\" v=\"Hearst Avenue\"/>",
+            "  </way>",
+            "  <way id=\"11\">",
+            "    <nd ref=\"3\"/>",
+            "    <nd ref=\"4\"/>",
+            "    <tag k=\"highway\" v=\"footway\"/>",
+            "  </way>",
+            "  <way id=\"12\">",
+            "    <nd ref=\"4\"/>",
+            "    <tag k=\"highway\" v=\"primary\"/>",
+            "  </way>",
+            "  <relation id=\"20\">",
+            "    <member type=\"way\" ref=\"10\" role=\"\"/>",
+            "    <tag k=\"name\" v=\"Route 1\"/>",
+            "  </relation>",
+            "</osm>");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPlain() throws IOException {
+        File file = folder.newFile("map.osm.xml");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(OSM.getBytes(StandardCharsets.UTF_8));
+        }
+        check(new GraphDB(file.getPath()));
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        File file = folder.newFile("map.osm.xml.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+            out.write(OSM.getBytes(StandardCharsets.UTF_8));
+        }
+        check(new GraphDB(file.getPath()));
+    }
+
+    private static void check(GraphDB g) {
+        // The missing node 99 splits way 10, and neither the footway nor the single node way 12
+        // makes 4 a vertex
+        assertEquals(Arrays.asList(1L, 2L, 3L, 5L), sorted(g.vertices()));
+        assertEquals(Arrays.asList(2L), sorted(g.adjacent(1)));
+        assertEquals(Arrays.asList(1L), sorted(g.adjacent(2)));
+        assertEquals(Arrays.asList(5L), sorted(g.adjacent(3)));
+        assertEquals("Hearst Avenue", g.getEdge(3, 5).name);
+        assertNull(g.getEdge(2, 3));
+
+        // Named nodes are searchable whether or not they are vertices
+        List<String> names = g.getLocationsByPrefix("co");
+        Collections.sort(names);
+        assertEquals(Arrays.asList("Corner Cafe", "Cory Hall"), names);
+        assertEquals(6L, g.getLocations("Cory Hall").get(0).get("id"));
+    }
+
+    private static List<Long> sorted(Iterable<Long> ids) {
+        List<Long> list = new ArrayList<>();
+        for (long id : ids) {
+            list.add(id);
+        }
+        Collections.sort(list);
+        return list;
+    }
+}
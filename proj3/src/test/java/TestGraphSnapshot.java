@@ -0,0 +1,122 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a graph loaded from a binary snapshot matches the graph parsed from the XML, and
+ * that stale or damaged snapshots are rejected.
+ */
+public class TestGraphSnapshot {
+    private static final String OSM = String.join("\n",
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+            "<osm version=\"0.6\">",
+            "  <node id=\"1\" lat=\"37.87\" lon=\"-122.26\"/>",
+            "  <node id=\"2\" lat=\"37.871\" lon=\"-122.261\"/>",
+            "  <node id=\"3\" lat=\"37.872\" lon=\"-122.262\">",
+            "    <tag k=\"name\" v=\"Corner Cafe\"/>",
+            "  </node>",
+            "  <node id=\"4\" lat=\"37.873\" lon=\"-122.263\"/>",
+            "  <node id=\"5\" lat=\"37.8705\" lon=\"-122.2605\">",
+            "    <tag k=\"name\" v=\"Cory Hall\"/>",
+            "  </node>",
+            "  <way id=\"10\">",
+            "    <nd ref=\"1\"/>",
+            "    <nd ref=\"2\"/>",
+            "    <nd ref=\"3\"/>",
+            "    <tag k=\"highway\" v=\"residential\"/>",
+            "    <tag k=\"name\" v=\"Hearst Avenue\"/>",
+            "    <tag k=\"maxspeed\" v=\"25 mph\"/>",
+            "  </way>",
+            "  <way id=\"11\">",
+            "    <nd ref=\"3\"/>",
+            "    <nd ref=\"4\"/>",
+            "    <tag k=\"highway\" v=\"primary\"/>",
+            "  </way>",
+            "</osm>");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File source;
+    private File snapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        source = folder.newFile("map.osm.xml");
+        Files.write(source.toPath(), OSM.getBytes(StandardCharsets.UTF_8));
+        snapshot = GraphSnapshot.snapshotFile(source.getPath());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        GraphDB parsed = GraphDB.load(source.getPath());
+        assertTrue(snapshot.isFile());
+        GraphDB loaded = GraphDB.load(source.getPath());
+
+        assertEquals(sorted(parsed.vertices()), sorted(loaded.vertices()));
+        for (long v : parsed.vertices()) {
+            assertEquals(sorted(parsed.adjacent(v)), sorted(loaded.adjacent(v)));
+            assertEquals(parsed.lon(v), loaded.lon(v), 0);
+            assertEquals(parsed.lat(v), loaded.lat(v), 0);
+        }
+        assertEquals("Hearst Avenue", loaded.getEdge(1, 2).name);
+        assertEquals("25 mph", loaded.getEdge(2, 1).maxSpeed);
+        assertEquals("residential", loaded.getEdge(2, 1).highway);
+        assertEquals(25, loaded.getEdge(2, 1).speed, 0);
+        assertEquals(45, loaded.getEdge(3, 4).speed, 0);
+        assertEquals(3, loaded.closest(-122.2621, 37.8721));
+
+        assertEquals(parsed.getLocationsByPrefix("co"), loaded.getLocationsByPrefix("co"));
+        assertEquals(2, loaded.getLocationsByPrefix("co").size());
+        assertEquals(parsed.getLocations("Cory Hall"), loaded.getLocations("Cory Hall"));
+    }
+
+    @Test
+    public void testStaleSnapshot() throws IOException {
+        GraphDB.load(source.getPath());
+        assertNotNull(GraphSnapshot.open(source, snapshot));
+
+        assertTrue(source.setLastModified(source.lastModified() - 60000));
+        assertNull(GraphSnapshot.open(source, snapshot));
+    }
+
+    @Test
+    public void testDamagedSnapshot() throws IOException {
+        GraphDB.load(source.getPath());
+        try (RandomAccessFile raf = new RandomAccessFile(snapshot, "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 1);
+        }
+        assertNull(GraphSnapshot.open(source, snapshot));
+
+        // Loading falls back to the XML and replaces the damaged snapshot
+        assertEquals(4, sorted(GraphDB.load(source.getPath()).vertices()).size());
+        assertNotNull(GraphSnapshot.open(source, snapshot));
+    }
+
+    private static List<Long> sorted(Iterable<Long> ids) {
+        List<Long> list = new ArrayList<>();
+        for (long id : ids) {
+            list.add(id);
+        }
+        Collections.sort(list);
+        return list;
+    }
+}
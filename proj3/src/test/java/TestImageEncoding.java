@@ -0,0 +1,65 @@
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks parsing of the /raster format and quality parameters, and that every encoding writes
+ * an image that decodes to the right size, losslessly for PNG.
+ */
+public class TestImageEncoding {
+    @Test
+    public void testOf() {
+        assertSame(ImageEncoding.PNG, ImageEncoding.of(null, null));
+        assertSame(ImageEncoding.PNG, ImageEncoding.of("PNG", null));
+        assertEquals(ImageEncoding.of("jpeg", "0.5"), ImageEncoding.of("jpg", "0.5"));
+        assertNotEquals(ImageEncoding.of("jpeg", "0.5"), ImageEncoding.of("jpeg", "0.6"));
+        assertEquals("image/jpeg", ImageEncoding.of("jpg", null).mimeType());
+        assertNull(ImageEncoding.of("webp", null));
+        assertNull(ImageEncoding.of("png", "2"));
+        assertNull(ImageEncoding.of("png", "NaN"));
+        assertNull(ImageEncoding.of("png", "high"));
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        Random random = new Random(61);
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < image.getWidth(); ++x) {
+            for (int y = 0; y < image.getHeight(); ++y) {
+                image.setRGB(x, y, random.nextInt(1 << 24));
+            }
+        }
+
+        for (String quality : new String[]{null, "0", "1"}) {
+            BufferedImage png = roundTrip(image, ImageEncoding.of("png", quality));
+            for (int x = 0; x < image.getWidth(); ++x) {
+                for (int y = 0; y < image.getHeight(); ++y) {
+                    assertEquals(image.getRGB(x, y), png.getRGB(x, y));
+                }
+            }
+        }
+
+        BufferedImage jpeg = roundTrip(image, ImageEncoding.of("jpeg", "0.8"));
+        assertEquals(image.getWidth(), jpeg.getWidth());
+        assertEquals(image.getHeight(), jpeg.getHeight());
+    }
+
+    private static BufferedImage roundTrip(BufferedImage image, ImageEncoding encoding)
+            throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        encoding.write(image, os);
+        assertTrue(os.size() > 0);
+        return ImageIO.read(new ByteArrayInputStream(os.toByteArray()));
+    }
+}
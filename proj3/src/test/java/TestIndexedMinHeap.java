@@ -0,0 +1,64 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks IndexedMinHeap against sorting, including decrease-key and reuse after clear().
+ */
+public class TestIndexedMinHeap {
+    private static final int N = 1000;
+
+    @Test
+    public void testRemoveMinInOrder() {
+        Random random = new Random(61);
+        IndexedMinHeap heap = new IndexedMinHeap(N);
+        double[] keys = new double[N];
+        for (int i = 0; i < N; ++i) {
+            keys[i] = random.nextDouble();
+            heap.insertOrDecrease(i, keys[i]);
+        }
+
+        // Decrease every third key, and try to increase every fifth, which must be ignored
+        for (int i = 0; i < N; i += 3) {
+            keys[i] /= 2;
+            heap.insertOrDecrease(i, keys[i]);
+        }
+        for (int i = 0; i < N; i += 5) {
+            heap.insertOrDecrease(i, keys[i] + 1);
+        }
+
+        double[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < N; ++i) {
+            assertEquals(sorted[i], heap.minKey(), 0);
+            int item = heap.removeMin();
+            assertEquals(sorted[i], keys[item], 0);
+            assertFalse(heap.contains(item));
+        }
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testClear() {
+        IndexedMinHeap heap = new IndexedMinHeap(N);
+        for (int i = 0; i < N; ++i) {
+            heap.insertOrDecrease(i, N - i);
+        }
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        for (int i = 0; i < N; ++i) {
+            assertFalse(heap.contains(i));
+        }
+
+        heap.insertOrDecrease(7, 2);
+        heap.insertOrDecrease(3, 1);
+        assertEquals(2, heap.size());
+        assertEquals(3, heap.removeMin());
+        assertEquals(7, heap.removeMin());
+    }
+}
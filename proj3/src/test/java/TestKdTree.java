@@ -0,0 +1,109 @@
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the nearest vertex queries of KdTree against a linear scan over random points in the
+ * bounding box of the map.
+ */
+public class TestKdTree {
+    private static final int NUM_POINTS = 5000;
+    private static final int NUM_QUERIES = 500;
+
+    private final Random random = new Random(61);
+    private final double[] lons = new double[NUM_POINTS];
+    private final double[] lats = new double[NUM_POINTS];
+
+    public TestKdTree() {
+        for (int i = 0; i < NUM_POINTS; ++i) {
+            lons[i] = randomLon();
+            lats[i] = randomLat();
+        }
+    }
+
+    @Test
+    public void testNearest() {
+        KdTree tree = new KdTree(lons, lats, NUM_POINTS);
+        for (int i = 0; i < NUM_QUERIES; ++i) {
+            double lon = randomLon();
+            double lat = randomLat();
+            assertEquals(bruteForce(lon, lat, new boolean[NUM_POINTS], 1)[0],
+                    tree.nearest(lon, lat));
+        }
+    }
+
+    @Test
+    public void testNearestK() {
+        KdTree tree = new KdTree(lons, lats, NUM_POINTS);
+        for (int i = 0; i < NUM_QUERIES; ++i) {
+            double lon = randomLon();
+            double lat = randomLat();
+            assertArrayEquals(bruteForce(lon, lat, new boolean[NUM_POINTS], 8),
+                    tree.nearest(lon, lat, 8));
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        KdTree tree = new KdTree(lons, lats, NUM_POINTS);
+        boolean[] removed = new boolean[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i += 2) {
+            assertEquals(true, tree.remove(i));
+            removed[i] = true;
+        }
+        assertEquals(false, tree.remove(0));
+        assertEquals(NUM_POINTS / 2, tree.size());
+
+        for (int i = 0; i < NUM_QUERIES; ++i) {
+            double lon = randomLon();
+            double lat = randomLat();
+            assertArrayEquals(bruteForce(lon, lat, removed, 3), tree.nearest(lon, lat, 3));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        KdTree tree = new KdTree(new double[0], new double[0], 0);
+        assertEquals(-1, tree.nearest(-122.25, 37.87));
+        assertArrayEquals(new int[0], tree.nearest(-122.25, 37.87, 3));
+    }
+
+    /**
+     * Returns the K points nearest to (LON, LAT) that are not REMOVED, nearest first. Each
+     * distance is computed once, and each of the K picks is a linear scan.
+     */
+    private int[] bruteForce(double lon, double lat, boolean[] removed, int k) {
+        double[] distances = new double[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; ++i) {
+            distances[i] = removed[i] ? Double.POSITIVE_INFINITY
+                    : GraphDB.distance(lon, lat, lons[i], lats[i]);
+        }
+
+        int[] nearest = new int[k];
+        for (int count = 0; count < k; ++count) {
+            int min = -1;
+            for (int i = 0; i < NUM_POINTS; ++i) {
+                if (distances[i] < Double.POSITIVE_INFINITY
+                        && (min < 0 || distances[i] < distances[min])) {
+                    min = i;
+                }
+            }
+            nearest[count] = min;
+            distances[min] = Double.POSITIVE_INFINITY;
+        }
+        return nearest;
+    }
+
+    private double randomLon() {
+        double width = MapServer.ROOT_LRLON - MapServer.ROOT_ULLON;
+        return MapServer.ROOT_ULLON + random.nextDouble() * width;
+    }
+
+    private double randomLat() {
+        double height = MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT;
+        return MapServer.ROOT_LRLAT + random.nextDouble() * height;
+    }
+}
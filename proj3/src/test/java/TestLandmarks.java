@@ -0,0 +1,55 @@
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that landmark bounds never overestimate road distances, and that A* with landmarks
+ * finds paths as short as plain A* while settling no more vertices.
+ */
+public class TestLandmarks {
+    private static final int N = 400;
+    private static final int QUERIES = 500;
+
+    private static CompactGraph graph;
+    private static Landmarks landmarks;
+
+    @BeforeClass
+    public static void setUp() {
+        graph = RandomGraphs.randomGraph(N, 0, 61);
+        landmarks = new Landmarks(graph, 8);
+    }
+
+    @Test
+    public void testLandmarks() {
+        assertEquals(8, landmarks.size());
+        for (int i = 0; i < landmarks.size(); ++i) {
+            for (int j = 0; j < i; ++j) {
+                assertTrue(landmarks.landmark(i) != landmarks.landmark(j));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesAStar() {
+        Random random = new Random(62);
+        AStarSearch astar = new AStarSearch(graph);
+        AStarSearch alt = new AStarSearch(graph);
+        long astarSettled = 0;
+        long altSettled = 0;
+        for (int i = 0; i < QUERIES; ++i) {
+            int s = random.nextInt(N);
+            int t = random.nextInt(N);
+            assertTrue(astar.search(s, t));
+            assertTrue(alt.search(s, t, landmarks));
+            assertEquals(astar.distance(t), alt.distance(t), 1e-9);
+            assertTrue(landmarks.lowerBound(s, t) <= astar.distance(t));
+            astarSettled += astar.settledCount();
+            altSettled += alt.settledCount();
+        }
+        assertTrue(altSettled < astarSettled);
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the histogram buckets and quantiles, and the Prometheus output of Metrics.
+ */
+public class TestMetrics {
+    @Test
+    public void testBuckets() {
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 1000, 123456789, 1L << 41};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(value <= LatencyHistogram.highestValue(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.highestValue(bucket - 1));
+            assertTrue(LatencyHistogram.highestValue(bucket) <= value * 1.0625 + 1);
+        }
+        for (int bucket = 1; bucket < 500; ++bucket) {
+            long lowest = LatencyHistogram.highestValue(bucket - 1) + 1;
+            assertEquals(bucket, LatencyHistogram.bucket(lowest));
+            assertEquals(bucket, LatencyHistogram.bucket(LatencyHistogram.highestValue(bucket)));
+        }
+    }
+
+    @Test
+    public void testQuantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.quantile(0.5));
+
+        Random random = new Random(61);
+        long[] values = new long[100000];
+        long sum = 0;
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = 1000 + (long) (random.nextDouble() * random.nextDouble() * 1e8);
+            histogram.record(values[i]);
+            sum += values[i];
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, histogram.count());
+        assertEquals(sum, histogram.sum());
+        for (double q : new double[]{0.5, 0.9, 0.99, 0.999, 1}) {
+            long exact = values[(int) Math.ceil(q * values.length) - 1];
+            long estimate = histogram.quantile(q);
+            assertTrue(estimate >= exact);
+            assertTrue(estimate <= exact * 1.035);
+        }
+    }
+
+    @Test
+    public void testPrometheus() {
+        Metrics metrics = new Metrics();
+        metrics.recordRequest("raster", 2000000, false);
+        metrics.recordRequest("raster", 4000000, true);
+        metrics.recordRequest("route", 1000000, false);
+        metrics.recordPhase("encode", 1500000);
+        metrics.counter("tile_cache_hits", "Tiles found in the tile cache.", () -> 42);
+
+        List<String> lines = Arrays.asList(metrics.prometheus().split("\n"));
+        assertTrue(lines.contains("# TYPE bearmaps_request_seconds summary"));
+        assertTrue(lines.contains(
+                "bearmaps_request_seconds{endpoint=\"raster\",quantile=\"0.5\"} 0.002031615"));
+        assertTrue(lines.contains("bearmaps_request_seconds_count{endpoint=\"raster\"} 2"));
+        assertTrue(lines.contains(
+                "bearmaps_request_seconds_sum{endpoint=\"raster\"} 0.006000000"));
+        assertTrue(lines.contains("bearmaps_request_errors_total{endpoint=\"raster\"} 1"));
+        assertTrue(lines.contains("bearmaps_request_errors_total{endpoint=\"route\"} 0"));
+        assertTrue(lines.contains("bearmaps_phase_seconds_count{phase=\"encode\"} 1"));
+        assertTrue(lines.contains("# TYPE bearmaps_tile_cache_hits_total counter"));
+        assertTrue(lines.contains("bearmaps_tile_cache_hits_total 42"));
+    }
+}
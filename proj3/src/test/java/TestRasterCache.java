@@ -0,0 +1,55 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that RasterCache keys responses by depth, tile range, route version and encoding, and
+ * evicts the least recently used responses when full.
+ */
+public class TestRasterCache {
+    private static final ImageEncoding PNG = ImageEncoding.PNG;
+
+    @Test
+    public void testKey() {
+        RasterCache cache = new RasterCache(1000);
+        RasterCache.Entry entry = new RasterCache.Entry("abc", 512, 256);
+        cache.put(grid(2, 0, 0, 1, 0), 7, PNG, entry);
+
+        // A new grid array with the same tiles hits
+        assertSame(entry, cache.get(grid(2, 0, 0, 1, 0), 7, PNG));
+        assertNull(cache.get(grid(2, 0, 0, 1, 0), 8, PNG));
+        assertNull(cache.get(grid(2, 0, 0, 2, 0), 7, PNG));
+        assertNull(cache.get(grid(3, 0, 0, 1, 0), 7, PNG));
+        assertNull(cache.get(grid(2, 0, 0, 1, 0), 7, ImageEncoding.of("jpeg", null)));
+        assertEquals(1, cache.hits());
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void testEviction() {
+        RasterCache cache = new RasterCache(10);
+        cache.put(grid(1, 0, 0, 0, 0), 0, PNG, new RasterCache.Entry("aaaa", 256, 256));
+        cache.put(grid(1, 1, 0, 1, 0), 0, PNG, new RasterCache.Entry("bbbb", 256, 256));
+        cache.get(grid(1, 0, 0, 0, 0), 0, PNG);
+        cache.put(grid(1, 0, 1, 0, 1), 0, PNG, new RasterCache.Entry("cccc", 256, 256));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(grid(1, 1, 0, 1, 0), 0, PNG));
+
+        // Responses larger than the whole cache are not stored
+        cache.put(grid(1, 1, 1, 1, 1), 0, PNG, new RasterCache.Entry("ddddddddddd", 256, 256));
+        assertEquals(2, cache.size());
+    }
+
+    private static String[][] grid(int depth, int xStart, int yStart, int xEnd, int yEnd) {
+        String[][] grid = new String[yEnd - yStart + 1][xEnd - xStart + 1];
+        for (int y = yStart; y <= yEnd; ++y) {
+            for (int x = xStart; x <= xEnd; ++x) {
+                grid[y - yStart][x - xStart] = Rasterer.getFileName(depth, x, y);
+            }
+        }
+        return grid;
+    }
+}
@@ -0,0 +1,180 @@
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that Router.routeMatrix finds the same distances and paths as one shortestPath query
+ * per pair, with and without a thread pool and by distance or time, on a jittered grid with a
+ * separate island.
+ */
+public class TestRouteMatrix {
+    private static final int SIDE = 12;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static GraphDB graph;
+    private static ExecutorService pool;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        Random random = new Random(61);
+        List<String> lines = new ArrayList<>();
+        lines.add("<osm version=\"0.6\">");
+        for (int x = 0; x < SIDE; ++x) {
+            for (int y = 0; y < SIDE; ++y) {
+                lines.add(String.format("  <node id=\"%d\" lat=\"%f\" lon=\"%f\"/>", id(x, y),
+                        37.8 + y * 0.001 + random.nextDouble() * 0.0004,
+                        -122.3 + x * 0.001 + random.nextDouble() * 0.0004));
+            }
+        }
+        lines.add("  <node id=\"9001\" lat=\"37.7\" lon=\"-122.4\"/>");
+        lines.add("  <node id=\"9002\" lat=\"37.701\" lon=\"-122.401\"/>");
+
+        // Rows, columns with gaps, and the island
+        int way = 1;
+        for (int y = 0; y < SIDE; ++y) {
+            lines.add("  <way id=\"" + way++ + "\">");
+            for (int x = 0; x < SIDE; ++x) {
+                lines.add("    <nd ref=\"" + id(x, y) + "\"/>");
+            }
+            lines.add("    <tag k=\"highway\" v=\"residential\"/>");
+            lines.add("  </way>");
+        }
+        for (int x = 0; x < SIDE; x += 3) {
+            lines.add("  <way id=\"" + way++ + "\">");
+            for (int y = 0; y < SIDE; ++y) {
+                lines.add("    <nd ref=\"" + id(x, y) + "\"/>");
+            }
+            // Faster columns, so that the fastest routes differ from the shortest ones
+            lines.add("    <tag k=\"highway\" v=\"primary\"/>");
+            lines.add("    <tag k=\"maxspeed\" v=\"" + (40 + x) + " mph\"/>");
+            lines.add("  </way>");
+        }
+        lines.add("  <way id=\"" + way + "\">");
+        lines.add("    <nd ref=\"9001\"/>");
+        lines.add("    <nd ref=\"9002\"/>");
+        lines.add("    <tag k=\"highway\" v=\"residential\"/>");
+        lines.add("  </way>");
+        lines.add("</osm>");
+
+        File file = folder.newFile("grid.osm.xml");
+        Files.write(file.toPath(), String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        graph = new GraphDB(file.getPath());
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testMatchesShortestPath() {
+        Random random = new Random(62);
+        double[][] sources = randomPoints(random, 7);
+        double[][] targets = randomPoints(random, 9);
+        targets[3] = new double[]{-122.4, 37.7};
+
+        RouteMatrix serial = Router.routeMatrix(graph, sources, targets,
+                Router.Metric.DISTANCE, true, null);
+        RouteMatrix parallel = Router.routeMatrix(graph, sources, targets,
+                Router.Metric.DISTANCE, true, pool);
+        assertEquals(sources.length, parallel.sourceCount());
+        assertEquals(targets.length, parallel.targetCount());
+        for (int i = 0; i < sources.length; ++i) {
+            for (int j = 0; j < targets.length; ++j) {
+                List<Long> expected = Router.shortestPath(graph, sources[i][0], sources[i][1],
+                        targets[j][0], targets[j][1], Router.Engine.ASTAR);
+                assertEquals(expected, serial.path(i, j));
+                assertEquals(expected, parallel.path(i, j));
+                assertEquals(length(expected), parallel.distance(i, j), 1e-9);
+                assertEquals(serial.distance(i, j), parallel.distance(i, j), 0);
+            }
+        }
+
+        // The island cannot be reached
+        assertTrue(Double.isInfinite(parallel.distance(0, 3)));
+        assertTrue(parallel.path(0, 3).isEmpty());
+    }
+
+    @Test
+    public void testTime() {
+        Random random = new Random(63);
+        double[][] sources = randomPoints(random, 5);
+        double[][] targets = randomPoints(random, 5);
+        RouteMatrix matrix = Router.routeMatrix(graph, sources, targets, Router.Metric.TIME,
+                true, pool);
+        for (int i = 0; i < sources.length; ++i) {
+            for (int j = 0; j < targets.length; ++j) {
+                for (Router.Engine engine : Router.Engine.values()) {
+                    List<Long> path = Router.shortestPath(graph, sources[i][0], sources[i][1],
+                            targets[j][0], targets[j][1], engine, Router.Metric.TIME);
+                    assertEquals(matrix.distance(i, j), time(path), 1e-9);
+                }
+                assertEquals(time(matrix.path(i, j)), matrix.distance(i, j), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testWithoutPaths() {
+        double[][] points = {{-122.3, 37.8}, {-122.29, 37.81}};
+        RouteMatrix matrix = Router.routeMatrix(graph, points, points,
+                Router.Metric.DISTANCE, false, pool);
+        assertFalse(matrix.hasPaths());
+        assertEquals(0, matrix.distance(1, 1), 0);
+        assertEquals(matrix.distance(0, 1), matrix.distance(1, 0), 1e-9);
+        assertTrue(matrix.distance(0, 1) > 0);
+    }
+
+    private static long id(int x, int y) {
+        return 1000 + x * SIDE + y;
+    }
+
+    private static double[][] randomPoints(Random random, int count) {
+        double[][] points = new double[count][];
+        for (int i = 0; i < count; ++i) {
+            points[i] = new double[]{-122.3 + random.nextDouble() * SIDE * 0.001,
+                37.8 + random.nextDouble() * SIDE * 0.001};
+        }
+        return points;
+    }
+
+    private static double time(List<Long> path) {
+        CompactGraph compact = graph.compactGraph();
+        double time = 0;
+        for (int i = 1; i < path.size(); ++i) {
+            time += compact.time(compact.findEdge(compact.index(path.get(i - 1)),
+                    compact.index(path.get(i))));
+        }
+        return time;
+    }
+
+    private static double length(List<Long> path) {
+        if (path.isEmpty()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double length = 0;
+        for (int i = 1; i < path.size(); ++i) {
+            length += graph.distance(path.get(i - 1), path.get(i));
+        }
+        return length;
+    }
+}
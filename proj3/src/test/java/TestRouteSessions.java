@@ -0,0 +1,151 @@
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that RouteSessions keeps routes apart per session, expires idle sessions and hands
+ * out immutable route snapshots.
+ */
+public class TestRouteSessions {
+    private static final long IDLE = 1000;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static GraphDB graph;
+    private long now;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        File file = folder.newFile("map.osm.xml");
+        Files.write(file.toPath(), String.join("\n",
+                "<osm version=\"0.6\">",
+                "  <node id=\"1\" lat=\"37.871\" lon=\"-122.261\"/>",
+                "  <node id=\"2\" lat=\"37.872\" lon=\"-122.262\"/>",
+                "  <node id=\"3\" lat=\"37.873\" lon=\"-122.263\"/>",
+                "  <way id=\"10\">",
+                "    <nd ref=\"1\"/>",
+                "    <nd ref=\"2\"/>",
+                "    <nd ref=\"3\"/>",
+                "    <tag k=\"highway\" v=\"residential\"/>",
+                "  </way>",
+                "</osm>").getBytes(StandardCharsets.UTF_8));
+        graph = new GraphDB(file.getPath());
+    }
+
+    @Test
+    public void testSessionsAreSeparate() {
+        RouteSessions sessions = new RouteSessions(IDLE, () -> now);
+        RouteSessions.Route a = RouteSessions.Route.of(graph, Arrays.asList(1L, 2L));
+        RouteSessions.Route b = RouteSessions.Route.of(graph, Arrays.asList(3L, 2L, 1L));
+        sessions.setRoute("a", a);
+        sessions.setRoute("b", b);
+
+        assertSame(a, sessions.route("a"));
+        assertSame(b, sessions.route("b"));
+        assertSame(RouteSessions.Route.EMPTY, sessions.route("c"));
+        assertNotEquals(a.version(), b.version());
+
+        sessions.clearRoute("a");
+        assertSame(RouteSessions.Route.EMPTY, sessions.route("a"));
+        assertSame(b, sessions.route("b"));
+    }
+
+    @Test
+    public void testExpiry() {
+        RouteSessions sessions = new RouteSessions(IDLE, () -> now);
+        sessions.setRoute("a", RouteSessions.Route.of(graph, Arrays.asList(1L, 2L)));
+        sessions.setRoute("b", RouteSessions.Route.of(graph, Arrays.asList(2L, 3L)));
+
+        // Using a session keeps it alive
+        now += IDLE / 2;
+        sessions.route("a");
+        now += IDLE / 2 + 1;
+        assertEquals(1, sessions.size());
+        assertEquals(2, sessions.route("a").size());
+        assertTrue(sessions.route("b").isEmpty());
+    }
+
+    /*
+     * One thread keeps sweeping while another moves the clock past the idle limit and sets the
+     * routes of many sessions again. The sweep may take a stale session that is being set, but
+     * it must not drop the route just written to it.
+     */
+    @Test
+    public void testSetRouteDuringExpiry() throws InterruptedException {
+        AtomicLong clock = new AtomicLong();
+        RouteSessions sessions = new RouteSessions(IDLE, clock::get);
+        RouteSessions.Route route = RouteSessions.Route.of(graph, Arrays.asList(1L, 2L));
+        String[] ids = new String[1000];
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = "s" + i;
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        Thread sweeper = new Thread(() -> {
+            while (!done.get()) {
+                sessions.size();
+            }
+        });
+        sweeper.setDaemon(true);
+        sweeper.start();
+        try {
+            for (int round = 0; round < 2000; ++round) {
+                clock.addAndGet(2 * IDLE);
+                for (String id : ids) {
+                    sessions.setRoute(id, route);
+                }
+                for (String id : ids) {
+                    assertSame("Route of " + id + " lost in round " + round,
+                            route, sessions.route(id));
+                }
+            }
+        } finally {
+            done.set(true);
+        }
+        sweeper.join(60000);
+        assertFalse(sweeper.isAlive());
+    }
+
+    @Test
+    public void testSnapshot() {
+        RouteSessions.Route route = RouteSessions.Route.of(graph, Arrays.asList(1L, 3L));
+        assertEquals(Arrays.asList(1L, 3L), route.ids());
+        assertEquals(-122.263, route.lon(1), 0);
+        assertEquals(37.871, route.lat(0), 0);
+        assertEquals(0, RouteSessions.Route.of(graph, Collections.emptyList()).version());
+
+        try {
+            route.ids().add(2L);
+            throw new AssertionError("Routes must be immutable");
+        } catch (UnsupportedOperationException e) {
+            assertEquals(2, route.size());
+        }
+    }
+
+    @Test
+    public void testSessionId() {
+        assertEquals("tab-1_x", RouteSessions.sessionId("tab-1_x"));
+        assertEquals(RouteSessions.DEFAULT_SESSION, RouteSessions.sessionId(null));
+        assertEquals(RouteSessions.DEFAULT_SESSION, RouteSessions.sessionId("a b"));
+        char[] longId = new char[65];
+        Arrays.fill(longId, 'a');
+        assertEquals(RouteSessions.DEFAULT_SESSION, RouteSessions.sessionId(new String(longId)));
+    }
+}
@@ -0,0 +1,79 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks parsing of maxspeed tags and the highway defaults, and that routing by time takes a
+ * fast detour that routing by distance does not.
+ */
+public class TestSpeedLimits {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParse() {
+        assertEquals(25, SpeedLimits.parse("25 mph"), 1e-9);
+        assertEquals(25, SpeedLimits.parse("25mph"), 1e-9);
+        assertEquals(50 * 0.621371, SpeedLimits.parse("50"), 1e-9);
+        assertEquals(30 * 0.621371, SpeedLimits.parse("30 km/h"), 1e-9);
+        assertEquals(10 * 1.150779, SpeedLimits.parse("10 knots"), 1e-9);
+        assertEquals(35, SpeedLimits.parse("35 mph;25 mph"), 1e-9);
+        assertTrue(Double.isNaN(SpeedLimits.parse("signals")));
+        assertTrue(Double.isNaN(SpeedLimits.parse("")));
+    }
+
+    @Test
+    public void testDefaults() {
+        assertEquals(20, SpeedLimits.speed("20 mph", "motorway"), 1e-9);
+        assertEquals(65, SpeedLimits.speed("none", "motorway"), 1e-9);
+        assertEquals(25, SpeedLimits.speed("", "residential"), 1e-9);
+        assertEquals(SpeedLimits.DEFAULT_MPH, SpeedLimits.speed("", "track"), 1e-9);
+    }
+
+    @Test
+    public void testFastDetour() throws IOException {
+        // 1 -> 2 directly is a slow lane; 1 -> 3 -> 2 is longer but on a motorway
+        File file = folder.newFile("detour.osm.xml");
+        Files.write(file.toPath(), String.join("\n",
+                "<osm version=\"0.6\">",
+                "  <node id=\"1\" lat=\"37.87\" lon=\"-122.27\"/>",
+                "  <node id=\"2\" lat=\"37.87\" lon=\"-122.25\"/>",
+                "  <node id=\"3\" lat=\"37.875\" lon=\"-122.26\"/>",
+                "  <way id=\"10\">",
+                "    <nd ref=\"1\"/>",
+                "    <nd ref=\"2\"/>",
+                "    <tag k=\"highway\" v=\"living_street\"/>",
+                "  </way>",
+                "  <way id=\"11\">",
+                "    <nd ref=\"1\"/>",
+                "    <nd ref=\"3\"/>",
+                "    <nd ref=\"2\"/>",
+                "    <tag k=\"highway\" v=\"motorway\"/>",
+                "    <tag k=\"maxspeed\" v=\"60 mph\"/>",
+                "  </way>",
+                "</osm>").getBytes(StandardCharsets.UTF_8));
+        GraphDB g = new GraphDB(file.getPath());
+
+        for (Router.Engine engine : Router.Engine.values()) {
+            assertEquals(Arrays.asList(1L, 2L), Router.shortestPath(g, -122.27, 37.87,
+                    -122.25, 37.87, engine, Router.Metric.DISTANCE));
+            assertEquals(Arrays.asList(1L, 3L, 2L), Router.shortestPath(g, -122.27, 37.87,
+                    -122.25, 37.87, engine, Router.Metric.TIME));
+        }
+
+        CompactGraph graph = g.compactGraph();
+        int e = graph.findEdge(graph.index(1), graph.index(2));
+        assertEquals(10, graph.way(e).speed, 1e-9);
+        assertEquals(graph.weight(e) / 10 * 3600, graph.time(e), 1e-9);
+        assertEquals(60, graph.maxSpeed(), 1e-9);
+    }
+}
@@ -0,0 +1,93 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks TileCache hits and misses, LRU eviction by decoded size, and neighbor prefetching,
+ * on a folder of small generated tiles.
+ */
+public class TestTileCache {
+    private static final int DEPTH = 2;
+    private static final int TILE = 16;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String root;
+    private long tileBytes;
+
+    @Before
+    public void setUp() throws IOException {
+        root = folder.getRoot().getPath() + File.separator;
+        for (int x = 0; x < 1 << DEPTH; ++x) {
+            for (int y = 0; y < 1 << DEPTH; ++y) {
+                BufferedImage tile = new BufferedImage(TILE, TILE, BufferedImage.TYPE_INT_RGB);
+                tile.setRGB(0, 0, x * 16 + y);
+                ImageIO.write(tile, "png", new File(root + Rasterer.getFileName(DEPTH, x, y)));
+            }
+        }
+        tileBytes = TileCache.sizeOf(ImageIO.read(new File(root + name(0, 0))));
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        TileCache cache = new TileCache(root, 10 * tileBytes, null);
+        BufferedImage tile = cache.get(name(1, 2));
+        assertNotNull(tile);
+        assertEquals(1 * 16 + 2, tile.getRGB(0, 0) & 0xffffff);
+        assertSame(tile, cache.get(name(1, 2)));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(tileBytes, cache.bytes());
+    }
+
+    @Test
+    public void testEviction() {
+        TileCache cache = new TileCache(root, 2 * tileBytes, null);
+        cache.get(name(0, 0));
+        cache.get(name(0, 1));
+        cache.get(name(0, 0));
+        cache.get(name(0, 2));
+
+        // (0, 1) was used least recently
+        assertTrue(cache.contains(name(0, 0)));
+        assertFalse(cache.contains(name(0, 1)));
+        assertTrue(cache.contains(name(0, 2)));
+        assertEquals(1, cache.evictions());
+        assertEquals(2 * tileBytes, cache.bytes());
+    }
+
+    @Test
+    public void testPrefetchNeighbors() {
+        TileCache cache = new TileCache(root, 100 * tileBytes, Runnable::run);
+        String[][] grid = {{name(0, 0), name(1, 0)}};
+        cache.prefetchNeighbors(grid);
+
+        // The ring around the grid, clipped to the map: (2, 0) and (0..2, 1)
+        assertEquals(4, cache.prefetches());
+        assertTrue(cache.contains(name(2, 0)));
+        assertTrue(cache.contains(name(1, 1)));
+        assertFalse(cache.contains(name(0, 0)));
+        assertFalse(cache.contains(name(3, 0)));
+
+        cache.get(name(2, 1));
+        assertEquals(1, cache.hits());
+        assertEquals(0, cache.misses());
+    }
+
+    private static String name(int x, int y) {
+        return Rasterer.getFileName(DEPTH, x, y);
+    }
+}
@@ -0,0 +1,80 @@
+import org.junit.Test;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that TileCompositor produces the same pixels as drawing the tiles one after another,
+ * for tiles of several image types and with or without an executor.
+ */
+public class TestTileCompositor {
+    private static final int TILE = 32;
+    private static final int[] TYPES = {BufferedImage.TYPE_INT_RGB,
+        BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_BYTE_INDEXED,
+        BufferedImage.TYPE_INT_ARGB};
+
+    @Test
+    public void testMatchesDrawImage() {
+        Random random = new Random(61);
+        Map<String, BufferedImage> tiles = new HashMap<>();
+        String[][] grid = new String[3][4];
+        for (int r = 0; r < grid.length; ++r) {
+            for (int c = 0; c < grid[0].length; ++c) {
+                grid[r][c] = Rasterer.getFileName(2, c, r);
+                // Leave one tile missing
+                if (r != 1 || c != 2) {
+                    tiles.put(grid[r][c], randomTile(random, TYPES[(r + c) % TYPES.length]));
+                }
+            }
+        }
+
+        BufferedImage expected = drawImages(grid, tiles);
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            assertSamePixels(expected, new TileCompositor(TILE, tiles::get, null).compose(grid));
+            assertSamePixels(expected, new TileCompositor(TILE, tiles::get, pool).compose(grid));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static BufferedImage randomTile(Random random, int type) {
+        BufferedImage tile = new BufferedImage(TILE, TILE, type);
+        for (int x = 0; x < TILE; ++x) {
+            for (int y = 0; y < TILE; ++y) {
+                int alpha = type == BufferedImage.TYPE_INT_ARGB ? random.nextInt(256) : 255;
+                tile.setRGB(x, y, alpha << 24 | random.nextInt(1 << 24));
+            }
+        }
+        return tile;
+    }
+
+    private static BufferedImage drawImages(String[][] grid, Map<String, BufferedImage> tiles) {
+        BufferedImage image = new BufferedImage(grid[0].length * TILE, grid.length * TILE,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics graphics = image.getGraphics();
+        for (int r = 0; r < grid.length; ++r) {
+            for (int c = 0; c < grid[0].length; ++c) {
+                graphics.drawImage(tiles.get(grid[r][c]), c * TILE, r * TILE, null);
+            }
+        }
+        return image;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int x = 0; x < expected.getWidth(); ++x) {
+            for (int y = 0; y < expected.getHeight(); ++y) {
+                assertEquals(x + ", " + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}
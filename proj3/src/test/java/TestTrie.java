@@ -0,0 +1,197 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks Trie prefix queries, ranking by count, removal and fuzzy search, including against a
+ * brute force ranking of random words.
+ */
+public class TestTrie {
+    @Test
+    public void testGetWords() {
+        Trie trie = new Trie();
+        for (String word : new String[]{"cory", "corner", "cafe", "cor", "hearst"}) {
+            trie.put(word);
+        }
+
+        assertEquals(Arrays.asList("cor", "corner", "cory"), trie.getWords("cor"));
+        assertEquals(Arrays.asList("cafe", "cor", "corner", "cory", "hearst"),
+                trie.getAllWords());
+        assertTrue(trie.getWords("x").isEmpty());
+        assertTrue(trie.getWords("").isEmpty());
+    }
+
+    @Test
+    public void testRanked() {
+        Trie trie = new Trie();
+        trie.put("cory", 3);
+        trie.put("corner");
+        trie.put("cor", 2);
+        trie.put("corner");
+
+        // By count, then alphabetically
+        assertEquals(Arrays.asList("cory", "cor", "corner"), trie.getWords("co", 5));
+        assertEquals(Collections.singletonList("cory"), trie.getWords("c", 1));
+        assertTrue(trie.getWords("c", 0).isEmpty());
+        assertEquals(2, trie.count("corner"));
+        assertEquals(0, trie.count("corne"));
+    }
+
+    @Test
+    public void testRemove() {
+        Trie trie = new Trie();
+        trie.put("cory", 2);
+        trie.put("corner");
+
+        assertTrue(trie.remove("cory"));
+        assertEquals(Arrays.asList("corner", "cory"), trie.getWords("cor"));
+        assertTrue(trie.remove("corner"));
+        assertEquals(Collections.singletonList("cory"), trie.getWords("cor", 5));
+        assertTrue(trie.getWords("corn").isEmpty());
+        assertTrue(trie.remove("cory"));
+        assertTrue(trie.getAllWords().isEmpty());
+
+        assertFalse(trie.remove("cory"));
+        assertFalse(trie.remove("co"));
+        assertFalse(trie.remove(""));
+    }
+
+    @Test
+    public void testRandomAgainstBruteForce() {
+        Random random = new Random(61);
+        Trie trie = new Trie();
+        Map<String, Integer> counts = new TreeMap<>();
+        for (int i = 0; i < 5000; ++i) {
+            String word = randomWord(random);
+            if (random.nextInt(4) == 0) {
+                Integer count = counts.get(word);
+                assertEquals(count != null, trie.remove(word));
+                if (count != null) {
+                    if (count == 1) {
+                        counts.remove(word);
+                    } else {
+                        counts.put(word, count - 1);
+                    }
+                }
+            } else {
+                trie.put(word);
+                counts.merge(word, 1, Integer::sum);
+            }
+        }
+
+        assertEquals(new ArrayList<>(counts.keySet()), trie.getAllWords());
+        for (String prefix : new String[]{"a", "b", "ab", "ca", "bab"}) {
+            for (int limit : new int[]{1, 3, Trie.TOP_K, Trie.TOP_K + 5}) {
+                assertEquals(prefix + " " + limit, bruteForce(counts, prefix, limit),
+                        trie.getWords(prefix, limit));
+            }
+        }
+    }
+
+    @Test
+    public void testFuzzy() {
+        Trie trie = new Trie();
+        trie.put("hearst", 3);
+        trie.put("heart");
+        trie.put("shattuck", 2);
+        trie.put("hearstgym");
+
+        // One typo in a prefix
+        assertEquals(Arrays.asList("hearst", "hearstgym", "heart"),
+                trie.getFuzzyWords("haer", 2, 5));
+        assertEquals(Arrays.asList("shattuck"), trie.getFuzzyWords("shatuk", 2, 5));
+        assertEquals(Arrays.asList("hearst", "hearstgym"), trie.getFuzzyWords("hearst", 0, 5));
+        assertEquals(Arrays.asList("hearst"), trie.getFuzzyWords("hwarst", 1, 1));
+        assertTrue(trie.getFuzzyWords("xyz", 1, 5).isEmpty());
+    }
+
+    @Test
+    public void testFuzzyAgainstBruteForce() {
+        Random random = new Random(61);
+        Trie trie = new Trie();
+        Map<String, Integer> counts = new TreeMap<>();
+        for (int i = 0; i < 2000; ++i) {
+            String word = randomWord(random) + randomWord(random);
+            trie.put(word);
+            counts.merge(word, 1, Integer::sum);
+        }
+
+        for (int i = 0; i < 20; ++i) {
+            String query = randomWord(random);
+            for (int maxDistance = 0; maxDistance <= 2; ++maxDistance) {
+                for (int limit : new int[]{3, Trie.TOP_K + 5}) {
+                    assertEquals(query + " " + maxDistance + " " + limit,
+                            bruteForceFuzzy(counts, query, maxDistance, limit),
+                            trie.getFuzzyWords(query, maxDistance, limit));
+                }
+            }
+        }
+    }
+
+    private static String randomWord(Random random) {
+        char[] word = new char[1 + random.nextInt(4)];
+        for (int i = 0; i < word.length; ++i) {
+            word[i] = (char) ('a' + random.nextInt(3));
+        }
+        return new String(word);
+    }
+
+    private static List<String> bruteForce(Map<String, Integer> counts, String prefix,
+                                           int limit) {
+        List<String> words = new ArrayList<>();
+        for (String word : counts.keySet()) {
+            if (word.startsWith(prefix)) {
+                words.add(word);
+            }
+        }
+        words.sort((a, b) -> counts.get(a).equals(counts.get(b))
+                ? a.compareTo(b) : counts.get(b) - counts.get(a));
+        return words.subList(0, Math.min(limit, words.size()));
+    }
+
+    private static List<String> bruteForceFuzzy(Map<String, Integer> counts, String query,
+                                                int maxDistance, int limit) {
+        Map<String, Integer> distances = new TreeMap<>();
+        for (String word : counts.keySet()) {
+            int distance = Integer.MAX_VALUE;
+            for (int end = 0; end <= word.length(); ++end) {
+                distance = Math.min(distance, editDistance(word.substring(0, end), query));
+            }
+            if (distance <= maxDistance) {
+                distances.put(word, distance);
+            }
+        }
+
+        List<String> words = new ArrayList<>(distances.keySet());
+        words.sort((a, b) -> !distances.get(a).equals(distances.get(b))
+                ? distances.get(a) - distances.get(b)
+                : !counts.get(a).equals(counts.get(b)) ? counts.get(b) - counts.get(a)
+                : a.compareTo(b));
+        return words.subList(0, Math.min(limit, words.size()));
+    }
+
+    private static int editDistance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); ++i) {
+            for (int j = 0; j <= b.length(); ++j) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                } else {
+                    int replace = d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                    d[i][j] = Math.min(replace, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+}